@@ -0,0 +1,60 @@
+package com.example.personalchatbot.service.search.index;
+
+import com.example.personalchatbot.dto.VectorHitDto;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Truy vấn ANN trên {@link HnswIndex} theo ef_search (graph dựng 1 lần mỗi trial).
+ * ./gradlew jmh -PjmhArgs="HnswIndexBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class HnswIndexBenchmark {
+    private static final int QUERIES = 256;
+
+    @Param({"50000"})
+    int rows;
+
+    @Param({"384"})
+    int dim;
+
+    @Param({"40", "100"})
+    int efSearch;
+
+    @Param({"10"})
+    int k;
+
+    private HnswIndex index;
+    private float[][] queries;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random rnd = new Random(42);
+        index = new HnswIndex(dim, 16, 100, 1);
+        for (int i = 0; i < rows; i++) index.upsert(UUID.randomUUID(), random(rnd), new int[]{1});
+        queries = new float[QUERIES][];
+        for (int i = 0; i < QUERIES; i++) queries[i] = random(rnd);
+    }
+
+    @Benchmark
+    public List<VectorHitDto> search() {
+        float[] q = queries[next++ & (QUERIES - 1)];
+        return index.search(q, k, efSearch, null);
+    }
+
+    private float[] random(Random rnd) {
+        float[] v = new float[dim];
+        for (int i = 0; i < dim; i++) v[i] = (float) rnd.nextGaussian();
+        return v;
+    }
+}
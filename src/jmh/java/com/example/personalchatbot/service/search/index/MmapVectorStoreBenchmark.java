@@ -0,0 +1,81 @@
+package com.example.personalchatbot.service.search.index;
+
+import com.example.personalchatbot.dto.VectorHitDto;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Quét chính xác top-k trên {@link MmapVectorStore}: không filter (quét toàn bộ) và filter 1 project (quét posting).
+ * ./gradlew jmh -PjmhArgs="MmapVectorStoreBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class MmapVectorStoreBenchmark {
+    private static final int WIDTH = MetadataCodes.KEYS.size();
+    private static final int PROJECTS = 10;
+
+    @Param({"100000"})
+    int rows;
+
+    @Param({"1536"})
+    int dim;
+
+    @Param({"10"})
+    int k;
+
+    private Path dir;
+    private MmapVectorStore store;
+    private float[] query;
+    private int[] projectFilter;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Random rnd = new Random(42);
+        dir = Files.createTempDirectory("mmap-bench");
+        store = new MmapVectorStore(dir.resolve("vectors.bin"), dim, WIDTH, 0);
+        for (int i = 0; i < rows; i++) {
+            int[] codes = new int[WIDTH];
+            codes[MetadataCodes.PROJECT] = 1 + i % PROJECTS;
+            store.upsert(UUID.randomUUID(), random(rnd), codes);
+        }
+        query = random(rnd);
+        projectFilter = new int[WIDTH];
+        Arrays.fill(projectFilter, MetadataCodes.ANY);
+        projectFilter[MetadataCodes.PROJECT] = 1;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        store.close();
+        Files.deleteIfExists(dir.resolve("vectors.bin"));
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public List<VectorHitDto> searchAll() {
+        return store.search(query, k, null);
+    }
+
+    @Benchmark
+    public List<VectorHitDto> searchOneProject() {
+        return store.search(query, k, projectFilter);
+    }
+
+    private float[] random(Random rnd) {
+        float[] v = new float[dim];
+        for (int i = 0; i < dim; i++) v[i] = (float) rnd.nextGaussian();
+        return v;
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.personalchatbot.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Configuration
+public class ExecutorConfig {
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService ragExecutor() {
+        // các bước RAG chủ yếu chờ I/O (LLM, embeddings, DB) -> virtual thread, không cần giới hạn pool
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("rag-", 0).factory());
+    }
+}
@@ -22,4 +22,12 @@ public class LlmConfig {
 
     @Value("${llm.max-output-token-metadata}")
     int outputTokenMetadata;
+
+    // cửa sổ context của model (input + output)
+    @Value("${llm.context-window-tokens}")
+    int contextWindowTokens;
+
+    // thời gian tối đa giữ 1 kết nối SSE /chatbot/stream
+    @Value("${llm.stream-timeout-ms}")
+    long streamTimeoutMs;
 }
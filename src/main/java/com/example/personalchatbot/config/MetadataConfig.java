@@ -0,0 +1,43 @@
+package com.example.personalchatbot.config;
+
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+@Component
+@Data
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class MetadataConfig {
+
+    // phân loại tại chỗ (từ điển + centroid) trước, chỉ gọi LLM khi không chắc
+    @Value("${metadata.local.enabled}")
+    boolean localEnabled;
+
+    // cosine tối thiểu giữa câu hỏi và centroid project
+    @Value("${metadata.local.min-similarity}")
+    double minSimilarity;
+
+    // chênh lệch tối thiểu giữa centroid tốt nhất và thứ nhì
+    @Value("${metadata.local.min-margin}")
+    double minMargin;
+
+    // tên project/module 1 token ngắn hơn mức này chỉ khớp khi viết đúng nguyên văn (kể cả hoa/thường)
+    @Value("${metadata.local.min-token-length}")
+    int minTokenLength;
+
+    // cache kết quả suy luận bằng LLM theo câu hỏi chuẩn hoá + locale
+    @Value("${metadata.cache.enabled}")
+    boolean cacheEnabled;
+
+    @Value("${metadata.cache.max-entries}")
+    long cacheMaxEntries;
+
+    @Value("${metadata.cache.ttl-seconds}")
+    long cacheTtlSeconds;
+
+    // cosine tối thiểu để dùng lại kết quả của câu hỏi gần giống (0 = chỉ khớp nguyên văn)
+    @Value("${metadata.cache.semantic-threshold}")
+    double cacheSemanticThreshold;
+}
@@ -0,0 +1,93 @@
+package com.example.personalchatbot.config;
+
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+@Component
+@Data
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class RagConfig {
+
+    @Value("${rag.top-k}")
+    int topK;
+
+    @Value("${rag.keep-n}")
+    int keepN;
+
+    // lambda mặc định của MMR khi request không truyền
+    @Value("${rag.mmr-lambda}")
+    double mmrLambda;
+
+    // none | multi | hyde | both
+    @Value("${rag.expansion.mode}")
+    String expansionMode;
+
+    @Value("${rag.expansion.count}")
+    int expansionCount;
+
+    @Value("${rag.expansion.budget-ms}")
+    long expansionBudgetMs;
+
+    @Value("${rag.adaptive.enabled}")
+    boolean adaptive;
+
+    @Value("${rag.adaptive.initial-k}")
+    int initialK;
+
+    @Value("${rag.adaptive.max-top-k}")
+    int maxTopK;
+
+    @Value("${rag.adaptive.min-similarity}")
+    double minSimilarity;
+
+    @Value("${rag.adaptive.max-gap}")
+    double maxGap;
+
+    @Value("${rag.relax-filters}")
+    boolean relaxFilters;
+
+    @Value("${rag.hierarchical}")
+    boolean hierarchical;
+
+    @Value("${rag.small-to-big}")
+    boolean smallToBig;
+
+    @Value("${rag.stitch.enabled}")
+    boolean stitch;
+
+    @Value("${rag.stitch.neighbours}")
+    boolean stitchNeighbours;
+
+    @Value("${rag.speculative.enabled}")
+    boolean speculative;
+
+    @Value("${rag.speculative.oversample}")
+    int speculativeOversample;
+
+    // trần token cho phần ngữ cảnh trong prompt (chi phí), PromptService còn chặn theo cửa sổ model
+    @Value("${rag.context.max-tokens}")
+    int maxContextTokens;
+
+    // none | lexical | embedding
+    @Value("${rag.compression.mode}")
+    String compressionMode;
+
+    @Value("${rag.compression.max-sentences}")
+    int compressionMaxSentences;
+
+    // cache câu trả lời theo ngữ nghĩa (cùng filters, cosine >= ngưỡng)
+    @Value("${rag.answer-cache.enabled}")
+    boolean answerCache;
+
+    @Value("${rag.answer-cache.similarity-threshold}")
+    double answerCacheThreshold;
+
+    @Value("${rag.answer-cache.max-entries}")
+    int answerCacheMaxEntries;
+
+    @Value("${rag.answer-cache.ttl-seconds}")
+    long answerCacheTtlSeconds;
+}
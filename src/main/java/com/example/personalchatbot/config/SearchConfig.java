@@ -0,0 +1,83 @@
+package com.example.personalchatbot.config;
+
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+@Component
+@Data
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class SearchConfig {
+
+    // pgvector (mặc định) | hnsw (index HNSW trong JVM) | mmap (quét chính xác trên file memory-mapped)
+    @Value("${search.backend}")
+    String backend;
+
+    @Value("${search.hnsw.m}")
+    int hnswM;
+
+    @Value("${search.hnsw.ef-construction}")
+    int hnswEfConstruction;
+
+    @Value("${search.hnsw.ef-search}")
+    int hnswEfSearch;
+
+    @Value("${search.mmap.path}")
+    String mmapPath;
+
+    @Value("${search.mmap.parallelism}")
+    int mmapParallelism;    // 0 = số CPU
+
+    @Value("${search.partition.enabled}")
+    boolean partitionEnabled;
+
+    @Value("${search.partition.min-rows}")
+    long partitionMinRows;  // project nhỏ hơn ngưỡng này không cần ANN index riêng
+
+    @Value("${search.cache.enabled}")
+    boolean cacheEnabled;
+
+    @Value("${search.cache.max-bytes}")
+    long cacheMaxBytes;     // giới hạn dung lượng ước tính của cache kết quả
+
+    @Value("${search.cache.ttl-seconds}")
+    long cacheTtlSeconds;
+
+    @Value("${search.batch.max-queries}")
+    int batchMaxQueries;    // số truy vấn tối đa trong 1 request /api/search/batch
+
+    @Value("${search.coalesce.window-ms}")
+    long coalesceWindowMs;  // 0 = tắt gộp SQL
+
+    @Value("${search.coalesce.max-queries}")
+    int coalesceMaxQueries;
+
+    @Value("${search.coalesce.senders}")
+    int coalesceSenders;    // số câu SQL gộp chạy đồng thời (~ số connection dùng cho search)
+
+    @Value("${search.jdbc-fast-path}")
+    boolean jdbcFastPath;   // true = kNN qua JDBC + PGvector binding thay vì Hibernate native query
+
+    @Value("${search.planner.enabled}")
+    boolean plannerEnabled;
+
+    @Value("${search.planner.exact-max-rows}")
+    long plannerExactMaxRows;   // ước lượng số dòng khớp <= ngưỡng -> quét chính xác tập con
+
+    @Value("${search.planner.ann-min-selectivity}")
+    double plannerAnnMinSelectivity; // filter lỏng hơn ngưỡng -> ANN thường
+
+    @Value("${search.planner.max-ef-search}")
+    int plannerMaxEfSearch;     // trần hnsw.ef_search / số ứng viên lấy dư
+
+    @Value("${search.hierarchical.enabled}")
+    boolean hierarchicalEnabled;    // lưu vector tài liệu khi ingest + cho phép search 2 cấp
+
+    @Value("${search.hierarchical.top-docs}")
+    int hierarchicalTopDocs;        // số tài liệu giữ lại ở bước 1
+
+    @Value("${search.hierarchical.head-chars}")
+    int hierarchicalHeadChars;      // độ dài "title + phần đầu" dùng làm text tài liệu
+}
@@ -0,0 +1,37 @@
+package com.example.personalchatbot.config;
+
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+@Component
+@Data
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class SessionConfig {
+
+    // số phiên tối đa giữ trong bộ nhớ (vượt -> bỏ phiên ít dùng)
+    @Value("${session.max-sessions}")
+    long maxSessions;
+
+    // phiên không hoạt động quá thời gian này thì bỏ khỏi bộ nhớ
+    @Value("${session.idle-minutes}")
+    long idleMinutes;
+
+    // ngân sách token cho lịch sử chưa tóm tắt; vượt -> tóm tắt các lượt cũ
+    @Value("${session.history-max-tokens}")
+    int historyMaxTokens;
+
+    // số lượt gần nhất luôn giữ nguyên văn khi tóm tắt
+    @Value("${session.keep-recent-turns}")
+    int keepRecentTurns;
+
+    // độ dài tối đa của bản tóm tắt (token)
+    @Value("${session.summary-max-tokens}")
+    int summaryMaxTokens;
+
+    // lưu phiên xuống Postgres (rag_sessions) để sống qua restart / nhiều instance
+    @Value("${session.persist}")
+    boolean persist;
+}
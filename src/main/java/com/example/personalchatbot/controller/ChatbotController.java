@@ -1,22 +1,36 @@
 package com.example.personalchatbot.controller;
 
 import com.example.personalchatbot.config.LlmConfig;
+import com.example.personalchatbot.config.RagConfig;
 import com.example.personalchatbot.dto.AnswerDto;
 import com.example.personalchatbot.dto.MetadataDto;
+import com.example.personalchatbot.dto.PreparedAnswerDto;
+import com.example.personalchatbot.dto.RetrievalOptions;
 import com.example.personalchatbot.service.sql.dto.SqlChunkDto;
 import com.example.personalchatbot.dto.request.MessageRequest;
 import com.example.personalchatbot.service.sql.druid.service.SqlChunkService;
 import com.example.personalchatbot.service.metadata.MetadataService;
+import com.example.personalchatbot.service.rag.AnswerCacheService;
 import com.example.personalchatbot.service.rag.RagService;
+import com.example.personalchatbot.service.session.SessionService;
+import com.pgvector.PGvector;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.Disposable;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Slf4j
 @RestController
@@ -27,6 +41,10 @@ public class ChatbotController {
     private final SqlChunkService sqlChunkService;
     private final RagService ragService;
     private final LlmConfig llmConfig;
+    private final RagConfig ragConfig;
+    private final ExecutorService ragExecutor;
+    private final AnswerCacheService answerCacheService;
+    private final SessionService sessionService;
 
     @PostMapping("/chatbot")
     public ResponseEntity<String> onMessage(@RequestBody MessageRequest messageRequest) {
@@ -36,17 +54,18 @@ public class ChatbotController {
                 return ResponseEntity.badRequest().body("Message is empty");
             }
             else {
-                MetadataDto inferred = metadataService.infer(message, Locale.forLanguageTag("vi-VN"));
-                Map<String,String> filters  = metadataService.toFilters(inferred);
+                String sessionId = sessionIdOf(messageRequest);
+                Turn turn = startTurn(sessionId, message);
 
                 AnswerDto ans = ragService.answer(
-                        message,
-                        60,   // topK
-                        8,    // keepN
-                        filters,
+                        turn.question(),
+                        turn.qvec(),
+                        turn.filters(),
+                        buildOptions(messageRequest),
                         0.2,  // temperature
                         llmConfig.getOutputToken()   // max output tokens
                 );
+                if (sessionId != null) sessionService.append(sessionId, message, ans.getText());
 
                 return ResponseEntity.ok().body(ans.getText());
             }
@@ -56,6 +75,177 @@ public class ChatbotController {
         }
     }
 
+    @PostMapping(value = "/chatbot/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> onMessageStream(@RequestBody MessageRequest messageRequest) {
+        String message = messageRequest.getMessage();
+        if (message == null || message.trim().isEmpty()) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        // SSE: event "delta" cho từng đoạn text, "citations" ở cuối, "error" nếu lỗi
+        SseEmitter emitter = new SseEmitter(llmConfig.getStreamTimeoutMs());
+        AtomicReference<Disposable> upstream = new AtomicReference<>();
+        AtomicBoolean closed = new AtomicBoolean(false);
+        Runnable cancel = () -> {
+            // client ngắt kết nối / timeout -> hủy request tới LLM
+            closed.set(true);
+            Disposable d = upstream.get();
+            if (d != null) d.dispose();
+        };
+        emitter.onCompletion(cancel);
+        emitter.onTimeout(cancel);
+        emitter.onError(err -> cancel.run());
+
+        // retrieve + dựng prompt chạy ngoài thread servlet
+        ragExecutor.execute(() -> {
+            try {
+                String sessionId = sessionIdOf(messageRequest);
+                Turn turn = startTurn(sessionId, message);
+                String question = turn.question();
+                CompletableFuture<Map<String,String>> filters = turn.filters();
+                RetrievalOptions options = buildOptions(messageRequest);
+
+                // embed 1 lần dùng chung cho tra cache, retrieve và lưu cache;
+                // cache hit -> prepare trả null, gửi cả câu trả lời trong 1 delta
+                CompletableFuture<PGvector> qvec = turn.qvec();
+                CompletableFuture<AnswerDto> cachedF = ragService.lookupCached(qvec, filters, options);
+                PreparedAnswerDto prepared = ragService.prepare(question, qvec, filters, options, cachedF);
+                if (prepared == null) {
+                    AnswerDto cached = cachedF.join();
+                    if (sessionId != null) sessionService.append(sessionId, message, cached.getText());
+                    send(emitter, "delta", cached.getText(), cancel);
+                    send(emitter, "citations",
+                            Map.of("citations", cached.getCitations(), "retrieval", cached.getRetrieval()), cancel);
+                    emitter.complete();
+                    return;
+                }
+
+                if (closed.get()) return;
+
+                StringBuilder text = new StringBuilder();
+                upstream.set(ragService.stream(prepared, 0.2, options.getMaxOutputTokens()) // cùng giá trị prompt đã chừa
+                        .subscribe(
+                                delta -> {
+                                    text.append(delta);
+                                    send(emitter, "delta", delta, cancel);
+                                },
+                                err -> {
+                                    log.error("Stream xử lý lỗi: ", err);
+                                    send(emitter, "error", err.getMessage(), cancel);
+                                    emitter.complete();
+                                },
+                                () -> {
+                                    if (sessionId != null) sessionService.append(sessionId, message, text.toString());
+                                    if (options.isAnswerCache()) {
+                                        ragService.remember(qvec.join(), filters.join(), new AnswerDto(
+                                                text.toString(), prepared.getCitations(), prepared.getRetrieval()));
+                                    }
+                                    send(emitter, "citations",
+                                            Map.of("citations", prepared.getCitations(),
+                                                    "retrieval", prepared.getRetrieval()), cancel);
+                                    emitter.complete();
+                                }));
+                // client đã ngắt trong lúc subscribe
+                if (closed.get()) upstream.get().dispose();
+            } catch (Exception e) {
+                log.error("Message xử lý lỗi: ", e);
+                send(emitter, "error", e.getMessage(), cancel);
+                emitter.complete();
+            }
+        });
+        return ResponseEntity.ok().body(emitter);
+    }
+
+    private static void send(SseEmitter emitter, String event, Object data, Runnable cancel) {
+        try {
+            emitter.send(SseEmitter.event().name(event).data(data));
+        } catch (IOException | IllegalStateException e) {
+            // không ghi được -> client đã đóng kết nối
+            cancel.run();
+        }
+    }
+
+    private static String sessionIdOf(MessageRequest messageRequest) {
+        String id = messageRequest.getSessionId();
+        return id == null || id.isBlank() ? null : id.trim();
+    }
+
+    // câu hỏi dùng để retrieve + embed / suy luận metadata đã khởi chạy cho câu hỏi đó
+    private record Turn(String question, CompletableFuture<PGvector> qvec,
+                        CompletableFuture<Map<String,String>> filters) {
+    }
+
+    /**
+     * Hội thoại nhiều lượt -> retrieve bằng câu hỏi độc lập, không nhồi lịch sử vào prompt.
+     * Embed + suy luận metadata cho câu gốc chạy song song với condense (1 lượt LLM):
+     * câu hỏi vốn đã độc lập (condense trả nguyên văn) -> dùng luôn, khác -> làm lại cho câu đã viết lại.
+     * Phiên chưa có lịch sử -> không condense.
+     */
+    private Turn startTurn(String sessionId, String message) {
+        CompletableFuture<PGvector> qvec = ragService.embedAsync(message);
+        CompletableFuture<Map<String,String>> filters = inferFilters(message);
+        if (sessionId == null || !sessionService.hasHistory(sessionId)) return new Turn(message, qvec, filters);
+
+        String question = sessionService.condense(sessionId, message);
+        if (question.strip().equals(message.strip())) return new Turn(message, qvec, filters);
+        qvec.cancel(false);
+        filters.cancel(false);
+        return new Turn(question, ragService.embedAsync(question), inferFilters(question));
+    }
+
+    private CompletableFuture<Map<String,String>> inferFilters(String message) {
+        return CompletableFuture.supplyAsync(() -> {
+            MetadataDto inferred = metadataService.infer(message, Locale.forLanguageTag("vi-VN"));
+            return metadataService.toFilters(inferred);
+        }, ragExecutor);
+    }
+
+    private RetrievalOptions buildOptions(MessageRequest messageRequest) {
+        return RetrievalOptions.builder()
+                .topK(ragConfig.getTopK())
+                .keepN(ragConfig.getKeepN())
+                .mmrLambda(messageRequest.getMmrLambda() != null
+                        ? messageRequest.getMmrLambda() : ragConfig.getMmrLambda())
+                .expansion(messageRequest.getExpansion() != null
+                        ? messageRequest.getExpansion() : ragConfig.getExpansionMode())
+                .expansionCount(ragConfig.getExpansionCount())
+                .expansionBudgetMs(ragConfig.getExpansionBudgetMs())
+                .adaptive(ragConfig.isAdaptive())
+                .initialK(ragConfig.getInitialK())
+                .maxTopK(ragConfig.getMaxTopK())
+                .minSimilarity(ragConfig.getMinSimilarity())
+                .maxGap(ragConfig.getMaxGap())
+                .relaxFilters(ragConfig.isRelaxFilters())
+                .hierarchical(ragConfig.isHierarchical())
+                .smallToBig(ragConfig.isSmallToBig())
+                .stitch(ragConfig.isStitch())
+                .stitchNeighbours(ragConfig.isStitchNeighbours())
+                .maxContextTokens(ragConfig.getMaxContextTokens())
+                .speculative(ragConfig.isSpeculative())
+                .speculativeOversample(ragConfig.getSpeculativeOversample())
+                .compression(ragConfig.getCompressionMode())
+                .compressionMaxSentences(ragConfig.getCompressionMaxSentences())
+                .answerCache(ragConfig.isAnswerCache())
+                .maxOutputTokens(llmConfig.getOutputToken())
+                .build();
+    }
+
+    @GetMapping("/chatbot/cache/stats")
+    public ResponseEntity<Map<String, Object>> answerCacheStats() {
+        return ResponseEntity.ok(answerCacheService.stats());
+    }
+
+    @DeleteMapping("/chatbot/session/{sessionId}")
+    public ResponseEntity<Void> deleteSession(@PathVariable String sessionId) {
+        sessionService.delete(sessionId);
+        return ResponseEntity.noContent().build();
+    }
+
+    @GetMapping("/metadata/stats")
+    public ResponseEntity<Map<String, Object>> metadataStats() {
+        return ResponseEntity.ok(metadataService.stats());
+    }
+
     @PostMapping("/sqlchunk")
     public List<SqlChunkDto> onSqlChunk(@RequestBody String  sql, @RequestHeader String dialect, HttpServletResponse response) {
         try {
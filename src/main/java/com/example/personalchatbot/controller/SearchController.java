@@ -0,0 +1,63 @@
+package com.example.personalchatbot.controller;
+
+import com.example.personalchatbot.config.RagConfig;
+import com.example.personalchatbot.config.SearchConfig;
+import com.example.personalchatbot.dto.BatchSearchResultDto;
+import com.example.personalchatbot.dto.SearchHitDto;
+import com.example.personalchatbot.dto.request.BatchSearchRequest;
+import com.example.personalchatbot.service.search.SearchCacheService;
+import com.example.personalchatbot.service.search.SearchService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+@Slf4j
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/api/search")
+public class SearchController {
+    private final SearchCacheService searchCacheService;
+    private final SearchService searchService;
+    private final SearchConfig searchConfig;
+    private final RagConfig ragConfig;
+
+    @GetMapping("/cache/stats")
+    public ResponseEntity<Map<String, Object>> cacheStats() {
+        return ResponseEntity.ok(searchCacheService.stats());
+    }
+
+    @PostMapping("/batch")
+    public ResponseEntity<?> searchBatch(@RequestBody BatchSearchRequest request) {
+        try {
+            List<String> queries = request.getQueries();
+            if (queries == null || queries.isEmpty()) {
+                return ResponseEntity.badRequest().body("Queries is empty");
+            }
+            if (queries.size() > searchConfig.getBatchMaxQueries()) {
+                return ResponseEntity.badRequest().body("Too many queries (max " + searchConfig.getBatchMaxQueries() + ")");
+            }
+            if (queries.stream().anyMatch(q -> q == null || q.isBlank())) {
+                return ResponseEntity.badRequest().body("Query is empty");
+            }
+
+            // topK do client gửi: kẹp trong [1, rag.adaptive.max-top-k] để 1 request không kéo cả bảng
+            int k = request.getTopK() != null ? request.getTopK() : 10;
+            k = Math.max(1, Math.min(k, ragConfig.getMaxTopK()));
+            List<List<SearchHitDto>> hits = searchService.searchBatch(queries, k, request.getFilters(), false);
+
+            List<BatchSearchResultDto> out = new ArrayList<>(queries.size());
+            for (int i = 0; i < queries.size(); i++) {
+                out.add(new BatchSearchResultDto(i, queries.get(i), hits.get(i)));
+            }
+            return ResponseEntity.ok(out);
+        } catch (Exception e) {
+            log.error("Batch search lỗi: ", e);
+            return ResponseEntity.internalServerError().body(e.getMessage());
+        }
+    }
+}
@@ -15,4 +15,5 @@ import java.util.List;
 public class AnswerDto {
     String text;
     List<String> citations;
+    RetrievalStatsDto retrieval; // K đã chọn, số hit sau cutoff, ...
 }
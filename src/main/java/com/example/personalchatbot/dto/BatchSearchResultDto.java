@@ -0,0 +1,19 @@
+package com.example.personalchatbot.dto;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class BatchSearchResultDto {
+    int index;      // vị trí query trong request
+    String query;
+    List<SearchHitDto> hits;
+}
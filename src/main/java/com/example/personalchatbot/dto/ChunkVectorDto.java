@@ -0,0 +1,20 @@
+package com.example.personalchatbot.dto;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+import java.util.Map;
+import java.util.UUID;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class ChunkVectorDto {
+    UUID id;
+    float[] embedding;
+    Map<String, String> metadata; // chỉ các key dùng để lọc (project/module/env/title/path)
+}
@@ -0,0 +1,25 @@
+package com.example.personalchatbot.dto;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class ConversationDto {
+    String sessionId;
+    String summary;                              // tóm tắt cuốn chiếu các lượt đã gộp (null = chưa có)
+    List<ConversationTurnDto> turns = new ArrayList<>(); // các lượt gần nhất, cũ -> mới
+    boolean deleted;                             // phiên đã bị xoá -> không lưu lại xuống DB
+
+    public ConversationDto(String sessionId) {
+        this.sessionId = sessionId;
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.personalchatbot.dto;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class ConversationTurnDto {
+    String question;
+    String answer;
+    int tokens; // số token của (question + answer), đếm 1 lần khi thêm
+}
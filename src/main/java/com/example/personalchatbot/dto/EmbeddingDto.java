@@ -21,4 +21,7 @@ public class  EmbeddingDto {
     Integer expectedDim;      // 1536
     Boolean normalize;        // true
     Integer batchSize;         // 64
+    Long microBatchWindowMs;   // cửa sổ gom embed() đồng thời, 0 = tắt
+    Integer microBatchMaxItems; // số câu tối đa mỗi micro-batch
+    Integer microBatchSenders;  // số request /embeddings chạy song song
 }
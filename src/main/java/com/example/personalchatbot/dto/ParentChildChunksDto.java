@@ -0,0 +1,20 @@
+package com.example.personalchatbot.dto;
+
+import com.example.personalchatbot.entity.ChunkMessage;
+import com.example.personalchatbot.entity.ParentBlock;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class ParentChildChunksDto {
+    List<ParentBlock> parents;      // khối lớn, chỉ lưu text
+    List<ChunkMessage> children;    // chunk nhỏ để embed, parentId trỏ về khối cha
+}
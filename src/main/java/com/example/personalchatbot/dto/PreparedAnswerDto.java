@@ -0,0 +1,20 @@
+package com.example.personalchatbot.dto;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+import java.util.List;
+
+/** Kết quả bước retrieve + dựng prompt, chưa gọi LLM (dùng chung cho trả lời thường và stream) */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class PreparedAnswerDto {
+    PromptDto prompt;
+    List<String> citations;
+    RetrievalStatsDto retrieval;
+}
@@ -6,6 +6,8 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.experimental.FieldDefaults;
 
+import java.util.List;
+
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
@@ -13,4 +15,10 @@ import lombok.experimental.FieldDefaults;
 public class PromptDto {
     String system;
     String user;
+    List<SearchHitDto> hits; // hit thực sự đưa vào context (hit không vừa ngân sách token bị bỏ)
+
+    public PromptDto(String system, String user) {
+        this.system = system;
+        this.user = user;
+    }
 }
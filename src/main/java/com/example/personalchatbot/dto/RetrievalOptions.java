@@ -0,0 +1,39 @@
+package com.example.personalchatbot.dto;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+@Data
+@Builder(toBuilder = true)
+@AllArgsConstructor
+@NoArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class RetrievalOptions {
+    int topK;           // số ứng viên lấy từ vector search (mặc định 60)
+    int keepN;          // số chunk đưa vào prompt (mặc định 8)
+    Double mmrLambda;   // MMR: 1.0 = chỉ relevance, 0.0 = chỉ đa dạng; null = tắt MMR (sort theo similarity)
+    String expansion;   // mở rộng truy vấn: none | multi | hyde | both (null = none)
+    int expansionCount; // số paraphrase khi expansion = multi/both
+    long expansionBudgetMs; // thời gian tối đa chờ truy vấn phụ, quá hạn thì chỉ dùng kết quả câu hỏi gốc
+    boolean adaptive;   // K thích ứng: bắt đầu từ initialK, chỉ nới khi cần
+    int initialK;       // K lần search đầu khi adaptive
+    int maxTopK;        // trần K khi kết quả có filter quá thưa
+    Double minSimilarity; // bỏ hit có similarity thấp hơn ngưỡng (null = không lọc)
+    Double maxGap;      // cắt khi similarity tụt hơn mức này giữa 2 hit liên tiếp (null = không cắt)
+    boolean relaxFilters; // filter suy luận sai/hẹp: bổ sung hit chỉ khớp project, rồi không filter (cùng 1 query)
+    boolean hierarchical; // chọn top tài liệu trước, rồi chỉ tìm chunk trong các tài liệu đó
+    boolean smallToBig; // thay chunk con bằng khối cha (đã gộp trùng) khi đưa vào prompt
+    boolean stitch;     // ghép các chunk liên tiếp cùng tài liệu, bỏ phần overlap trùng lặp
+    boolean stitchNeighbours; // kéo thêm chunk lân cận khi ngữ cảnh còn dưới maxContextTokens
+    int maxContextTokens; // ngân sách token cho phần ngữ cảnh (cùng trần với PromptService)
+    boolean speculative; // search không filter trong lúc chờ suy luận metadata, lọc sau khi có filters
+    int speculativeOversample; // K đoán trước = topK * hệ số này (chặn bởi maxTopK)
+    String compression; // nén ngữ cảnh theo câu hỏi: none | lexical | embedding (null = none)
+    int compressionMaxSentences; // số câu tối đa giữ lại trong mỗi hit khi nén
+    boolean answerCache; // trả câu trả lời đã cache cho câu hỏi gần giống cùng filters
+    Integer maxOutputTokens; // giới hạn output của lần gọi LLM, trừ khỏi ngân sách context (null = llm.max-output-token)
+}
@@ -0,0 +1,26 @@
+package com.example.personalchatbot.dto;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+import java.util.List;
+
+/** Telemetry của 1 lần retrieve: K đã chọn và lý do dừng */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class RetrievalStatsDto {
+    int requestedK;     // K cuối cùng gửi xuống vector search
+    int fetched;        // số hit thực nhận
+    int rounds;         // số lần gọi search (>1 = đã nới K)
+    int afterCutoff;    // còn lại sau ngưỡng similarity / score gap
+    int kept;           // số chunk đưa vào prompt
+    String stopReason;  // full | threshold | gap | exhausted
+    List<Integer> tiers; // tier filter của từng chunk đã giữ (cùng thứ tự citations), chỉ có khi nới filter
+}
@@ -1,7 +1,9 @@
 package com.example.personalchatbot.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
+import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.experimental.FieldDefaults;
@@ -9,6 +11,7 @@ import lombok.experimental.FieldDefaults;
 import java.util.UUID;
 
 @Data
+@Builder(toBuilder = true)
 @AllArgsConstructor
 @NoArgsConstructor
 @FieldDefaults(level = AccessLevel.PRIVATE)
@@ -16,8 +19,14 @@ public class SearchHitDto {
     UUID id;
     String docId;
     long chunkId;
+    Long lastChunkId;   // khác null khi các chunk liên tiếp chunkId..lastChunkId đã được ghép thành 1 khối
     String content;
     String metadataJson;
+    Integer tokenCount; // số token của content lúc ingest (null = chưa có / content đã bị ghép lại)
     double distance;   // cosine distance (0 tốt nhất)
     double similarity;  // 1 - distance
+    @JsonIgnore
+    float[] embedding;  // chỉ có khi search(..., withEmbeddings=true), dùng cho rerank MMR
+    Long parentId;      // chỉ có sau khi mở rộng small-to-big: content là khối cha
+    Integer tier;       // chỉ có khi searchRelaxed: 0 = khớp đủ filter, 1 = chỉ khớp project, 2 = không filter
 }
@@ -0,0 +1,32 @@
+package com.example.personalchatbot.dto;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+/** Kế hoạch thực thi 1 truy vấn vector có filter */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class SearchPlanDto {
+    public static final String ANN = "ann";                 // HNSW + lọc sau (filter lỏng / không filter)
+    public static final String ITERATIVE = "iterative";     // HNSW + hnsw.iterative_scan (pgvector >= 0.8)
+    public static final String OVERSAMPLE = "oversample";   // HNSW lấy dư candidateK rồi lọc
+    public static final String EXACT = "exact";             // quét chính xác tập con đã lọc
+
+    String strategy;
+    long baseRows;          // số dòng index sẽ duyệt (toàn bảng hoặc partition của project)
+    long estimatedRows;     // ước lượng số dòng khớp filter
+    double selectivity;     // estimatedRows / baseRows
+    int efSearch;           // hnsw.ef_search áp dụng (0 = mặc định)
+    int candidateK;         // số ứng viên lấy dư khi OVERSAMPLE
+
+    public static SearchPlanDto ann() {
+        return SearchPlanDto.builder().strategy(ANN).selectivity(1.0).build();
+    }
+}
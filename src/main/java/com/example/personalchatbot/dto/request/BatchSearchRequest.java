@@ -0,0 +1,20 @@
+package com.example.personalchatbot.dto.request;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+import java.util.List;
+import java.util.Map;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class BatchSearchRequest {
+    List<String> queries;
+    Integer topK;                   // mặc định 10
+    Map<String, String> filters;    // áp dụng chung cho mọi query
+}
@@ -10,4 +10,7 @@ import lombok.experimental.SuperBuilder;
 @FieldDefaults(level = AccessLevel.PRIVATE)
 public class MessageRequest {
     String message;
+    Double mmrLambda;   // tuỳ chọn: ghi đè lambda MMR mặc định (rag.mmr-lambda)
+    String expansion;   // tuỳ chọn: ghi đè rag.expansion.mode (none | multi | hyde | both)
+    String sessionId;   // tuỳ chọn: hội thoại nhiều lượt (câu hỏi nối tiếp được viết lại thành câu độc lập)
 }
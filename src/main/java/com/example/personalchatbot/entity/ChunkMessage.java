@@ -37,5 +37,12 @@ public class ChunkMessage {
     @Column(columnDefinition = "jsonb")
     private String metadata;
 
+    private Long parentId;      // khối cha trong rag_parent_blocks (null = chunk thường)
+
+    private Integer tokenCount; // số token của content, đếm lúc chia chunk
+
+    @Column(length = 32)
+    private String tokenizer;   // tokenizer của tokenCount (vd: cl100k_base)
+
     private LocalDateTime updatedAt;
 }
@@ -0,0 +1,27 @@
+package com.example.personalchatbot.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/** Phiên hội thoại lưu xuống Postgres (tuỳ chọn): tóm tắt cuốn chiếu + các lượt gần nhất */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "rag_sessions")
+public class ConversationSession {
+    @Id
+    private String sessionId;
+
+    @Column(columnDefinition = "text")
+    private String summary;     // tóm tắt các lượt cũ
+
+    @Column(columnDefinition = "jsonb")
+    private String turns;       // [{question, answer}, ...] các lượt chưa tóm tắt
+
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,41 @@
+package com.example.personalchatbot.entity;
+
+import com.pgvector.PGvector;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/** Vector mức tài liệu (title + phần đầu nội dung) để chọn tài liệu trước khi tìm chunk */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "rag_documents")
+public class DocumentMessage {
+    @Id
+    @GeneratedValue
+    private UUID id;
+
+    @Column(nullable = false, unique = true)
+    private String docId;
+
+    private String title;
+
+    @Column(columnDefinition = "text")
+    private String summary;     // đoạn text đã đem embed
+
+    @JdbcTypeCode(SqlTypes.OTHER)
+    @Column(nullable = false, columnDefinition = "vector(1536)")
+    private PGvector embedding;
+
+    @Column(columnDefinition = "jsonb")
+    private String metadata;
+
+    private LocalDateTime updatedAt;
+}
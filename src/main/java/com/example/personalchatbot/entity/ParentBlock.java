@@ -0,0 +1,37 @@
+package com.example.personalchatbot.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/** Khối cha (ngữ cảnh lớn) của các chunk con; chỉ lưu text, không embed */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "rag_parent_blocks")
+public class ParentBlock {
+    @Id
+    @GeneratedValue
+    private UUID id;
+
+    @Column(nullable = false)
+    private String docId;
+
+    @Column(nullable = false)
+    private long parentId;      // thứ tự khối cha trong tài liệu, chunk con trỏ tới qua rag_chunks.parent_id
+
+    @Column(nullable = false, columnDefinition = "text")
+    private String content;
+
+    @Column(columnDefinition = "jsonb")
+    private String metadata;
+
+    private Integer tokenCount; // số token của content (tokenizer ghi trong metadata)
+
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,14 @@
+package com.example.personalchatbot.event;
+
+import com.example.personalchatbot.entity.ChunkMessage;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.List;
+
+/** Phát ra (sau commit) khi chunk bị xoá khỏi rag_chunks; chunk chỉ có id, docId, metadata */
+@Getter
+@RequiredArgsConstructor
+public class ChunksDeletedEvent {
+    private final List<ChunkMessage> chunks;
+}
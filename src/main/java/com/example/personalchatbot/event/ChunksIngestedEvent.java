@@ -0,0 +1,14 @@
+package com.example.personalchatbot.event;
+
+import com.example.personalchatbot.entity.ChunkMessage;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.List;
+
+/** Phát ra sau khi embedAndSaveAll() đã lưu chunk vào rag_chunks (id đã được gán) */
+@Getter
+@RequiredArgsConstructor
+public class ChunksIngestedEvent {
+    private final List<ChunkMessage> chunks;
+}
@@ -3,8 +3,11 @@ package com.example.personalchatbot.repository;
 import com.example.personalchatbot.entity.ChunkMessage;
 import org.springframework.data.jpa.repository.JpaRepository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface RagChunkRepository extends JpaRepository<ChunkMessage, Long> {
     Optional<ChunkMessage> findByDocIdAndChunkId(String docId, Long chunkId);
+    List<ChunkMessage> findByDocIdAndChunkIdIn(String docId, Collection<Long> chunkIds);
 }
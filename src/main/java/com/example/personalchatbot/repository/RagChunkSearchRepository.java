@@ -0,0 +1,212 @@
+package com.example.personalchatbot.repository;
+
+import com.example.personalchatbot.dto.SearchHitDto;
+import com.example.personalchatbot.dto.SearchPlanDto;
+import com.pgvector.PGvector;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.core.BaseConnection;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.UUID;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * kNN trên rag_chunks bằng JDBC thuần (không qua Hibernate):
+ * - Vector query bind thẳng bằng PGvector (gửi dạng binary khi driver bật binary transfer cho kiểu vector),
+ *   không format/parse chuỗi 1536 số mỗi lần
+ * - SQL dựng 1 lần cho mỗi "hình dạng" filter rồi cache; SQL giống hệt nhau nên pgjdbc tự server-prepare
+ *   sau prepareThreshold lần trên mỗi connection
+ * - Map dòng bằng RowMapper, đọc cột theo kiểu (UUID, long, double) thay vì Object[]
+ * - Thực thi theo {@link SearchPlanDto}: ANN, iterative scan, oversample, hoặc quét chính xác tập đã lọc
+ */
+@Slf4j
+@Repository
+@RequiredArgsConstructor
+public class RagChunkSearchRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    // hình dạng filter -> SQL
+    private final Map<String, String> sqlCache = new ConcurrentHashMap<>();
+    // connection vật lý đã đăng ký kiểu vector (pool giữ connection lâu -> chỉ làm 1 lần / connection)
+    private final Map<BaseConnection, Boolean> registered = Collections.synchronizedMap(new WeakHashMap<>());
+    private volatile int vectorOid = -1; // -1 = chưa tra, 0 = không bật được binary
+
+    /**
+     * @param filters       filter đã whitelist, bind dạng tham số theo thứ tự key (sorted -> hình dạng ổn định)
+     * @param inlineProject project nhúng literal (đã quote) để planner khớp partial index, null = không có
+     * @param plan          chiến lược do planner chọn
+     */
+    public List<SearchHitDto> search(PGvector qvec, int k, SortedMap<String, String> filters, String inlineProject,
+                                     boolean withEmbeddings, SearchPlanDto plan) {
+        String strategy = plan == null ? SearchPlanDto.ANN : plan.getStrategy();
+        String sql = sqlCache.computeIfAbsent(shapeKey(strategy, filters, inlineProject, withEmbeddings),
+                x -> buildSql(strategy, filters, inlineProject, withEmbeddings));
+        int candidateK = plan == null ? k : Math.max(k, plan.getCandidateK());
+
+        if (SearchPlanDto.ANN.equals(strategy) || SearchPlanDto.EXACT.equals(strategy)) {
+            return query(sql, qvec, k, candidateK, filters, strategy, withEmbeddings);
+        }
+
+        // SET LOCAL chỉ có hiệu lực trong transaction -> chạy SET + truy vấn trên cùng connection
+        return transactionTemplate.execute(status -> {
+            if (plan.getEfSearch() > 0) jdbcTemplate.execute("SET LOCAL hnsw.ef_search = " + plan.getEfSearch());
+            if (SearchPlanDto.ITERATIVE.equals(strategy)) jdbcTemplate.execute("SET LOCAL hnsw.iterative_scan = strict_order");
+            return query(sql, qvec, k, candidateK, filters, strategy, withEmbeddings);
+        });
+    }
+
+    /**
+     * kNN chính xác chỉ trong chunk của các tài liệu cho trước (bước 2 của search 2 cấp).
+     * Tập ứng viên nhỏ -> lọc bằng btree doc_id rồi sort, OFFSET 0 để planner không dùng ANN index toàn cục.
+     * @param filters filter mức chunk (module/env/path có thể khác giữa các chunk của cùng tài liệu)
+     */
+    public List<SearchHitDto> searchWithinDocuments(PGvector qvec, int k, List<String> docIds,
+                                                    SortedMap<String, String> filters, boolean withEmbeddings) {
+        String embeddingCol = withEmbeddings ? ", embedding" : "";
+        String sql = sqlCache.computeIfAbsent("docs|" + String.join(",", filters.keySet()) + "|" + withEmbeddings, x -> {
+            StringBuilder where = new StringBuilder();
+            for (String key : filters.keySet()) where.append("        AND (metadata->>'").append(key).append("') = ?\n");
+            return """
+                    SELECT id, doc_id, chunk_id, content, metadata::text, distance, token_count%s
+                    FROM (SELECT id, doc_id, chunk_id, content, metadata, (embedding <=> ?) AS distance, token_count%s
+                          FROM rag_chunks
+                          WHERE doc_id = ANY(?)
+                    %s      OFFSET 0) t
+                    ORDER BY distance ASC
+                    LIMIT ?""".formatted(embeddingCol, embeddingCol, where);
+        });
+
+        return jdbcTemplate.query(con -> {
+            prepareConnection(con);
+            PreparedStatement ps = con.prepareStatement(sql);
+            int i = 1;
+            ps.setObject(i++, qvec);
+            ps.setArray(i++, con.createArrayOf("varchar", docIds.toArray()));
+            for (String v : filters.values()) ps.setString(i++, v);
+            ps.setInt(i, k);
+            ps.setFetchSize(k);
+            return ps;
+        }, rowMapper(withEmbeddings));
+    }
+
+    private List<SearchHitDto> query(String sql, PGvector qvec, int k, int candidateK, SortedMap<String, String> filters,
+                                     String strategy, boolean withEmbeddings) {
+        return jdbcTemplate.query(con -> {
+            prepareConnection(con);
+            PreparedStatement ps = con.prepareStatement(sql);
+            int i = 1;
+            ps.setObject(i++, qvec);
+            if (SearchPlanDto.OVERSAMPLE.equals(strategy)) ps.setInt(i++, candidateK);
+            for (String v : filters.values()) ps.setString(i++, v);
+            ps.setInt(i, k);
+            ps.setFetchSize(k);
+            return ps;
+        }, rowMapper(withEmbeddings));
+    }
+
+    private static String shapeKey(String strategy, Map<String, String> filters, String inlineProject, boolean withEmbeddings) {
+        return strategy + "|" + String.join(",", filters.keySet()) + "|"
+                + (inlineProject == null ? "" : inlineProject) + "|" + withEmbeddings;
+    }
+
+    static String buildSql(String strategy, Map<String, String> filters, String inlineProject, boolean withEmbeddings) {
+        StringBuilder where = new StringBuilder(" WHERE 1=1\n");
+        if (inlineProject != null) where.append(" AND (metadata->>'project') = ").append(inlineProject).append("\n");
+        for (String key : filters.keySet()) where.append(" AND (metadata->>'").append(key).append("') = ?\n");
+        String embeddingCol = withEmbeddings ? ", embedding" : "";
+
+        return switch (strategy) {
+            // OFFSET 0 chặn planner kéo subquery lên -> ORDER BY không khớp ANN index, lọc bằng btree/seq rồi sort chính xác
+            case SearchPlanDto.EXACT -> """
+                    SELECT id, doc_id, chunk_id, content, metadata::text, distance, token_count%s
+                    FROM (SELECT id, doc_id, chunk_id, content, metadata, (embedding <=> ?) AS distance, token_count%s
+                          FROM rag_chunks
+                    %s      OFFSET 0) t
+                    ORDER BY distance ASC
+                    LIMIT ?""".formatted(embeddingCol, embeddingCol, where);
+            // lấy dư candidateK ứng viên bằng ANN rồi mới lọc; project có partition nằm trong subquery
+            // -> khớp partial index và candidateK (tính theo số dòng của project) đúng với tập được quét
+            case SearchPlanDto.OVERSAMPLE -> {
+                String inner = inlineProject == null ? ""
+                        : "      WHERE (metadata->>'project') = " + inlineProject + "\n";
+                StringBuilder outer = new StringBuilder(" WHERE 1=1\n");
+                for (String key : filters.keySet()) outer.append(" AND (metadata->>'").append(key).append("') = ?\n");
+                yield """
+                        SELECT id, doc_id, chunk_id, content, metadata::text, distance, token_count%s
+                        FROM (SELECT id, doc_id, chunk_id, content, metadata, (embedding <=> ?) AS distance, token_count%s
+                              FROM rag_chunks
+                        %s      ORDER BY distance ASC
+                              LIMIT ?) t
+                        %s ORDER BY distance ASC
+                        LIMIT ?""".formatted(embeddingCol, embeddingCol, inner, outer);
+            }
+            // ANN / ITERATIVE: cùng SQL, ITERATIVE khác ở SET LOCAL hnsw.iterative_scan
+            default -> """
+                    SELECT id, doc_id, chunk_id, content, metadata::text,
+                           (embedding <=> ?) AS distance, token_count%s
+                    FROM rag_chunks
+                    %s ORDER BY distance ASC
+                    LIMIT ?""".formatted(embeddingCol, where);
+        };
+    }
+
+    private static RowMapper<SearchHitDto> rowMapper(boolean withEmbeddings) {
+        return (ResultSet rs, int rowNum) -> {
+            double distance = rs.getDouble(6);
+            return SearchHitDto.builder()
+                    .id(rs.getObject(1, UUID.class))
+                    .docId(rs.getString(2))
+                    .chunkId(rs.getLong(3))
+                    .content(rs.getString(4))
+                    .metadataJson(rs.getString(5))
+                    .distance(distance)
+                    .similarity(1.0 - distance) // cosine similarity ~ 1 - distance
+                    .tokenCount(rs.getObject(7, Integer.class))
+                    .embedding(withEmbeddings && rs.getObject(8) instanceof PGvector v ? v.toArray() : null)
+                    .build();
+        };
+    }
+
+    // Đăng ký kiểu vector cho connection và bật binary send/receive theo OID của kiểu vector
+    private void prepareConnection(Connection con) throws SQLException {
+        BaseConnection pg = con.unwrap(BaseConnection.class);
+        if (registered.containsKey(pg)) return;
+        PGvector.addVectorType(pg);
+        int oid = vectorOid(pg);
+        if (oid > 0) {
+            try {
+                pg.getQueryExecutor().addBinarySendOid(oid);
+                pg.getQueryExecutor().addBinaryReceiveOid(oid);
+            } catch (RuntimeException e) {
+                // driver không hỗ trợ -> vẫn chạy, PGvector gửi dạng text
+                log.warn("Không bật được binary transfer cho vector: {}", e.getMessage());
+                vectorOid = 0;
+            }
+        }
+        registered.put(pg, Boolean.TRUE);
+    }
+
+    private int vectorOid(BaseConnection pg) throws SQLException {
+        if (vectorOid >= 0) return vectorOid;
+        try (PreparedStatement ps = pg.prepareStatement("SELECT oid FROM pg_type WHERE typname = 'vector'");
+             ResultSet rs = ps.executeQuery()) {
+            vectorOid = rs.next() ? rs.getInt(1) : 0;
+        }
+        return vectorOid;
+    }
+}
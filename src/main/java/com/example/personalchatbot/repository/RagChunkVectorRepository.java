@@ -0,0 +1,45 @@
+package com.example.personalchatbot.repository;
+
+import com.example.personalchatbot.dto.ChunkVectorDto;
+import com.example.personalchatbot.service.search.index.MetadataCodes;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pgvector.PGvector;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/** Đọc thô (id, embedding, metadata) từ rag_chunks để nạp các index vector trong JVM */
+@Repository
+@RequiredArgsConstructor
+public class RagChunkVectorRepository {
+    private static final int FETCH_SIZE = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Duyệt toàn bộ rag_chunks theo kiểu streaming (cursor phía server),
+     * không nạp hết kết quả vào heap. Cần transaction để driver PostgreSQL dùng fetchSize.
+     */
+    public void forEachVector(Consumer<ChunkVectorDto> sink) {
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(
+                    "SELECT id, embedding::text, metadata::text FROM rag_chunks",
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(FETCH_SIZE);
+            return ps;
+        }, (RowCallbackHandler) rs -> sink.accept(new ChunkVectorDto(
+                rs.getObject(1, UUID.class),
+                new PGvector(rs.getString(2)).toArray(),
+                MetadataCodes.readKeys(objectMapper, rs.getString(3))
+        ))));
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.personalchatbot.repository;
+
+import com.example.personalchatbot.entity.DocumentMessage;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+public interface RagDocumentRepository extends JpaRepository<DocumentMessage, UUID> {
+    List<DocumentMessage> findByDocIdIn(Collection<String> docIds);
+}
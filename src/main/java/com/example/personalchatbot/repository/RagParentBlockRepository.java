@@ -0,0 +1,11 @@
+package com.example.personalchatbot.repository;
+
+import com.example.personalchatbot.entity.ParentBlock;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+import java.util.UUID;
+
+public interface RagParentBlockRepository extends JpaRepository<ParentBlock, UUID> {
+    List<ParentBlock> findByDocId(String docId);
+}
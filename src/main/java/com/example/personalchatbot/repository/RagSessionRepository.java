@@ -0,0 +1,7 @@
+package com.example.personalchatbot.repository;
+
+import com.example.personalchatbot.entity.ConversationSession;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface RagSessionRepository extends JpaRepository<ConversationSession, String> {
+}
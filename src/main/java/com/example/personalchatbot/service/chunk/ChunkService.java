@@ -3,7 +3,9 @@ package com.example.personalchatbot.service.chunk;
 import com.example.personalchatbot.dto.ChunkingOptions;
 import com.example.personalchatbot.config.ErrorConfig;
 import com.example.personalchatbot.dto.MetadataDto;
+import com.example.personalchatbot.dto.ParentChildChunksDto;
 import com.example.personalchatbot.entity.ChunkMessage;
+import com.example.personalchatbot.entity.ParentBlock;
 import com.example.personalchatbot.exception.AppException;
 import com.example.personalchatbot.service.implement.ChunkServiceImpl;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -26,21 +28,39 @@ import java.util.regex.Pattern;
 @Service
 @RequiredArgsConstructor
 public class ChunkService implements ChunkServiceImpl {
+    // tokenizer dùng đếm token (cùng Encoding bean), lưu cùng token_count để biết số đếm thuộc tokenizer nào
+    public static final String TOKENIZER = EncodingType.CL100K_BASE.getName();
+    public static final String SOURCE_CODE = "code"; // metadata.source của chunk mã nguồn
+
     private final Encoding embeddingEncoding;
     private final ObjectMapper objectMapper;
     private final ChunkingOptions textOption = new ChunkingOptions(500, 80, 200, Locale.forLanguageTag("vi-VN"), true);
     private final ChunkingOptions javaOption = new ChunkingOptions(300, 80, 100, Locale.forLanguageTag("vi-VN"), true);
+    // small-to-big: khối cha đủ lớn cho prompt, chunk con nhỏ để khớp chính xác
+    private final ChunkingOptions parentOption = new ChunkingOptions(1500, 0, 200, Locale.forLanguageTag("vi-VN"), true);
+    private final ChunkingOptions childOption = new ChunkingOptions(150, 30, 20, Locale.forLanguageTag("vi-VN"), false);
 
 
     @Override
     public List<ChunkMessage> chunkText(String docId, String text, ChunkingOptions options, MetadataDto metadataDto) {
+        return chunkText(docId, text, options, metadataDto, null);
+    }
+
+    // language != null -> chunk mã nguồn (source = code), để bước nén ngữ cảnh không cắt dòng code
+    private List<ChunkMessage> chunkText(String docId, String text, ChunkingOptions options, MetadataDto metadataDto,
+                                         String language) {
         try {
             options = options == null ? textOption : options;
             String normalized = normalize(text);
             Map<String, Object> metadata = initMetadata(options, metadataDto);
+            if (language != null) {
+                metadata.put("source", SOURCE_CODE);
+                metadata.put("language", language);
+            }
             // (1) Trường hợp toàn bộ tài liệu quá ngắn -> emit 1 chunk duy nhất
-            if (countTokens(normalized) <= options.getMinChunkTokens()) {
-                return List.of(chunk(docId, 1, normalized, metadata));
+            int totalTokens = countTokens(normalized);
+            if (totalTokens <= options.getMinChunkTokens()) {
+                return List.of(chunk(docId, 1, normalized, metadata, totalTokens));
             }
 
             List<String> units = options.getMarkdownAware()
@@ -76,10 +96,11 @@ public class ChunkService implements ChunkServiceImpl {
                         if (countedTokens >= options.getMinChunkTokens()) {
                             if (pendingTokens > 0 && countedTokens + pendingTokens <= options.getMaxTokens()) {
                                 content = join(pendingSmall) + "\n\n" + content;
+                                countedTokens = countTokens(content); // nội dung đã đổi -> đếm lại
                                 pendingSmall.clear();
                                 pendingTokens = 0;
                             }
-                            out.add(chunk(docId, chunkSeq++, content, metadata));
+                            out.add(chunk(docId, chunkSeq++, content, metadata, countedTokens));
                         }
                         else {
                             pendingSmall.add(content);
@@ -100,10 +121,11 @@ public class ChunkService implements ChunkServiceImpl {
                         if (pendingTokens > 0 &&
                                 countedTokens + pendingTokens <= options.getMaxTokens()) {
                             content = join(pendingSmall) + "\n\n" + content;
+                            countedTokens = countTokens(content); // nội dung đã đổi -> đếm lại
                             pendingSmall.clear();
                             pendingTokens = 0;
                         }
-                        out.add(chunk(docId, chunkSeq++, content, metadata));
+                        out.add(chunk(docId, chunkSeq++, content, metadata, countedTokens));
                         carryOverlap = makeSentenceOverlap(buf, options.getOverlapTokens());
                     }
                     else {
@@ -134,7 +156,7 @@ public class ChunkService implements ChunkServiceImpl {
                         .reduce((a,b)->a+"\n"+b).orElse("");
 
                 out.addAll(chunkText(docId,
-                        "Class " + header + "\n" + classHeaderBlock, javaOption, metadataDto).stream()
+                        "Class " + header + "\n" + classHeaderBlock, javaOption, metadataDto, "java").stream()
                         .peek(c -> c.setChunkId((long) seq.getAndIncrement()))
                         .toList());
 
@@ -149,7 +171,7 @@ public class ChunkService implements ChunkServiceImpl {
                             : (m instanceof ConstructorDeclaration cd ? cd.getDeclarationAsString(false, false, true) : m.getMetaModel().toString());
 
                     String block = "// " + header + " :: " + sig + "\n" + m;
-                    for (ChunkMessage cm : chunkText(docId, block, javaOption, metadataDto)) {
+                    for (ChunkMessage cm : chunkText(docId, block, javaOption, metadataDto, "java")) {
                         cm.setChunkId((long) seq.getAndIncrement());
                         out.add(cm);
                     }
@@ -158,7 +180,7 @@ public class ChunkService implements ChunkServiceImpl {
 
             // Nếu file không có class (hiếm), chunk toàn bộ như text
             if (out.isEmpty()) {
-                List<ChunkMessage> solo = chunkText(docId, javaSource, javaOption, metadataDto);
+                List<ChunkMessage> solo = chunkText(docId, javaSource, javaOption, metadataDto, "java");
                 assignIds(solo, seq);
                 out.addAll(solo);
             }
@@ -168,16 +190,49 @@ public class ChunkService implements ChunkServiceImpl {
         }
     }
 
+    @Override
+    public ParentChildChunksDto chunkParentChild(String docId, String text, MetadataDto metadataDto) {
+        try {
+            List<ChunkMessage> parentChunks = chunkText(docId, text, parentOption, metadataDto);
+            List<ParentBlock> parents = new ArrayList<>(parentChunks.size());
+            List<ChunkMessage> children = new ArrayList<>();
+            AtomicInteger seq = new AtomicInteger(1);
+
+            for (ChunkMessage p : parentChunks) {
+                ParentBlock parent = new ParentBlock();
+                parent.setDocId(docId);
+                parent.setParentId(p.getChunkId());
+                parent.setContent(p.getContent());
+                parent.setTokenCount(p.getTokenCount());
+                parent.setMetadata(p.getMetadata());
+                parent.setUpdatedAt(p.getUpdatedAt());
+                parents.add(parent);
+
+                // chunk con đánh số liên tục trong tài liệu, trỏ về khối cha
+                for (ChunkMessage c : chunkText(docId, p.getContent(), childOption, metadataDto)) {
+                    c.setChunkId((long) seq.getAndIncrement());
+                    c.setParentId(p.getChunkId());
+                    children.add(c);
+                }
+            }
+            return new ParentChildChunksDto(parents, children);
+        } catch (Exception e) {
+            throw new AppException(ErrorConfig.INTERNAL_SERVER_ERROR,e.getMessage());
+        }
+    }
+
     private void assignIds(List<ChunkMessage> list, AtomicInteger seq) {
         for (ChunkMessage c : list) c.setChunkId((long) seq.getAndIncrement());
     }
 
-    private ChunkMessage chunk(String docId, int seq, String content, Map<String, Object> metadata) {
+    private ChunkMessage chunk(String docId, int seq, String content, Map<String, Object> metadata, int tokens) {
         var cm = new ChunkMessage();
         try {
             cm.setDocId(docId);
             cm.setChunkId((long) seq);
             cm.setContent(content);
+            cm.setTokenCount(tokens); // đã đếm khi chia chunk -> lưu lại, lúc dựng prompt khỏi tokenize
+            cm.setTokenizer(TOKENIZER);
             cm.setMetadata(metadata == null ? null : objectMapper.writeValueAsString(metadata)); // jsonb
             cm.setUpdatedAt(java.time.LocalDateTime.now());
         } catch (Exception e) {
@@ -261,7 +316,7 @@ public class ChunkService implements ChunkServiceImpl {
                 "overlapTokens", options.getOverlapTokens(),
                 "minChunkTokens", options.getMinChunkTokens()
         ));
-        metadata.put("tokenizer", EncodingType.CL100K_BASE); // hoặc bạn đưa từ config nếu khác
+        metadata.put("tokenizer", TOKENIZER); // hoặc bạn đưa từ config nếu khác
         if (metadataDto != null) {
             metadata.put("project", metadataDto.getProject());
             metadata.put("module",  metadataDto.getModule());
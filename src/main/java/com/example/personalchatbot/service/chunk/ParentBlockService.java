@@ -0,0 +1,98 @@
+package com.example.personalchatbot.service.chunk;
+
+import com.example.personalchatbot.dto.SearchHitDto;
+import com.example.personalchatbot.entity.ChunkMessage;
+import com.example.personalchatbot.entity.ParentBlock;
+import com.example.personalchatbot.event.ChunksDeletedEvent;
+import com.example.personalchatbot.repository.RagParentBlockRepository;
+import com.example.personalchatbot.service.implement.ParentBlockServiceImpl;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Array;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Small-to-big: chunk con nhỏ được embed để khớp chính xác, khi trả lời thì đưa khối cha (rag_parent_blocks)
+ * vào prompt để ngữ cảnh liền mạch mà không phải embed chunk lớn.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ParentBlockService implements ParentBlockServiceImpl {
+    private final RagParentBlockRepository ragParentBlockRepo;
+    private final JdbcTemplate jdbcTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Override
+    @Transactional
+    public void saveAll(List<ParentBlock> parents) {
+        if (parents == null || parents.isEmpty()) return;
+        // ingest lại tài liệu -> khối cha cũ không còn đúng; chunk con cũ vẫn trỏ parent_id cũ
+        // nên xoá cùng transaction, tránh join nhầm sang nội dung khối cha mới
+        List<ChunkMessage> deleted = new ArrayList<>();
+        for (String docId : parents.stream().map(ParentBlock::getDocId).collect(Collectors.toSet())) {
+            ragParentBlockRepo.deleteAllInBatch(ragParentBlockRepo.findByDocId(docId)); // xoá ngay, trước insert (UNIQUE doc_id, parent_id)
+            jdbcTemplate.query("DELETE FROM rag_chunks WHERE doc_id = ? AND parent_id IS NOT NULL RETURNING id, metadata::text",
+                    rs -> {
+                        ChunkMessage c = new ChunkMessage();
+                        c.setId(rs.getObject(1, UUID.class));
+                        c.setDocId(docId);
+                        c.setMetadata(rs.getString(2));
+                        deleted.add(c);
+                    }, docId);
+        }
+        ragParentBlockRepo.saveAll(parents);
+        // bản sao trong JVM (HNSW/mmap) và bộ đếm planner/partition nhận qua @TransactionalEventListener, chỉ khi commit
+        if (!deleted.isEmpty()) eventPublisher.publishEvent(new ChunksDeletedEvent(deleted));
+    }
+
+    @Override
+    public List<SearchHitDto> expandToParents(List<SearchHitDto> hits) {
+        if (hits == null || hits.isEmpty()) return hits;
+
+        // 1 round trip: chunk id -> (parent_id, nội dung khối cha)
+        Map<UUID, Object[]> parentByChunk = new HashMap<>();
+        try {
+            jdbcTemplate.query(con -> {
+                var ps = con.prepareStatement("""
+                        SELECT c.id, p.parent_id, p.content, p.token_count
+                        FROM rag_chunks c
+                        JOIN rag_parent_blocks p ON p.doc_id = c.doc_id AND p.parent_id = c.parent_id
+                        WHERE c.id = ANY(?)
+                        """);
+                Array ids = con.createArrayOf("uuid", hits.stream().map(SearchHitDto::getId).toArray());
+                ps.setArray(1, ids);
+                return ps;
+            }, rs -> {
+                parentByChunk.put(rs.getObject(1, UUID.class), new Object[]{rs.getLong(2), rs.getString(3), rs.getObject(4, Integer.class)});
+            });
+        } catch (Exception e) {
+            log.debug("Không mở rộng được khối cha: {}", e.getMessage());
+            return hits;
+        }
+        if (parentByChunk.isEmpty()) return hits;
+
+        // gộp theo (docId, parentId), giữ vị trí của con đứng đầu
+        Map<String, SearchHitDto> seen = new LinkedHashMap<>();
+        for (SearchHitDto h : hits) {
+            Object[] p = parentByChunk.get(h.getId());
+            if (p == null) {
+                seen.putIfAbsent("c:" + h.getId(), h);
+                continue;
+            }
+            long parentId = (Long) p[0];
+            seen.putIfAbsent(h.getDocId() + "#p" + parentId, h.toBuilder()
+                    .parentId(parentId)
+                    .content((String) p[1])
+                    .tokenCount((Integer) p[2])
+                    .build());
+        }
+        return new ArrayList<>(seen.values());
+    }
+}
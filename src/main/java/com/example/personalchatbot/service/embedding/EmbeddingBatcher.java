@@ -0,0 +1,150 @@
+package com.example.personalchatbot.service.embedding;
+
+import com.pgvector.PGvector;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Gom các lời gọi embed 1 câu đến gần nhau thành 1 request /embeddings.
+ * - Dispatcher lấy request đầu tiên rồi chờ thêm tối đa windowMs hoặc đủ maxItems
+ * - Câu trùng nhau trong cùng 1 batch chỉ gửi 1 lần
+ * - Batch được gửi trên pool riêng để dispatcher tiếp tục gom batch kế tiếp trong lúc chờ provider
+ * - close(): chờ các batch đang gửi xong (có giới hạn), request nào còn dở đều kết thúc bằng lỗi
+ */
+@Slf4j
+final class EmbeddingBatcher implements AutoCloseable {
+    private static final long CLOSE_TIMEOUT_MS = 5_000;
+
+    private static final class Pending {
+        final String text;
+        final CompletableFuture<PGvector> future = new CompletableFuture<>();
+
+        Pending(String text) {
+            this.text = text;
+        }
+    }
+
+    private final Function<List<String>, List<PGvector>> flushFn;
+    private final long windowNanos;
+    private final int maxItems;
+    private final LinkedBlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Set<Pending> inFlight = ConcurrentHashMap.newKeySet(); // đã submit, chưa có kết quả
+    private final ExecutorService senders;
+    private final Thread dispatcher;
+    private volatile boolean running = true;
+
+    EmbeddingBatcher(Function<List<String>, List<PGvector>> flushFn, long windowMs, int maxItems, int senderThreads) {
+        this.flushFn = flushFn;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+        this.maxItems = Math.max(1, maxItems);
+        this.senders = Executors.newFixedThreadPool(Math.max(1, senderThreads), r -> {
+            Thread t = new Thread(r, "embedding-batch-sender");
+            t.setDaemon(true);
+            return t;
+        });
+        this.dispatcher = Thread.ofPlatform().daemon().name("embedding-batch-dispatcher").start(this::loop);
+    }
+
+    CompletableFuture<PGvector> submit(String text) {
+        Pending p = new Pending(text);
+        if (!running) {
+            p.future.completeExceptionally(closed());
+            return p.future;
+        }
+        inFlight.add(p);
+        p.future.whenComplete((v, e) -> inFlight.remove(p));
+        queue.add(p);
+        // close() chạy xen giữa lúc kiểm tra và lúc add -> không ai lấy request này nữa
+        if (!running) p.future.completeExceptionally(closed());
+        return p.future;
+    }
+
+    private void loop() {
+        while (running) {
+            List<Pending> batch = null;
+            try {
+                Pending first = queue.take();
+                batch = new ArrayList<>(maxItems);
+                batch.add(first);
+
+                // gom thêm cho tới hết cửa sổ thời gian hoặc đủ maxItems
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < maxItems) {
+                    long remain = deadline - System.nanoTime();
+                    if (remain <= 0) {
+                        queue.drainTo(batch, maxItems - batch.size()); // lấy nốt phần đã có sẵn
+                        break;
+                    }
+                    Pending p = queue.poll(remain, TimeUnit.NANOSECONDS);
+                    if (p == null) break;
+                    batch.add(p);
+                }
+                List<Pending> ready = batch;
+                senders.execute(() -> flush(ready));
+            } catch (InterruptedException e) {
+                // close() khi đang gom -> batch dở không được gửi
+                fail(batch, closed());
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                // vd. pool gửi đã shutdown -> batch bị từ chối
+                log.error("Embedding batcher dispatch lỗi: ", e);
+                fail(batch, e);
+            }
+        }
+    }
+
+    private void flush(List<Pending> batch) {
+        // loại câu trùng: text -> vị trí trong input gửi đi
+        Map<String, Integer> slot = new LinkedHashMap<>();
+        for (Pending p : batch) slot.putIfAbsent(p.text, slot.size());
+        try {
+            List<PGvector> vectors = flushFn.apply(new ArrayList<>(slot.keySet()));
+            for (Pending p : batch) p.future.complete(vectors.get(slot.get(p.text)));
+            if (log.isDebugEnabled()) {
+                log.debug("Embedding micro-batch: {} request -> {} input", batch.size(), slot.size());
+            }
+        } catch (Exception e) {
+            fail(batch, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        dispatcher.interrupt();
+        senders.shutdown();
+        try {
+            dispatcher.join(CLOSE_TIMEOUT_MS);
+            // batch đã gửi đi: chờ provider trả về thay vì bỏ dở
+            if (!senders.awaitTermination(CLOSE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) senders.shutdownNow();
+        } catch (InterruptedException e) {
+            senders.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        // còn trong queue hoặc batch chưa xong sau timeout -> kết thúc bằng lỗi, không để caller chờ mãi
+        queue.clear();
+        fail(new ArrayList<>(inFlight), closed());
+    }
+
+    private static void fail(List<Pending> batch, Throwable e) {
+        if (batch == null) return;
+        for (Pending p : batch) p.future.completeExceptionally(e);
+    }
+
+    private static IllegalStateException closed() {
+        return new IllegalStateException("Embedding batcher is closed");
+    }
+}
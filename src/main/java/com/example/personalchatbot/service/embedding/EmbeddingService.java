@@ -1,18 +1,27 @@
 package com.example.personalchatbot.service.embedding;
 
 import com.example.personalchatbot.config.ErrorConfig;
+import com.example.personalchatbot.config.SearchConfig;
 import com.example.personalchatbot.dto.EmbeddingDto;
+import com.example.personalchatbot.dto.ParentChildChunksDto;
 import com.example.personalchatbot.dto.request.EmbeddingRequest;
 import com.example.personalchatbot.dto.response.EmbeddingResponse;
 import com.example.personalchatbot.entity.ChunkMessage;
+import com.example.personalchatbot.event.ChunksIngestedEvent;
 import com.example.personalchatbot.exception.AppException;
 import com.example.personalchatbot.repository.RagChunkRepository;
+import com.example.personalchatbot.service.chunk.ParentBlockService;
 import com.example.personalchatbot.service.implement.EmbeddingServiceImpl;
+import com.example.personalchatbot.service.search.DocumentIndexService;
 import com.pgvector.PGvector;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
 import reactor.core.publisher.Mono;
@@ -21,7 +30,10 @@ import reactor.util.retry.Retry;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
 
 @Slf4j
 @Service
@@ -30,9 +42,41 @@ public class EmbeddingService implements EmbeddingServiceImpl {
     private final WebClient embeddingWebClient;
     private final EmbeddingDto embeddingDto;
     private final RagChunkRepository ragChunkRepo;
+    private final ApplicationEventPublisher eventPublisher;
+    private final DocumentIndexService documentIndexService;
+    private final SearchConfig searchConfig;
+    private final ParentBlockService parentBlockService;
+    private final TransactionTemplate transactionTemplate;
+
+    // gom các embed() đồng thời thành 1 request (null = tắt, gọi thẳng provider)
+    private EmbeddingBatcher batcher;
+
+    @PostConstruct
+    void initBatcher() {
+        long window = embeddingDto.getMicroBatchWindowMs() != null ? embeddingDto.getMicroBatchWindowMs() : 0;
+        if (window <= 0) return;
+        int maxItems = embeddingDto.getMicroBatchMaxItems() != null && embeddingDto.getMicroBatchMaxItems() > 0
+                ? embeddingDto.getMicroBatchMaxItems() : 64;
+        int senders = embeddingDto.getMicroBatchSenders() != null && embeddingDto.getMicroBatchSenders() > 0
+                ? embeddingDto.getMicroBatchSenders() : 4;
+        batcher = new EmbeddingBatcher(this::callOpenAIEmbeddings, window, maxItems, senders);
+    }
+
+    @PreDestroy
+    void closeBatcher() {
+        if (batcher != null) batcher.close();
+    }
 
     @Override
     public PGvector embed(String text) {
+        if (batcher != null) {
+            try {
+                return batcher.submit(text).join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof AppException ae) throw ae;
+                throw new AppException(ErrorConfig.INTERNAL_SERVER_ERROR, String.valueOf(e.getCause().getMessage()));
+            }
+        }
         List<PGvector> embeddedList = embedAll(List.of(text));
         if (embeddedList.isEmpty()) {
             throw new AppException(ErrorConfig.NO_DATA_FOUND, "Empty embedding response");
@@ -86,13 +130,53 @@ public class EmbeddingService implements EmbeddingServiceImpl {
     @Override
     public void embedAndSaveAll(List<ChunkMessage> chunks) {
         try {
-            embedAndAttach(chunks);
-            ragChunkRepo.saveAll(chunks);
+            embedAndStore(chunks, null);
         } catch (Exception e) {
             throw new AppException(ErrorConfig.INTERNAL_SERVER_ERROR,e.getMessage());
         }
     }
 
+    /** Small-to-big: khối cha chỉ lưu text, chỉ chunk con được embed */
+    @Override
+    public void embedAndSaveParentChild(ParentChildChunksDto chunks) {
+        try {
+            // khối cha mới thay khối cha + chunk con cũ trong cùng transaction với việc lưu chunk con mới
+            embedAndStore(chunks.getChildren(), () -> parentBlockService.saveAll(chunks.getParents()));
+        } catch (AppException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new AppException(ErrorConfig.INTERNAL_SERVER_ERROR,e.getMessage());
+        }
+    }
+
+    /**
+     * Embed chunk (+ text đại diện của từng tài liệu khi bật search 2 cấp) trong 1 lần embedAll ngoài transaction,
+     * rồi ghi trong 1 transaction: beforeSave (nếu có), chunk vào rag_chunks, vector tài liệu vào rag_documents
+     */
+    private void embedAndStore(List<ChunkMessage> chunks, Runnable beforeSave) {
+        Map<String, String> docTexts = searchConfig.isHierarchicalEnabled()
+                ? documentIndexService.documentTexts(chunks) : Map.of();
+        List<String> inputs = new ArrayList<>(chunks.size() + docTexts.size());
+        chunks.forEach(c -> inputs.add(c.getContent()));
+        inputs.addAll(docTexts.values());
+
+        List<PGvector> vectors = embedAll(inputs);
+        for (int i = 0; i < chunks.size(); i++) {
+            chunks.get(i).setEmbedding(vectors.get(i));
+        }
+        Map<String, PGvector> docVectors = new HashMap<>();
+        int i = chunks.size();
+        for (String docId : docTexts.keySet()) docVectors.put(docId, vectors.get(i++));
+
+        transactionTemplate.executeWithoutResult(status -> {
+            if (beforeSave != null) beforeSave.run();
+            ragChunkRepo.saveAll(chunks);
+            if (!docTexts.isEmpty()) documentIndexService.saveDocuments(docTexts, docVectors, chunks);
+        });
+        // báo cho các index/cache phía sau (id đã được gán sau saveAll, đã commit)
+        eventPublisher.publishEvent(new ChunksIngestedEvent(chunks));
+    }
+
     /**
      * Gọi POST /embeddings với body: { model, input[], encoding_format:"float" }
      * Trả về danh sách PGvector (đã chuẩn hoá L2 nếu props.normalize=true).
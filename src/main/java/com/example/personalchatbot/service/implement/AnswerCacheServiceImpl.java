@@ -0,0 +1,20 @@
+package com.example.personalchatbot.service.implement;
+
+import com.example.personalchatbot.dto.AnswerDto;
+
+import java.util.Map;
+
+public interface AnswerCacheServiceImpl {
+    /**
+     * Câu trả lời đã cache cho câu hỏi gần nhất (cosine >= ngưỡng) có cùng filters
+     * @param queryVector embedding câu hỏi
+     * @return bản sao AnswerDto, null nếu không có
+     */
+    AnswerDto lookup(float[] queryVector, Map<String, String> filters);
+
+    /** Lưu câu trả lời; entry bị xoá khi 1 trong các docId được trích dẫn ingest lại */
+    void put(float[] queryVector, Map<String, String> filters, AnswerDto answer);
+
+    /** hit/miss, số entry... */
+    Map<String, Object> stats();
+}
@@ -2,6 +2,7 @@ package com.example.personalchatbot.service.implement;
 
 import com.example.personalchatbot.dto.ChunkingOptions;
 import com.example.personalchatbot.dto.MetadataDto;
+import com.example.personalchatbot.dto.ParentChildChunksDto;
 import com.example.personalchatbot.entity.ChunkMessage;
 
 
@@ -10,4 +11,6 @@ import java.util.List;
 public interface ChunkServiceImpl {
     List<ChunkMessage> chunkText(String docId, String text, ChunkingOptions options, MetadataDto metadataDto);
     List<ChunkMessage> chunkJavaSource(String docId, String javaSource, MetadataDto metadataDto);
+    /** Chunk 2 cấp: khối cha lớn (không embed) + chunk con nhỏ (embed) trỏ về khối cha */
+    ParentChildChunksDto chunkParentChild(String docId, String text, MetadataDto metadataDto);
 }
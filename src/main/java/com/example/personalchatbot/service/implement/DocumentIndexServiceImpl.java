@@ -0,0 +1,18 @@
+package com.example.personalchatbot.service.implement;
+
+import com.example.personalchatbot.entity.ChunkMessage;
+import com.pgvector.PGvector;
+
+import java.util.List;
+import java.util.Map;
+
+public interface DocumentIndexServiceImpl {
+    /** Text đại diện cho từng tài liệu có trong lô chunk (title + phần đầu), key = docId */
+    Map<String, String> documentTexts(List<ChunkMessage> chunks);
+
+    /** Lưu/cập nhật vector tài liệu (upsert theo docId) */
+    void saveDocuments(Map<String, String> texts, Map<String, PGvector> vectors, List<ChunkMessage> chunks);
+
+    /** docId của n tài liệu gần query nhất (có áp filter metadata), rỗng nếu chưa có dữ liệu */
+    List<String> topDocuments(PGvector qvec, int n, Map<String, String> filters);
+}
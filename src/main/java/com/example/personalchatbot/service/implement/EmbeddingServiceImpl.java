@@ -1,5 +1,6 @@
 package com.example.personalchatbot.service.implement;
 
+import com.example.personalchatbot.dto.ParentChildChunksDto;
 import com.example.personalchatbot.entity.ChunkMessage;
 import com.pgvector.PGvector;
 
@@ -10,4 +11,5 @@ public interface EmbeddingServiceImpl {
     List<PGvector> embedAll(List<String> texts);         // batch
     List<ChunkMessage> embedAndAttach(List<ChunkMessage> chunks); // gán vào entity
     void embedAndSaveAll(List<ChunkMessage> chunks);    // gán & saveAll()
+    void embedAndSaveParentChild(ParentChildChunksDto chunks); // lưu khối cha, embed & lưu chunk con
 }
@@ -1,5 +1,7 @@
 package com.example.personalchatbot.service.implement;
 
+import reactor.core.publisher.Flux;
+
 public interface LlmServiceImpl {
     /**
      * Gọi LLM sinh câu trả lời từ cặp (system, user)
@@ -12,4 +14,10 @@ public interface LlmServiceImpl {
     String generate(String system, String user, double temperature, Integer maxOutputTokens);
 
     String generate(String system, String user);
+
+    /**
+     * Như generate nhưng stream: phát từng đoạn text (delta) ngay khi provider trả về.
+     * Hủy subscription sẽ hủy request tới provider.
+     */
+    Flux<String> stream(String system, String user, double temperature, Integer maxOutputTokens);
 }
@@ -8,6 +8,9 @@ import java.util.Map;
 public interface MetadataServiceImpl {
     MetadataDto infer(String question, Locale locale);
 
+    /** Số lần phân loại tại chỗ / gọi LLM và tỉ lệ phải gọi LLM */
+    Map<String, Object> stats();
+
     default Map<String,String> toFilters(MetadataDto m) {
         var f = new java.util.HashMap<String,String>();
         if (m.getProject()!=null) f.put("project", m.getProject());
@@ -0,0 +1,17 @@
+package com.example.personalchatbot.service.implement;
+
+import com.example.personalchatbot.dto.SearchHitDto;
+import com.example.personalchatbot.entity.ParentBlock;
+
+import java.util.List;
+
+public interface ParentBlockServiceImpl {
+    /** Lưu khối cha của các tài liệu (thay thế khối cha + chunk con cũ của cùng docId) */
+    void saveAll(List<ParentBlock> parents);
+
+    /**
+     * Thay hit của chunk con bằng khối cha, gộp các con cùng cha (giữ thứ hạng/similarity của con tốt nhất).
+     * Hit không có khối cha giữ nguyên.
+     */
+    List<SearchHitDto> expandToParents(List<SearchHitDto> hits);
+}
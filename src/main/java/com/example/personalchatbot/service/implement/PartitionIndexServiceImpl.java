@@ -0,0 +1,9 @@
+package com.example.personalchatbot.service.implement;
+
+public interface PartitionIndexServiceImpl {
+    /** true nếu project đã có partial ANN index riêng (rag_chunks WHERE project = ...) */
+    boolean hasPartition(String project);
+
+    /** Số chunk hiện có của project (ước lượng từ bộ đếm, 0 nếu chưa biết) */
+    long rowCount(String project);
+}
@@ -6,5 +6,11 @@ import com.example.personalchatbot.dto.SearchHitDto;
 import java.util.List;
 
 public interface PromptServiceImpl {
-    PromptDto build(String question, List<SearchHitDto> contextHits);
+    /** Prompt + danh sách hit thực sự được xếp vào ngân sách token (PromptDto.hits) */
+    default PromptDto build(String question, List<SearchHitDto> contextHits) {
+        return build(question, contextHits, null);
+    }
+
+    /** Như trên, ngân sách context chừa đúng maxOutputTokens của lần gọi LLM (null = llm.max-output-token) */
+    PromptDto build(String question, List<SearchHitDto> contextHits, Integer maxOutputTokens);
 }
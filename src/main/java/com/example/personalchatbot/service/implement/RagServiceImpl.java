@@ -1,8 +1,13 @@
 package com.example.personalchatbot.service.implement;
 
 import com.example.personalchatbot.dto.AnswerDto;
+import com.example.personalchatbot.dto.PreparedAnswerDto;
+import com.example.personalchatbot.dto.RetrievalOptions;
+import com.pgvector.PGvector;
+import reactor.core.publisher.Flux;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public interface RagServiceImpl {
     AnswerDto answer(String question,
@@ -11,4 +16,70 @@ public interface RagServiceImpl {
                      Map<String,String> filters,
                      double temperature,
                      Integer maxOutputTokens);
+
+    /** Như trên, với tuỳ chọn retrieval đầy đủ (MMR lambda, ...) */
+    AnswerDto answer(String question,
+                     Map<String,String> filters,
+                     RetrievalOptions options,
+                     double temperature,
+                     Integer maxOutputTokens);
+
+    /** Retrieve + dựng prompt + citations, chưa gọi LLM */
+    PreparedAnswerDto prepare(String question,
+                              Map<String,String> filters,
+                              RetrievalOptions options);
+
+    /** Như trên nhưng filters suy luận song song: retrieval bắt đầu trước khi có filters */
+    PreparedAnswerDto prepare(String question,
+                              CompletableFuture<Map<String,String>> filters,
+                              RetrievalOptions options);
+
+    /**
+     * Như trên, dùng chung vector câu hỏi với tra cache; có filters thì xem kết quả tra cache trước khi
+     * retrieve tiếp (search có filter, ghép context, dựng prompt)
+     * @param qvec   vector câu hỏi (embedAsync)
+     * @param cached kết quả lookupCached
+     * @return null nếu cache có câu trả lời (dùng cached thay thế)
+     */
+    PreparedAnswerDto prepare(String question,
+                              CompletableFuture<PGvector> qvec,
+                              CompletableFuture<Map<String,String>> filters,
+                              RetrievalOptions options,
+                              CompletableFuture<AnswerDto> cached);
+
+    /** Embed câu hỏi chạy nền: 1 lần cho tra cache, retrieve đoán trước và lưu cache */
+    CompletableFuture<PGvector> embedAsync(String question);
+
+    /** Như answer, có tra cache câu trả lời (nếu bật trong options) song song với retrieve */
+    AnswerDto answer(String question,
+                     CompletableFuture<Map<String,String>> filters,
+                     RetrievalOptions options,
+                     double temperature,
+                     Integer maxOutputTokens);
+
+    /** Như trên với vector câu hỏi embed sẵn (vd. embed từ trước khi condense xong) */
+    AnswerDto answer(String question,
+                     CompletableFuture<PGvector> qvec,
+                     CompletableFuture<Map<String,String>> filters,
+                     RetrievalOptions options,
+                     double temperature,
+                     Integer maxOutputTokens);
+
+    /** Câu trả lời đã cache cho câu hỏi gần giống cùng filters; hoàn tất với null nếu không có / tắt */
+    CompletableFuture<AnswerDto> lookupCached(CompletableFuture<PGvector> qvec,
+                                              CompletableFuture<Map<String,String>> filters,
+                                              RetrievalOptions options);
+
+    /** Lưu câu trả lời vào cache theo vector câu hỏi đã có (không embed lại) */
+    void remember(PGvector qvec, Map<String,String> filters, AnswerDto answer);
+
+    /** Gọi LLM cho prompt đã dựng bởi prepare; ngân sách prompt theo options.maxOutputTokens lúc prepare */
+    AnswerDto answer(PreparedAnswerDto prepared,
+                     double temperature,
+                     Integer maxOutputTokens);
+
+    /** Stream câu trả lời cho prompt đã dựng: mỗi phần tử là 1 đoạn text mới; maxOutputTokens nên khớp options lúc prepare */
+    Flux<String> stream(PreparedAnswerDto prepared,
+                        double temperature,
+                        Integer maxOutputTokens);
 }
@@ -0,0 +1,19 @@
+package com.example.personalchatbot.service.implement;
+
+import com.example.personalchatbot.dto.SearchHitDto;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+public interface SearchCacheServiceImpl {
+    /**
+     * Trả kết quả đã cache cho (query chuẩn hoá, k, filters), hoặc gọi loader rồi cache lại
+     * @param loader thực thi embed + vector search khi cache miss
+     */
+    List<SearchHitDto> getOrLoad(String query, int k, Map<String, String> filters, boolean withEmbeddings,
+                                 Supplier<List<SearchHitDto>> loader);
+
+    /** hit ratio, số entry, dung lượng ước tính... */
+    Map<String, Object> stats();
+}
@@ -0,0 +1,14 @@
+package com.example.personalchatbot.service.implement;
+
+import com.example.personalchatbot.dto.SearchPlanDto;
+
+import java.util.Map;
+
+public interface SearchPlannerServiceImpl {
+    /**
+     * Chọn cách chạy kNN theo độ chọn lọc ước lượng của filter
+     * @param filters         filter đã whitelist
+     * @param partitioned     true nếu project trong filter có partial ANN index riêng
+     */
+    SearchPlanDto plan(Map<String, String> filters, int k, boolean partitioned);
+}
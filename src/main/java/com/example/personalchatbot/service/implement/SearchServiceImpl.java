@@ -1,9 +1,11 @@
 package com.example.personalchatbot.service.implement;
 
 import com.example.personalchatbot.dto.SearchHitDto;
+import com.pgvector.PGvector;
 
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
 public interface SearchServiceImpl {
 
@@ -13,5 +15,47 @@ public interface SearchServiceImpl {
      * @param k       số kết quả tối đa
      * @param filters lọc metadata (vd: {"project":"Finex","env":"UAT"})
      */
-    List<SearchHitDto> search(String query, int k, Map<String, String> filters);
+    default List<SearchHitDto> search(String query, int k, Map<String, String> filters) {
+        return search(query, k, filters, false);
+    }
+
+    /**
+     * Như trên, tuỳ chọn trả kèm embedding của từng hit (float[]) để rerank phía ứng dụng
+     * @param withEmbeddings true = điền SearchHitDto.embedding
+     */
+    List<SearchHitDto> search(String query, int k, Map<String, String> filters, boolean withEmbeddings);
+
+    /**
+     * Như search nhưng vector query lấy từ qvec (chỉ gọi khi cache miss): nhiều lần search cùng câu hỏi
+     * với K khác nhau dùng chung 1 lần embed
+     */
+    List<SearchHitDto> search(String query, Supplier<PGvector> qvec, int k, Map<String, String> filters,
+                              boolean withEmbeddings);
+
+    /**
+     * Tìm cho nhiều truy vấn cùng lúc: 1 lần gọi embeddings + 1 round trip SQL
+     * @return danh sách kết quả theo đúng thứ tự queries
+     */
+    List<List<SearchHitDto>> searchBatch(List<String> queries, int k, Map<String, String> filters, boolean withEmbeddings);
+
+    /** Như searchBatch nhưng vector query đã có sẵn (bỏ qua bước embed) */
+    List<List<SearchHitDto>> searchByVectors(List<PGvector> qvecs, int k, Map<String, String> filters, boolean withEmbeddings);
+
+    /**
+     * Tìm với filter nới dần trong 1 câu SQL: tier 0 = đủ filter, tier 1 = chỉ project, tier 2 = không filter.
+     * Kết quả xếp theo (tier, distance); mỗi hit ghi lại tier nó khớp.
+     */
+    List<SearchHitDto> searchRelaxed(String query, int k, Map<String, String> filters, boolean withEmbeddings);
+
+    /** Như searchRelaxed nhưng vector query đã có sẵn (bỏ qua bước embed) */
+    List<SearchHitDto> searchRelaxed(PGvector qvec, int k, Map<String, String> filters, boolean withEmbeddings);
+
+    /**
+     * Search 2 cấp: chọn top tài liệu theo vector tài liệu (có filter), rồi chỉ tìm chunk trong các tài liệu đó.
+     * Chưa có vector tài liệu -> quay về search thường.
+     */
+    List<SearchHitDto> searchHierarchical(String query, int k, Map<String, String> filters, boolean withEmbeddings);
+
+    /** Như trên, vector query đã có sẵn */
+    List<SearchHitDto> searchHierarchical(PGvector qvec, int k, Map<String, String> filters, boolean withEmbeddings);
 }
@@ -0,0 +1,22 @@
+package com.example.personalchatbot.service.implement;
+
+import com.example.personalchatbot.dto.ConversationDto;
+
+public interface SessionServiceImpl {
+    /** Phiên theo id (bộ nhớ -> Postgres nếu bật persist), tạo mới nếu chưa có */
+    ConversationDto get(String sessionId);
+
+    /** Phiên đã có lượt hỏi đáp / tóm tắt; tắt persist thì không tạo phiên mới chỉ để kiểm tra */
+    boolean hasHistory(String sessionId);
+
+    /**
+     * Viết lại câu hỏi nối tiếp thành câu hỏi độc lập dựa trên tóm tắt + các lượt gần nhất
+     * @return câu hỏi gốc nếu phiên chưa có lịch sử hoặc LLM lỗi
+     */
+    String condense(String sessionId, String question);
+
+    /** Thêm 1 lượt; lịch sử vượt ngân sách token -> tóm tắt các lượt cũ (bất đồng bộ) */
+    void append(String sessionId, String question, String answer);
+
+    void delete(String sessionId);
+}
@@ -0,0 +1,22 @@
+package com.example.personalchatbot.service.implement;
+
+import com.example.personalchatbot.dto.VectorHitDto;
+import com.example.personalchatbot.entity.ChunkMessage;
+
+import java.util.List;
+import java.util.Map;
+
+public interface VectorIndexServiceImpl {
+    /** true khi index đã nạp xong từ rag_chunks và có thể thay pgvector trả lời truy vấn */
+    boolean isReady();
+
+    /**
+     * Tìm top-k id gần nhất ngay trong JVM (chưa có content)
+     * @param query   vector truy vấn
+     * @param k       số kết quả tối đa
+     * @param filters lọc metadata, áp dụng trước khi xếp hạng
+     */
+    List<VectorHitDto> search(float[] query, int k, Map<String, String> filters);
+
+    void upsert(List<ChunkMessage> chunks); // đồng bộ khi ingest
+}
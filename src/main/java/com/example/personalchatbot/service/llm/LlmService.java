@@ -6,12 +6,16 @@ import com.example.personalchatbot.exception.AppException;
 import com.example.personalchatbot.service.implement.LlmServiceImpl;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -28,7 +32,7 @@ public class LlmService implements LlmServiceImpl {
         var body = Map.of(
                 "model", llmConfig.getModel(),
                 "temperature", llmConfig.getTemperature(),
-                "max_output_tokens", llmConfig.getOutputToken(),
+                "max_output_tokens", maxOutputTokens != null ? maxOutputTokens : llmConfig.getOutputToken(),
                 "input", List.of(
                         Map.of("role", "system", "content", system),
                         Map.of("role", "user", "content", user)
@@ -109,4 +113,50 @@ public class LlmService implements LlmServiceImpl {
         Object text = cm.get("text"); // text trả lời
         return text == null ? "" : text.toString(); // trả chuỗi (có thể rỗng)
     }
+
+    @Override
+    public Flux<String> stream(String system, String user, double temperature, Integer maxOutputTokens) {
+        var body = new HashMap<String, Object>();
+        body.put("model", llmConfig.getModel());
+        body.put("temperature", temperature);
+        body.put("max_output_tokens", maxOutputTokens != null ? maxOutputTokens : llmConfig.getOutputToken());
+        body.put("stream", true); // provider trả về SSE: response.output_text.delta, ..., response.completed
+        body.put("input", List.of(
+                Map.of("role", "system", "content", system),
+                Map.of("role", "user", "content", user)
+        ));
+
+        // Hủy subscription (client ngắt kết nối) -> WebClient đóng luôn kết nối tới provider
+        return embeddingWebClient.post()
+                .uri("/responses")
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .bodyValue(body)
+                .retrieve()
+                .onStatus(HttpStatusCode::isError, errorResp ->
+                        errorResp.bodyToMono(String.class).flatMap(err -> {
+                            log.error("OpenAI {}: {}", errorResp.statusCode(), err);
+                            return Mono.error(new RuntimeException(err));
+                        })
+                )
+                .bodyToFlux(new ParameterizedTypeReference<ServerSentEvent<Map<String, Object>>>() {})
+                .takeUntil(e -> "response.completed".equals(e.event()))
+                .handle((e, sink) -> {
+                    Map<String, Object> data = e.data();
+                    if (data == null) return;
+                    String type = e.event() != null ? e.event() : String.valueOf(data.get("type"));
+                    switch (type) {
+                        // chỉ chuyển tiếp phần text, bỏ qua các event khác (created, output_item.added, ...)
+                        case "response.output_text.delta" -> {
+                            Object delta = data.get("delta");
+                            if (delta != null) sink.next(delta.toString());
+                        }
+                        case "error", "response.failed" -> {
+                            log.error("OpenAI stream lỗi: {}", data);
+                            sink.error(new AppException(ErrorConfig.INTERNAL_SERVER_ERROR, "LLM stream failed"));
+                        }
+                        default -> { }
+                    }
+                });
+    }
 }
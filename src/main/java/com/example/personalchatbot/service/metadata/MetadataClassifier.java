@@ -0,0 +1,289 @@
+package com.example.personalchatbot.service.metadata;
+
+import com.example.personalchatbot.config.MetadataConfig;
+import com.example.personalchatbot.dto.MetadataDto;
+import com.example.personalchatbot.entity.ChunkMessage;
+import com.example.personalchatbot.event.ChunksIngestedEvent;
+import com.example.personalchatbot.service.search.index.MetadataCodes;
+import com.example.personalchatbot.service.search.index.VectorKernels;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Phân loại metadata câu hỏi tại chỗ, không gọi LLM:
+ * - từ điển (trie theo token, đã bỏ dấu) gồm các giá trị project/module có trong rag_chunks + từ đồng nghĩa env
+ * - tên project/module chỉ 1 token ngắn (vd. "AI", "BI") dễ trùng từ thường -> chỉ khớp khi viết đúng nguyên văn
+ * - không khớp từ điển -> centroid embedding của từng project (avg embedding các chunk), chọn gần nhất
+ *   nếu đủ similarity và cách biệt rõ với project thứ nhì
+ * Trả null khi không chắc (kể cả khi chỉ nhận ra env, không có project) -> MetadataService gọi LLM như cũ.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MetadataClassifier {
+    public static final String BY_DICTIONARY = "local-dictionary";
+    public static final String BY_CENTROID = "local-centroid";
+    static final double MODULE_CONFIDENCE = 0.8; // project suy ra từ module, không được nhắc trực tiếp
+
+    private static final Map<String, String> ENV_SYNONYMS = Map.of(
+            "dev", "DEV", "uat", "UAT", "sit", "SIT",
+            "stg", "STG", "staging", "STG",
+            "prod", "PROD", "production", "PROD");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final MetadataConfig metadataConfig;
+    private final ObjectMapper objectMapper;
+
+    // tổng embedding + số chunk theo project (centroid = sum / n, chỉ cần hướng nên dùng sum)
+    private static final class Centroid {
+        final float[] sum;
+        long n;
+        float[] unit;
+
+        Centroid(int dim) {
+            this.sum = new float[dim];
+        }
+
+        synchronized void add(float[] v, long count) {
+            for (int i = 0; i < sum.length && i < v.length; i++) sum[i] += v[i] * count;
+            n += count;
+            unit = null;
+        }
+
+        synchronized float[] unit() {
+            if (unit == null) unit = VectorKernels.normalizedCopy(sum);
+            return unit;
+        }
+    }
+
+    // nút trie: token tiếp theo -> nút con; terminal = các (key, value, cụm gốc) kết thúc tại đây
+    private static final class Node {
+        final Map<String, Node> next = new HashMap<>();
+        final List<String[]> terminal = new ArrayList<>(1);
+    }
+
+    private final Map<String, Centroid> centroids = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> moduleProjects = new ConcurrentHashMap<>(); // module -> các project chứa nó
+    private final Set<String> projects = ConcurrentHashMap.newKeySet();
+    private volatile Node trie = buildTrie(Set.of(), Set.of());
+    private volatile boolean ready = false;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void init() {
+        if (!metadataConfig.isLocalEnabled()) return;
+        Thread.ofPlatform().daemon().name("metadata-classifier-load").start(() -> {
+            try {
+                // avg(vector) có sẵn trong pgvector -> centroid tính trong DB, 1 dòng / (project, module)
+                jdbcTemplate.query("""
+                        SELECT metadata->>'project', metadata->>'module', avg(embedding)::text, count(*)
+                        FROM rag_chunks
+                        GROUP BY 1, 2
+                        """, rs -> {
+                    add(rs.getString(1), rs.getString(2), parse(rs.getString(3)), rs.getLong(4));
+                });
+                markReady();
+                log.info("Metadata classifier: {} project, {} module", projects.size(), moduleProjects.size());
+            } catch (Exception e) {
+                log.warn("Không nạp được dữ liệu cho metadata classifier, luôn dùng LLM: {}", e.getMessage());
+            }
+        });
+    }
+
+    @EventListener
+    public void onChunksIngested(ChunksIngestedEvent event) {
+        if (!ready) return;
+        int known = projects.size() + moduleProjects.size();
+        for (ChunkMessage c : event.getChunks()) {
+            Map<String, String> meta = MetadataCodes.readKeys(objectMapper, c.getMetadata());
+            float[] v = c.getEmbedding() == null ? null : c.getEmbedding().toArray();
+            add(meta.get("project"), meta.get("module"), v, 1);
+        }
+        if (projects.size() + moduleProjects.size() != known) rebuildTrie();
+    }
+
+    /**
+     * @param question     câu hỏi
+     * @param queryVector  embedding câu hỏi, chỉ gọi khi từ điển không khớp
+     * @return metadata nếu đủ chắc chắn, null nếu cần LLM
+     */
+    public MetadataDto classify(String question, Supplier<float[]> queryVector) {
+        if (!ready || question == null || question.isBlank()) return null;
+
+        Map<String, Set<String>> found = match(question);
+        String project = single(found.get("project"));
+        String module = single(found.get("module"));
+        String env = single(found.get("env"));
+        String by = BY_DICTIONARY;
+        double confidence = 1.0;
+
+        // module chỉ thuộc 1 project -> suy ra project
+        if (project == null && module != null) {
+            project = single(moduleProjects.get(module));
+            confidence = MODULE_CONFIDENCE;
+        }
+
+        if (project == null && module == null) {
+            // không nhắc tên project/module -> thử centroid
+            float[] q = queryVector == null ? null : queryVector.get();
+            String best = null;
+            double top1 = -1, top2 = -1;
+            if (q != null) {
+                float[] unit = VectorKernels.normalizedCopy(q);
+                for (var e : centroids.entrySet()) {
+                    float[] c = e.getValue().unit();
+                    double sim = VectorKernels.dot(unit, 0, c, 0, Math.min(unit.length, c.length));
+                    if (sim > top1) {
+                        top2 = top1;
+                        top1 = sim;
+                        best = e.getKey();
+                    } else if (sim > top2) {
+                        top2 = sim;
+                    }
+                }
+            }
+            if (best != null && top1 >= metadataConfig.getMinSimilarity()
+                    && (centroids.size() == 1 || top1 - top2 >= metadataConfig.getMinMargin())) {
+                project = best;
+                by = BY_CENTROID;
+                confidence = top1;
+            }
+        }
+        // chỉ có env / module thuộc nhiều project -> chưa đủ để lọc, để LLM suy luận
+        if (project == null) return null;
+
+        Map<String, Object> extra = new HashMap<>();
+        extra.put("classifiedBy", by);
+        extra.put("confidence", confidence);
+        String title = question.length() <= 80 ? question : question.substring(0, 79) + "…";
+        return new MetadataDto(project, module, env, title, null, extra);
+    }
+
+    /** project/module/env từ điển tìm thấy trong câu hỏi (rỗng khi chưa nạp xong) */
+    public Map<String, Set<String>> mentions(String question) {
+        if (!ready || question == null) return Map.of();
+        return match(question);
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    // ----- helpers -----
+
+    // nạp xong dữ liệu (init / test)
+    void markReady() {
+        rebuildTrie();
+        ready = true;
+    }
+
+    void add(String project, String module, float[] v, long count) {
+        if (project == null) return;
+        projects.add(project);
+        if (module != null) moduleProjects.computeIfAbsent(module, x -> ConcurrentHashMap.newKeySet()).add(project);
+        if (v != null && v.length > 0) centroids.computeIfAbsent(project, x -> new Centroid(v.length)).add(v, count);
+    }
+
+    private void rebuildTrie() {
+        trie = buildTrie(new HashSet<>(projects), new HashSet<>(moduleProjects.keySet()));
+    }
+
+    private static Node buildTrie(Set<String> projects, Set<String> modules) {
+        Node root = new Node();
+        projects.forEach(p -> put(root, "project", p, p));
+        modules.forEach(m -> put(root, "module", m, m));
+        ENV_SYNONYMS.forEach((word, env) -> put(root, "env", word, env));
+        return root;
+    }
+
+    private static void put(Node root, String key, String phrase, String value) {
+        List<String> toks = tokens(phrase);
+        if (toks.isEmpty()) return;
+        Node n = root;
+        for (String t : toks) n = n.next.computeIfAbsent(t, x -> new Node());
+        n.terminal.add(new String[]{key, value, phrase});
+    }
+
+    // quét trái -> phải, lấy cụm dài nhất khớp tại mỗi vị trí
+    Map<String, Set<String>> match(String question) {
+        List<String> toks = tokens(question);
+        Node root = trie;
+        Map<String, Set<String>> found = new HashMap<>();
+        int i = 0;
+        while (i < toks.size()) {
+            Node n = root;
+            List<String[]> hit = null;
+            int end = i;
+            for (int j = i; j < toks.size(); j++) {
+                n = n.next.get(toks.get(j));
+                if (n == null) break;
+                List<String[]> ok = accepted(n.terminal, question);
+                if (!ok.isEmpty()) {
+                    hit = ok;
+                    end = j + 1;
+                }
+            }
+            if (hit == null) {
+                i++;
+                continue;
+            }
+            for (String[] kv : hit) found.computeIfAbsent(kv[0], x -> new HashSet<>()).add(kv[1]);
+            i = end;
+        }
+        return found;
+    }
+
+    // tên project/module 1 token ngắn: phải xuất hiện đúng nguyên văn, đứng riêng trong câu hỏi
+    private List<String[]> accepted(List<String[]> terminal, String question) {
+        if (terminal.isEmpty()) return terminal;
+        List<String[]> out = new ArrayList<>(terminal.size());
+        for (String[] kv : terminal) {
+            List<String> toks = tokens(kv[2]);
+            boolean shortName = !"env".equals(kv[0]) && toks.size() == 1
+                    && toks.getFirst().length() < metadataConfig.getMinTokenLength();
+            if (!shortName || exactWord(question, kv[2])) out.add(kv);
+        }
+        return out;
+    }
+
+    private static boolean exactWord(String text, String phrase) {
+        return Pattern.compile("(?<![\\p{L}\\p{N}])" + Pattern.quote(phrase.trim()) + "(?![\\p{L}\\p{N}])")
+                .matcher(text).find();
+    }
+
+    // 1 giá trị duy nhất -> giá trị đó; nhiều giá trị (mơ hồ) hoặc không có -> null
+    private static String single(Set<String> values) {
+        return values != null && values.size() == 1 ? values.iterator().next() : null;
+    }
+
+    // chữ thường, bỏ dấu tiếng Việt, tách theo ký tự không phải chữ/số
+    static List<String> tokens(String s) {
+        String n = Normalizer.normalize(s.toLowerCase(Locale.ROOT), Normalizer.Form.NFD)
+                .replaceAll("\\p{M}+", "")
+                .replace('đ', 'd');
+        List<String> out = new ArrayList<>();
+        for (String t : n.split("[^\\p{L}\\p{N}]+")) {
+            if (!t.isEmpty()) out.add(t);
+        }
+        return out;
+    }
+
+    // "[0.1,0.2,...]" -> float[]
+    private static float[] parse(String text) {
+        if (text == null || text.length() < 2) return null;
+        String[] parts = text.substring(1, text.length() - 1).split(",");
+        float[] v = new float[parts.length];
+        for (int i = 0; i < parts.length; i++) v[i] = Float.parseFloat(parts[i].trim());
+        return v;
+    }
+}
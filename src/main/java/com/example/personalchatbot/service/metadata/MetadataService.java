@@ -2,11 +2,21 @@ package com.example.personalchatbot.service.metadata;
 
 import com.example.personalchatbot.config.ErrorConfig;
 import com.example.personalchatbot.config.LlmConfig;
+import com.example.personalchatbot.config.MetadataConfig;
+import com.example.personalchatbot.config.SearchConfig;
 import com.example.personalchatbot.dto.MetadataDto;
+import com.example.personalchatbot.dto.VectorHitDto;
 import com.example.personalchatbot.exception.AppException;
+import com.example.personalchatbot.service.embedding.EmbeddingService;
 import com.example.personalchatbot.service.implement.MetadataServiceImpl;
+import com.example.personalchatbot.service.search.SearchCacheService;
+import com.example.personalchatbot.service.search.index.HnswIndex;
+import com.example.personalchatbot.service.search.index.VectorKernels;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatusCode;
@@ -15,10 +25,19 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 @Slf4j
 @RequiredArgsConstructor
@@ -27,12 +46,176 @@ public class MetadataService implements MetadataServiceImpl {
     private final WebClient embeddingWebClient; // đã cấu hình baseUrl + Authorization
     private final LlmConfig llmConfig;
     private final ObjectMapper om;
+    private final MetadataClassifier classifier;
+    private final MetadataConfig metadataConfig;
+    private final EmbeddingService embeddingService;
+    private final SearchConfig searchConfig;
+
+    private final AtomicLong localHits = new AtomicLong();
+    private final AtomicLong llmCalls = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong semanticHits = new AtomicLong();
+
+    private static final List<String> MENTION_KEYS = List.of("project", "module", "env");
+
+    // kết quả LLM theo (locale, câu hỏi chuẩn hoá); value giữ kèm embedding để tra theo độ tương đồng
+    private Cache<String, CachedMetadata> cache;
+
+    private static final class CachedMetadata {
+        final UUID id = UUID.randomUUID();
+        final MetadataDto metadata;
+        final float[] unit;                        // null = chưa có embedding (tra semantic tắt)
+        final int localeCode;
+        final Map<String, Set<String>> mentions;   // project/module/env từ điển thấy trong câu hỏi gốc
+
+        CachedMetadata(MetadataDto metadata, float[] unit, int localeCode, Map<String, Set<String>> mentions) {
+            this.metadata = metadata;
+            this.unit = unit;
+            this.localeCode = localeCode;
+            this.mentions = mentions;
+        }
+    }
+
+    // tra semantic: embedding các entry trong HNSW (pre-filter theo locale), không quét toàn cache
+    private final Map<UUID, CachedMetadata> semanticEntries = new ConcurrentHashMap<>();
+    private final Map<String, Integer> localeCodes = new ConcurrentHashMap<>();
+    private final AtomicInteger nextLocaleCode = new AtomicInteger(1);
+    private final Object indexLock = new Object();
+    private volatile HnswIndex semanticIndex;  // tạo khi có entry đầu tiên (cần biết số chiều)
+    private int indexed;                       // số node đã thêm vào index hiện tại (kể cả đã xoá)
+
+    @PostConstruct
+    void initCache() {
+        cache = Caffeine.newBuilder()
+                .maximumSize(metadataConfig.getCacheMaxEntries())
+                .expireAfterWrite(Duration.ofSeconds(metadataConfig.getCacheTtlSeconds()))
+                .<String, CachedMetadata>removalListener((k, v, cause) -> {
+                    if (v == null || v.unit == null) return;
+                    semanticEntries.remove(v.id);
+                    HnswIndex idx = semanticIndex;
+                    if (idx != null) idx.remove(v.id);
+                })
+                .build();
+    }
 
     @Override
     public MetadataDto infer(String question, Locale locale) {
-        try {
-            if (question == null || question.isBlank()) return null;
+        if (question == null || question.isBlank()) return null;
+
+        // embedding câu hỏi: tính tối đa 1 lần, chỉ khi cần (centroid / tra cache theo độ tương đồng)
+        float[][] qv = new float[1][];
+        Supplier<float[]> queryVector = () -> {
+            if (qv[0] == null) qv[0] = embeddingService.embed(question).toArray();
+            return qv[0];
+        };
+
+        // Phân loại tại chỗ trước; embedding câu hỏi chỉ tính khi từ điển không khớp
+        // (batcher gộp với lời gọi embed cùng câu hỏi của bước retrieval chạy song song)
+        if (metadataConfig.isLocalEnabled() && classifier.isReady()) {
+            MetadataDto local = classifier.classify(question, queryVector);
+            if (local != null) {
+                localHits.incrementAndGet();
+                local.getExtra().put("lang", locale!=null ? locale.toLanguageTag() : "vi-VN");
+                return local;
+            }
+        }
+
+        // Cache kết quả LLM: khớp nguyên văn (sau chuẩn hoá) trước, sau đó theo cosine >= ngưỡng
+        boolean cacheOn = metadataConfig.isCacheEnabled();
+        boolean semanticOn = cacheOn && metadataConfig.getCacheSemanticThreshold() > 0;
+        String tag = locale != null ? locale.toLanguageTag() : "";
+        String key = tag + "|" + SearchCacheService.normalize(question);
+        Map<String, Set<String>> mentions = null;
+        if (cacheOn) {
+            CachedMetadata hit = cache.getIfPresent(key);
+            if (hit != null) {
+                cacheHits.incrementAndGet();
+                return copyOf(hit.metadata, null);
+            }
+            if (semanticOn) {
+                mentions = classifier.mentions(question);
+                MetadataDto similar = findSimilar(VectorKernels.normalizedCopy(queryVector.get()), tag, mentions);
+                if (similar != null) {
+                    semanticHits.incrementAndGet();
+                    return copyOf(similar, trim(question, 80)); // title theo câu hỏi hiện tại
+                }
+            }
+        }
+
+        llmCalls.incrementAndGet();
+        MetadataDto m = inferWithLlm(question, locale);
+        if (cacheOn && m != null) {
+            CachedMetadata entry = new CachedMetadata(copyOf(m, null),
+                    semanticOn ? VectorKernels.normalizedCopy(queryVector.get()) : null,
+                    semanticOn ? localeCodes.computeIfAbsent(tag, x -> nextLocaleCode.getAndIncrement()) : 0,
+                    mentions);
+            cache.put(key, entry);
+            if (entry.unit != null) index(entry);
+        }
+        return m;
+    }
+
+    /*
+     * Entry cùng locale gần nhất có cosine >= ngưỡng. Câu hỏi gần giống nhưng từ điển thấy project/module/env
+     * khác (vd. "lỗi X trên PROD" vs "lỗi X trên UAT") -> không dùng lại, để LLM suy luận.
+     */
+    private MetadataDto findSimilar(float[] unit, String tag, Map<String, Set<String>> mentions) {
+        HnswIndex idx = semanticIndex;
+        Integer code = localeCodes.get(tag);
+        if (idx == null || code == null || idx.dim() != unit.length) return null;
+        double maxDistance = 1.0 - metadataConfig.getCacheSemanticThreshold();
+        for (VectorHitDto h : idx.search(unit, 4, searchConfig.getHnswEfSearch(), new int[]{code})) {
+            if (h.getDistance() > maxDistance) break; // kết quả xếp theo distance tăng dần
+            CachedMetadata e = semanticEntries.get(h.getId());
+            if (e != null && sameMentions(e.mentions, mentions)) return e.metadata;
+        }
+        return null;
+    }
+
+    private static boolean sameMentions(Map<String, Set<String>> a, Map<String, Set<String>> b) {
+        for (String k : MENTION_KEYS) {
+            if (!Objects.equals(a.get(k), b.get(k))) return false;
+        }
+        return true;
+    }
+
+    private void index(CachedMetadata e) {
+        synchronized (indexLock) {
+            HnswIndex idx = semanticIndex;
+            if (idx == null || idx.dim() != e.unit.length
+                    || indexed - semanticEntries.size() > Math.max(64, semanticEntries.size())) {
+                idx = rebuildIndex(e.unit.length); // gồm cả e (đã nằm trong cache)
+            }
+            if (semanticEntries.putIfAbsent(e.id, e) == null) {
+                idx.upsert(e.id, e.unit, new int[]{e.localeCode});
+                indexed++;
+            }
+        }
+    }
+
+    // dựng lại index từ các entry còn trong cache (gọi trong indexLock)
+    private HnswIndex rebuildIndex(int dim) {
+        HnswIndex fresh = new HnswIndex(dim, searchConfig.getHnswM(), searchConfig.getHnswEfConstruction(), 1);
+        semanticEntries.clear();
+        for (CachedMetadata e : cache.asMap().values()) {
+            if (e.unit == null || e.unit.length != dim) continue;
+            semanticEntries.put(e.id, e);
+            fresh.upsert(e.id, e.unit, new int[]{e.localeCode});
+        }
+        indexed = semanticEntries.size();
+        semanticIndex = fresh;
+        return fresh;
+    }
 
+    // bản sao để caller sửa extra không làm bẩn cache
+    private static MetadataDto copyOf(MetadataDto m, String title) {
+        return new MetadataDto(m.getProject(), m.getModule(), m.getEnv(),
+                title != null ? title : m.getTitle(), m.getPath(),
+                m.getExtra() == null ? new HashMap<>() : new HashMap<>(m.getExtra()));
+    }
+
+    private MetadataDto inferWithLlm(String question, Locale locale) {
+        try {
             // Prompt: ép trả JSON THUẦN với các field cần
             String system = """
               You classify a short user question into fixed metadata fields and MUST reply with pure JSON only.
@@ -110,6 +293,23 @@ public class MetadataService implements MetadataServiceImpl {
         }
     }
 
+    @Override
+    public Map<String, Object> stats() {
+        long local = localHits.get();
+        long llm = llmCalls.get();
+        long cached = cacheHits.get() + semanticHits.get();
+        long total = local + llm + cached;
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("local", local);
+        out.put("cacheHits", cacheHits.get());
+        out.put("semanticCacheHits", semanticHits.get());
+        out.put("llm", llm);
+        out.put("llmFallbackRate", total == 0 ? 0.0 : (double) llm / total);
+        out.put("cacheEntries", cache.estimatedSize());
+        out.put("classifierReady", classifier.isReady());
+        return out;
+    }
+
     // ----- helpers -----
 
     // Lấy text JSON từ Responses API: output[0].content[0].text
@@ -1,29 +1,33 @@
 package com.example.personalchatbot.service.prompt;
 
+import com.example.personalchatbot.config.LlmConfig;
+import com.example.personalchatbot.config.RagConfig;
 import com.example.personalchatbot.dto.PromptDto;
 import com.example.personalchatbot.dto.SearchHitDto;
 import com.example.personalchatbot.service.implement.PromptServiceImpl;
+import com.knuddels.jtokkit.api.Encoding;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
 
+@Slf4j
 @Service
+@RequiredArgsConstructor
 public class PromptService implements PromptServiceImpl {
-    private static final int MAX_CONTEXT_CHARS = 12000; // tuỳ ý chỉnh theo ngân sách token
+    private static final String NO_CONTEXT = "(không có ngữ cảnh phù hợp)";
+    private static final String SEPARATOR = "\n\n";
+    // overhead định dạng message của chat API (role, phân cách) + biên an toàn khi cộng token từng phần
+    private static final int MESSAGE_OVERHEAD_TOKENS = 32;
 
-    @Override
-    public PromptDto build(String question, List<SearchHitDto> hits) {
-        // Ghép các hit thành 1 chuỗi context, mỗi hit có tiêu đề nguồn + nội dung
-        String context = (hits == null || hits.isEmpty())
-                ? "(không có ngữ cảnh phù hợp)" : hits.stream()
-                .map(this::formatHit) // format mỗi hit
-                .collect(Collectors.joining("\n\n")) // ngăn cách bằng dòng trống
-                // cắt bớt nếu vượt giới hạn (để không vỡ token limit)
-                .substring(0, Math.min(MAX_CONTEXT_CHARS,
-                        Math.max(0, hits.stream().map(this::formatHit)
-                                .collect(Collectors.joining("\n\n")).length())));
+    private final Encoding embeddingEncoding; // CL100K, cùng tokenizer với ChunkService
+    private final LlmConfig llmConfig;
+    private final RagConfig ragConfig;
 
+    @Override
+    public PromptDto build(String question, List<SearchHitDto> hits, Integer maxOutputTokens) {
         // System prompt: quy tắc trả lời
         String system = String.join("\n",
                 "Bạn là trợ lý RAG nói tiếng Việt. Chỉ trả lời dựa trên NGỮ CẢNH được cung cấp.",
@@ -31,23 +35,101 @@ public class PromptService implements PromptServiceImpl {
                 "- Câu trả lời ngắn gọn, đúng trọng tâm."
         );
 
-        // User prompt: gồm câu hỏi + phần context
-        String user = """
+        // Ngân sách token cho context = min(trần cấu hình, cửa sổ model - output - phần cố định của prompt)
+        // output = giới hạn thực của lần gọi này (caller có thể đặt khác cấu hình)
+        int output = maxOutputTokens != null && maxOutputTokens > 0 ? maxOutputTokens : llmConfig.getOutputToken();
+        int fixed = count(system) + count(userPrompt(question, "")) + MESSAGE_OVERHEAD_TOKENS;
+        int window = llmConfig.getContextWindowTokens() - output - fixed;
+        int budget = Math.max(0, Math.min(ragConfig.getMaxContextTokens(), window));
+
+        List<SearchHitDto> packed = new ArrayList<>();
+        String context = pack(hits, budget, packed);
+        return new PromptDto(system, userPrompt(question, context), packed);
+    }
+
+    // User prompt: gồm câu hỏi + phần context
+    private static String userPrompt(String question, String context) {
+        return """
                 CÂU HỎI:
                 %s
 
                 NGỮ CẢNH (có thể dùng một phần hoặc toàn bộ):
                 %s
                 """.formatted(question, context);
+    }
+
+    /**
+     * Xếp nguyên hit vào ngân sách theo thứ hạng đầu vào (đã sắp theo điểm): hit không vừa thì bỏ qua
+     * và thử hit sau (nhỏ hơn có thể vừa phần còn lại). Không hit nào vừa -> cắt hit đầu theo dòng.
+     * @param packed nhận các hit đã đưa vào context (để citation chỉ gồm nguồn model thực sự thấy)
+     */
+    private String pack(List<SearchHitDto> hits, int budget, List<SearchHitDto> packed) {
+        if (hits == null || hits.isEmpty()) return NO_CONTEXT;
+
+        int sepTokens = count(SEPARATOR);
+        List<String> parts = new ArrayList<>(hits.size());
+        int used = 0;
+        int skipped = 0;
+        for (SearchHitDto hit : hits) {
+            String formatted = formatHit(hit); // format 1 lần / hit
+            int cost = tokensOf(hit, formatted) + (parts.isEmpty() ? 0 : sepTokens);
+            if (used + cost > budget) {
+                skipped++;
+                continue;
+            }
+            parts.add(formatted);
+            packed.add(hit);
+            used += cost;
+        }
 
-        return new PromptDto(system, user);
+        if (parts.isEmpty()) {
+            String head = truncateToTokens(formatHit(hits.getFirst()), budget);
+            if (head.isEmpty()) return NO_CONTEXT;
+            parts.add(head);
+            packed.add(hits.getFirst());
+            used = count(head);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Prompt context: {}/{} token, {} hit, bỏ {}", used, budget, parts.size(), skipped);
+        }
+        return String.join(SEPARATOR, parts);
+    }
+
+    // Giữ các dòng đầu (câu nguyên vẹn) cho tới khi hết ngân sách
+    private String truncateToTokens(String text, int budget) {
+        StringBuilder sb = new StringBuilder();
+        int used = 0;
+        for (String line : text.split("\n")) {
+            int cost = count(line) + (sb.isEmpty() ? 0 : 1);
+            if (used + cost > budget) break;
+            if (!sb.isEmpty()) sb.append('\n');
+            sb.append(line);
+            used += cost;
+        }
+        return sb.toString();
+    }
+
+    // token của hit đã format: dùng số đếm lưu lúc ingest cho phần content, chỉ tokenize phần tiêu đề ngắn
+    private int tokensOf(SearchHitDto hit, String formatted) {
+        if (hit.getTokenCount() == null) return count(formatted);
+        return count(header(hit)) + 1 + hit.getTokenCount(); // +1: xuống dòng giữa tiêu đề và nội dung
+    }
+
+    private int count(String s) {
+        return s == null || s.isEmpty() ? 0 : embeddingEncoding.countTokens(s);
     }
 
     // Hiển thị 1 kết quả với tiêu đề nguồn và nội dung
     private String formatHit(SearchHitDto hit) {
-        // Tiêu đề nguồn có similarity để người đọc dễ đánh giá
-        String header = "[%s#%d] (sim=%.3f)".formatted(hit.getDocId(), hit.getChunkId(), hit.getSimilarity());
         // Nội dung: giữ nguyên, có thể cắt bớt nếu bạn muốn
-        return header + "\n" + hit.getContent();
+        return header(hit) + "\n" + hit.getContent();
+    }
+
+    // Tiêu đề nguồn có similarity để người đọc dễ đánh giá
+    private static String header(SearchHitDto hit) {
+        String chunkRef = hit.getLastChunkId() == null
+                ? String.valueOf(hit.getChunkId())
+                : hit.getChunkId() + "-" + hit.getLastChunkId(); // khối ghép từ các chunk liên tiếp
+        return "[%s#%s] (sim=%.3f)".formatted(hit.getDocId(), chunkRef, hit.getSimilarity());
     }
 }
@@ -0,0 +1,36 @@
+package com.example.personalchatbot.service.rag;
+
+import com.example.personalchatbot.dto.SearchHitDto;
+
+import java.util.List;
+
+/**
+ * Cắt danh sách hit (đã sort similarity giảm dần) tại điểm:
+ * - similarity < minSimilarity, hoặc
+ * - similarity tụt > maxGap so với hit liền trước (phần đuôi thuộc "cụm" kém liên quan hơn)
+ * Luôn giữ ít nhất minKeep hit đầu để prompt không rỗng.
+ */
+final class AdaptiveCutoff {
+    static final String FULL = "full";
+    static final String THRESHOLD = "threshold";
+    static final String GAP = "gap";
+    static final String EXHAUSTED = "exhausted"; // DB trả ít hơn K, không bị cắt
+
+    private AdaptiveCutoff() {}
+
+    /** Vị trí cắt (số hit giữ lại) */
+    static int index(List<SearchHitDto> hits, Double minSimilarity, Double maxGap, int minKeep) {
+        for (int i = Math.max(0, minKeep); i < hits.size(); i++) {
+            double s = hits.get(i).getSimilarity();
+            if (minSimilarity != null && s < minSimilarity) return i;
+            if (maxGap != null && i > 0 && hits.get(i - 1).getSimilarity() - s > maxGap) return i;
+        }
+        return hits.size();
+    }
+
+    /** Lý do dừng khi cắt tại vị trí cut */
+    static String reason(List<SearchHitDto> hits, int cut, Double minSimilarity) {
+        if (cut >= hits.size()) return FULL;
+        return minSimilarity != null && hits.get(cut).getSimilarity() < minSimilarity ? THRESHOLD : GAP;
+    }
+}
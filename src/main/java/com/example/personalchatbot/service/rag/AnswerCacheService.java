@@ -0,0 +1,187 @@
+package com.example.personalchatbot.service.rag;
+
+import com.example.personalchatbot.config.RagConfig;
+import com.example.personalchatbot.config.SearchConfig;
+import com.example.personalchatbot.dto.AnswerDto;
+import com.example.personalchatbot.dto.VectorHitDto;
+import com.example.personalchatbot.entity.ChunkMessage;
+import com.example.personalchatbot.event.ChunksIngestedEvent;
+import com.example.personalchatbot.service.implement.AnswerCacheServiceImpl;
+import com.example.personalchatbot.service.search.index.HnswIndex;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache câu trả lời theo ngữ nghĩa trước RagService:
+ * - embedding câu hỏi lưu trong {@link HnswIndex} (trong JVM), mỗi entry gắn mã "hình dạng" filters
+ *   -> chỉ khớp câu hỏi có cùng filters (pre-filter của HNSW)
+ * - trả entry gần nhất nếu cosine >= ngưỡng và chưa hết TTL
+ * - ingest lại 1 docId -> xoá mọi entry có trích dẫn docId đó
+ * - vượt maxEntries -> bỏ entry cũ nhất; tombstone nhiều hơn số entry sống -> dựng lại index
+ * Filter "title" (tóm tắt câu hỏi, khác nhau giữa các câu gần giống) không tính vào hình dạng filters.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class AnswerCacheService implements AnswerCacheServiceImpl {
+    private static final Set<String> KEYED_FILTERS = Set.of("project", "module", "env", "path");
+
+    private final RagConfig ragConfig;
+    private final SearchConfig searchConfig;
+
+    private static final class Entry {
+        final UUID id = UUID.randomUUID();
+        final float[] vector;
+        final int filterCode;
+        final AnswerDto answer;
+        final Set<String> docIds;
+        final long createdAt = System.currentTimeMillis();
+
+        Entry(float[] vector, int filterCode, AnswerDto answer, Set<String> docIds) {
+            this.vector = vector;
+            this.filterCode = filterCode;
+            this.answer = answer;
+            this.docIds = docIds;
+        }
+    }
+
+    private final Map<UUID, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, Set<UUID>> byDoc = new ConcurrentHashMap<>();
+    private final Map<String, Integer> filterCodes = new ConcurrentHashMap<>();
+    private final AtomicInteger nextFilterCode = new AtomicInteger(1);
+    private final Queue<UUID> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidated = new AtomicLong();
+    private final Object writeLock = new Object();
+    private volatile HnswIndex index;  // tạo khi có entry đầu tiên (cần biết số chiều)
+    private int inserted;              // số node đã thêm vào index hiện tại (kể cả đã xoá)
+
+    @Override
+    public AnswerDto lookup(float[] queryVector, Map<String, String> filters) {
+        HnswIndex idx = index;
+        Integer code = filterCodes.get(filterKey(filters));
+        if (idx == null || code == null || queryVector == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        long ttlMs = ragConfig.getAnswerCacheTtlSeconds() * 1000L;
+        double maxDistance = 1.0 - ragConfig.getAnswerCacheThreshold();
+        for (VectorHitDto h : idx.search(queryVector, 3, searchConfig.getHnswEfSearch(), new int[]{code})) {
+            if (h.getDistance() > maxDistance) break; // kết quả xếp theo distance tăng dần
+            Entry e = entries.get(h.getId());
+            if (e == null) continue;
+            if (System.currentTimeMillis() - e.createdAt > ttlMs) {
+                remove(e.id);
+                continue;
+            }
+            hits.incrementAndGet();
+            AnswerDto a = e.answer;
+            return new AnswerDto(a.getText(), a.getCitations(), a.getRetrieval());
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    @Override
+    public void put(float[] queryVector, Map<String, String> filters, AnswerDto answer) {
+        if (queryVector == null || answer == null || answer.getText() == null || answer.getText().isBlank()) return;
+        int code = filterCodes.computeIfAbsent(filterKey(filters), x -> nextFilterCode.getAndIncrement());
+
+        // citations dạng "docId#chunkId"
+        Set<String> docIds = new HashSet<>();
+        List<String> citations = answer.getCitations() == null ? List.of() : List.copyOf(answer.getCitations());
+        for (String c : citations) {
+            int i = c.lastIndexOf('#');
+            docIds.add(i < 0 ? c : c.substring(0, i));
+        }
+        Entry e = new Entry(queryVector.clone(), code,
+                new AnswerDto(answer.getText(), citations, answer.getRetrieval()), docIds);
+
+        synchronized (writeLock) {
+            if (index == null || inserted - entries.size() > Math.max(64, entries.size())) rebuild(queryVector.length);
+            entries.put(e.id, e);
+            for (String d : docIds) byDoc.computeIfAbsent(d, x -> ConcurrentHashMap.newKeySet()).add(e.id);
+            insertionOrder.add(e.id);
+            index.upsert(e.id, e.vector, new int[]{code});
+            inserted++;
+
+            // bỏ entry cũ nhất khi vượt giới hạn
+            while (entries.size() > ragConfig.getAnswerCacheMaxEntries()) {
+                UUID oldest = insertionOrder.poll();
+                if (oldest == null) break;
+                remove(oldest);
+            }
+        }
+    }
+
+    @EventListener
+    public void onChunksIngested(ChunksIngestedEvent event) {
+        if (entries.isEmpty()) return;
+        Set<String> docIds = new HashSet<>();
+        for (ChunkMessage c : event.getChunks()) docIds.add(c.getDocId());
+        int removed = 0;
+        for (String d : docIds) {
+            Set<UUID> ids = byDoc.remove(d);
+            if (ids == null) continue;
+            for (UUID id : ids) {
+                if (remove(id)) removed++;
+            }
+        }
+        if (removed > 0) {
+            invalidated.addAndGet(removed);
+            log.info("Answer cache: xoá {} câu trả lời trích dẫn tài liệu vừa ingest lại", removed);
+        }
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        long h = hits.get();
+        long m = misses.get();
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("enabled", ragConfig.isAnswerCache());
+        out.put("hitRatio", h + m == 0 ? 0.0 : (double) h / (h + m));
+        out.put("hits", h);
+        out.put("misses", m);
+        out.put("invalidated", invalidated.get());
+        out.put("entries", entries.size());
+        return out;
+    }
+
+    private boolean remove(UUID id) {
+        Entry e = entries.remove(id);
+        if (e == null) return false;
+        for (String d : e.docIds) {
+            Set<UUID> ids = byDoc.get(d);
+            if (ids != null) ids.remove(id);
+        }
+        HnswIndex idx = index;
+        if (idx != null) idx.remove(id);
+        return true;
+    }
+
+    // dựng lại index từ các entry còn sống (gọi trong writeLock)
+    private void rebuild(int dim) {
+        HnswIndex fresh = new HnswIndex(dim, searchConfig.getHnswM(), searchConfig.getHnswEfConstruction(), 1);
+        for (Entry e : entries.values()) fresh.upsert(e.id, e.vector, new int[]{e.filterCode});
+        insertionOrder.retainAll(entries.keySet());
+        inserted = entries.size();
+        index = fresh;
+    }
+
+    private static String filterKey(Map<String, String> filters) {
+        Map<String, String> f = new TreeMap<>();
+        if (filters != null) {
+            filters.forEach((k, v) -> { if (v != null && KEYED_FILTERS.contains(k)) f.put(k, v); });
+        }
+        return f.toString();
+    }
+}
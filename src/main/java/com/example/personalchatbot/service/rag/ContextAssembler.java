@@ -0,0 +1,172 @@
+package com.example.personalchatbot.service.rag;
+
+import com.example.personalchatbot.dto.SearchHitDto;
+import com.example.personalchatbot.entity.ChunkMessage;
+import com.example.personalchatbot.repository.RagChunkRepository;
+import com.knuddels.jtokkit.api.Encoding;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * Ghép ngữ cảnh trước khi dựng prompt:
+ * - gom hit theo docId, các chunkId liên tiếp nối thành 1 khối, bỏ phần overlap (các dòng cuối chunk trước
+ *   lặp lại ở đầu chunk sau) -> không dán trùng câu vào prompt
+ * - tuỳ chọn kéo thêm chunk lân cận khi còn ngân sách: ưu tiên lấp khoảng trống 1 chunk giữa 2 hit
+ *   (nối được 2 khối), sau đó mới nới biên
+ * Hit đã mở rộng thành khối cha (parentId != null) giữ nguyên.
+ * Kết quả giữ thứ hạng đầu vào (MMR/RRF/similarity): mỗi khối đứng ở vị trí của hit tốt nhất trong nó,
+ * vì PromptService xếp greedy theo thứ tự này.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ContextAssembler {
+    private final RagChunkRepository ragChunkRepo;
+    private final Encoding embeddingEncoding; // CL100K, cùng tokenizer với PromptService
+
+    /**
+     * @param kept        hit đã chọn, theo thứ hạng
+     * @param budgetTokens ngân sách token của ngữ cảnh (chỉ dùng khi kéo chunk lân cận)
+     */
+    public List<SearchHitDto> assemble(List<SearchHitDto> kept, boolean pullNeighbours, int budgetTokens) {
+        if (kept == null || kept.size() <= 1 && !pullNeighbours) return kept;
+
+        // thứ hạng đầu vào của từng hit (theo identity: hit trùng nội dung vẫn là 2 hit)
+        Map<SearchHitDto, Integer> rank = new IdentityHashMap<>();
+        for (int i = 0; i < kept.size(); i++) rank.put(kept.get(i), i);
+
+        // docId -> chunkId -> hit
+        Map<String, TreeMap<Long, SearchHitDto>> byDoc = new LinkedHashMap<>();
+        List<SearchHitDto> out = new ArrayList<>(kept.size());
+        Map<SearchHitDto, Integer> outRank = new IdentityHashMap<>();
+        for (SearchHitDto h : kept) {
+            if (h.getParentId() != null || h.getDocId() == null) {
+                out.add(h);
+                outRank.put(h, rank.get(h));
+                continue;
+            }
+            byDoc.computeIfAbsent(h.getDocId(), d -> new TreeMap<>()).putIfAbsent(h.getChunkId(), h);
+        }
+
+        if (pullNeighbours) pullNeighbours(byDoc, kept, budgetTokens, rank);
+
+        byDoc.forEach((docId, chunks) -> stitchRuns(chunks, rank, out, outRank));
+        out.sort(Comparator.comparingInt(outRank::get));
+        return out;
+    }
+
+    // Nối các chunkId liên tiếp thành 1 hit; thứ hạng của khối = thứ hạng tốt nhất trong các hit được nối
+    private static void stitchRuns(TreeMap<Long, SearchHitDto> chunks, Map<SearchHitDto, Integer> rank,
+                                   List<SearchHitDto> out, Map<SearchHitDto, Integer> outRank) {
+        SearchHitDto cur = null;
+        StringBuilder content = null;
+        int curRank = Integer.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+        for (SearchHitDto h : chunks.values()) {
+            int r = rank.getOrDefault(h, Integer.MAX_VALUE);
+            if (cur != null && h.getChunkId() == last + 1) {
+                appendWithoutOverlap(content, h.getContent());
+                if (h.getSimilarity() > cur.getSimilarity()) {
+                    cur.setSimilarity(h.getSimilarity());
+                    cur.setDistance(h.getDistance());
+                }
+                cur.setLastChunkId(h.getChunkId());
+                cur.setTokenCount(null); // content đã ghép lại -> PromptService tự đếm
+                curRank = Math.min(curRank, r);
+            } else {
+                if (cur != null) {
+                    cur.setContent(content.toString());
+                    out.add(cur);
+                    outRank.put(cur, curRank);
+                }
+                cur = h.toBuilder().lastChunkId(null).build();
+                content = new StringBuilder(Objects.toString(h.getContent(), ""));
+                curRank = r;
+            }
+            last = h.getChunkId();
+        }
+        if (cur != null) {
+            cur.setContent(content.toString());
+            out.add(cur);
+            outRank.put(cur, curRank);
+        }
+    }
+
+    /**
+     * Nối next vào sau prev, bỏ các dòng đầu của next trùng với các dòng cuối của prev
+     * (ChunkService ghép câu bằng '\n' nên overlap luôn trùng theo dòng)
+     */
+    static void appendWithoutOverlap(StringBuilder prev, String next) {
+        if (next == null || next.isEmpty()) return;
+        String[] a = prev.toString().split("\n");
+        String[] b = next.split("\n");
+        int max = Math.min(a.length, b.length);
+        int overlap = 0;
+        for (int m = max; m > 0; m--) {
+            boolean same = true;
+            for (int i = 0; i < m && same; i++) {
+                same = a[a.length - m + i].trim().equals(b[i].trim());
+            }
+            if (same) {
+                overlap = m;
+                break;
+            }
+        }
+        for (int i = overlap; i < b.length; i++) prev.append('\n').append(b[i]);
+    }
+
+    // Kéo chunk lân cận trong ngân sách token: lấp khoảng trống 1 chunk trước, rồi nới biên sau của khối
+    private void pullNeighbours(Map<String, TreeMap<Long, SearchHitDto>> byDoc, List<SearchHitDto> kept,
+                                int budgetTokens, Map<SearchHitDto, Integer> rank) {
+        int used = kept.stream().mapToInt(h -> tokensOf(h.getTokenCount(), h.getContent())).sum();
+        if (used >= budgetTokens) return;
+
+        for (var e : byDoc.entrySet()) {
+            TreeMap<Long, SearchHitDto> chunks = e.getValue();
+            List<Long> gaps = new ArrayList<>();
+            List<Long> edges = new ArrayList<>();
+            for (long id : chunks.keySet()) {
+                if (chunks.containsKey(id + 2) && !chunks.containsKey(id + 1)) gaps.add(id + 1);
+                else if (!chunks.containsKey(id + 1)) edges.add(id + 1);
+            }
+            List<Long> wanted = new ArrayList<>(gaps);
+            wanted.addAll(edges);
+            if (wanted.isEmpty()) continue;
+
+            Map<Long, ChunkMessage> found = new HashMap<>();
+            for (ChunkMessage c : ragChunkRepo.findByDocIdAndChunkIdIn(e.getKey(), wanted)) {
+                found.put(c.getChunkId(), c);
+            }
+            for (long id : wanted) {
+                ChunkMessage c = found.get(id);
+                if (c == null) continue;
+                int tokens = tokensOf(c.getTokenCount(), c.getContent());
+                if (used + tokens > budgetTokens) return;
+                // hàng xóm mượn similarity/thứ hạng của hit liền trước (không tự đứng trước hit đã chọn)
+                SearchHitDto anchor = chunks.floorEntry(id).getValue();
+                SearchHitDto neighbour = SearchHitDto.builder()
+                        .id(c.getId())
+                        .docId(c.getDocId())
+                        .chunkId(c.getChunkId())
+                        .content(c.getContent())
+                        .tokenCount(c.getTokenCount())
+                        .metadataJson(c.getMetadata())
+                        .distance(anchor.getDistance())
+                        .similarity(anchor.getSimilarity())
+                        .build();
+                chunks.put(id, neighbour);
+                rank.put(neighbour, rank.getOrDefault(anchor, Integer.MAX_VALUE));
+                used += tokens;
+            }
+        }
+    }
+
+    // số token lưu lúc ingest nếu có, ngược lại đếm lại
+    private int tokensOf(Integer stored, String content) {
+        if (stored != null) return stored;
+        return content == null || content.isEmpty() ? 0 : embeddingEncoding.countTokens(content);
+    }
+}
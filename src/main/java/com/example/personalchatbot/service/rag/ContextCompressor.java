@@ -0,0 +1,205 @@
+package com.example.personalchatbot.service.rag;
+
+import com.example.personalchatbot.dto.SearchHitDto;
+import com.example.personalchatbot.service.chunk.ChunkService;
+import com.example.personalchatbot.service.embedding.EmbeddingService;
+import com.example.personalchatbot.service.search.index.VectorKernels;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pgvector.PGvector;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Nén ngữ cảnh theo câu hỏi trước khi dựng prompt: trong mỗi hit chỉ giữ các câu liên quan nhất.
+ * - lexical: điểm = số từ của câu hỏi xuất hiện trong câu (có trọng số hiếm), chia căn độ dài câu
+ * - embedding: cosine giữa câu và câu hỏi (1 lần embedAll cho mọi câu của mọi hit)
+ * Câu giữ lại theo thứ tự gốc, chỗ bị lược đánh dấu "…"; hit giữ nguyên docId/chunkId nên citation không đổi.
+ * Hit là mã nguồn (metadata.source = code) giữ nguyên: bỏ dòng giữa chừng làm hỏng code.
+ * Chấm điểm từng hit chạy song song trên ragExecutor.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ContextCompressor {
+    public static final String MODE_NONE = "none";
+    public static final String MODE_LEXICAL = "lexical";
+    public static final String MODE_EMBEDDING = "embedding";
+
+    private static final String ELLIPSIS = "…";
+    private static final int MIN_TERM_LENGTH = 2;
+
+    private final EmbeddingService embeddingService;
+    private final ExecutorService ragExecutor;
+    private final ObjectMapper objectMapper;
+
+    public List<SearchHitDto> compress(String question, List<SearchHitDto> hits, String mode, int maxSentences) {
+        if (hits == null || hits.isEmpty() || mode == null || MODE_NONE.equals(mode) || maxSentences <= 0) return hits;
+
+        // câu = dòng (ChunkService ghép câu bằng '\n'), bỏ dòng trống
+        List<List<String>> sentences = hits.stream()
+                .map(h -> isCode(h) ? List.<String>of() : sentences(h))
+                .toList();
+        boolean anyLong = sentences.stream().anyMatch(s -> s.size() > maxSentences);
+        if (!anyLong) return hits;
+
+        List<double[]> scores;
+        if (MODE_EMBEDDING.equals(mode)) {
+            scores = embeddingScores(question, sentences, maxSentences);
+        } else {
+            Set<String> terms = new HashSet<>(terms(question));
+            Map<String, Integer> df = documentFrequency(sentences);
+            List<CompletableFuture<double[]>> futures = sentences.stream()
+                    .map(s -> CompletableFuture.supplyAsync(() -> lexicalScores(terms, df, s), ragExecutor))
+                    .toList();
+            scores = futures.stream().map(CompletableFuture::join).toList();
+        }
+
+        List<SearchHitDto> out = new ArrayList<>(hits.size());
+        for (int i = 0; i < hits.size(); i++) {
+            List<String> s = sentences.get(i);
+            SearchHitDto h = hits.get(i);
+            if (s.size() <= maxSentences || scores.get(i) == null) {
+                out.add(h);
+                continue;
+            }
+            out.add(h.toBuilder()
+                    .content(keepTop(s, scores.get(i), maxSentences))
+                    .tokenCount(null) // content đã đổi
+                    .build());
+        }
+        if (log.isDebugEnabled()) {
+            int before = hits.stream().mapToInt(h -> h.getContent() == null ? 0 : h.getContent().length()).sum();
+            int after = out.stream().mapToInt(h -> h.getContent() == null ? 0 : h.getContent().length()).sum();
+            log.debug("Context compression ({}): {} -> {} ký tự", mode, before, after);
+        }
+        return out;
+    }
+
+    // Giữ maxSentences câu điểm cao nhất theo thứ tự gốc; không câu nào có điểm -> giữ các câu đầu
+    static String keepTop(List<String> sentences, double[] scores, int maxSentences) {
+        Integer[] order = new Integer[sentences.size()];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Double.compare(scores[b], scores[a]));
+
+        boolean[] keep = new boolean[sentences.size()];
+        if (scores[order[0]] <= 0) {
+            for (int i = 0; i < maxSentences; i++) keep[i] = true;
+        } else {
+            for (int i = 0; i < maxSentences && scores[order[i]] > 0; i++) keep[order[i]] = true;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        boolean gap = false;
+        for (int i = 0; i < sentences.size(); i++) {
+            if (!keep[i]) {
+                gap = true;
+                continue;
+            }
+            if (gap) {
+                if (!sb.isEmpty()) sb.append('\n');
+                sb.append(ELLIPSIS); // đánh dấu đoạn bị lược
+            }
+            if (!sb.isEmpty()) sb.append('\n');
+            sb.append(sentences.get(i));
+            gap = false;
+        }
+        if (gap) sb.append('\n').append(ELLIPSIS);
+        return sb.toString();
+    }
+
+    // điểm = tổng idf các từ câu hỏi có trong câu / sqrt(số từ của câu)
+    private static double[] lexicalScores(Set<String> query, Map<String, Integer> df, List<String> sentences) {
+        double[] out = new double[sentences.size()];
+        for (int i = 0; i < sentences.size(); i++) {
+            List<String> toks = terms(sentences.get(i));
+            if (toks.isEmpty()) continue;
+            double s = 0;
+            for (String t : new HashSet<>(toks)) {
+                if (query.contains(t)) s += 1.0 / Math.log(1.0 + df.getOrDefault(t, 1)) + 1e-3;
+            }
+            out[i] = s / Math.sqrt(toks.size());
+        }
+        return out;
+    }
+
+    private static Map<String, Integer> documentFrequency(List<List<String>> sentences) {
+        Map<String, Integer> df = new HashMap<>();
+        for (List<String> hit : sentences) {
+            for (String s : hit) {
+                for (String t : new HashSet<>(terms(s))) df.merge(t, 1, Integer::sum);
+            }
+        }
+        return df;
+    }
+
+    // cosine câu ~ câu hỏi, chỉ embed câu của các hit cần nén
+    private List<double[]> embeddingScores(String question, List<List<String>> sentences, int maxSentences) {
+        List<String> texts = new ArrayList<>();
+        texts.add(question);
+        for (List<String> s : sentences) {
+            if (s.size() > maxSentences) texts.addAll(s);
+        }
+        List<PGvector> vectors;
+        try {
+            vectors = embeddingService.embedAll(texts);
+        } catch (Exception e) {
+            log.warn("Không embed được câu để nén ngữ cảnh, giữ nguyên: {}", e.getMessage());
+            return Collections.nCopies(sentences.size(), null);
+        }
+        float[] q = VectorKernels.normalizedCopy(vectors.getFirst().toArray());
+
+        List<CompletableFuture<double[]>> futures = new ArrayList<>(sentences.size());
+        int pos = 1;
+        for (List<String> s : sentences) {
+            if (s.size() <= maxSentences) {
+                futures.add(CompletableFuture.completedFuture(null));
+                continue;
+            }
+            List<PGvector> own = vectors.subList(pos, pos + s.size());
+            pos += s.size();
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                double[] out = new double[own.size()];
+                for (int i = 0; i < own.size(); i++) {
+                    float[] v = VectorKernels.normalizedCopy(own.get(i).toArray());
+                    out[i] = VectorKernels.dot(q, 0, v, 0, Math.min(q.length, v.length));
+                }
+                return out;
+            }, ragExecutor));
+        }
+        return futures.stream().map(CompletableFuture::join).toList();
+    }
+
+    private boolean isCode(SearchHitDto hit) {
+        if (hit.getMetadataJson() == null || hit.getMetadataJson().isBlank()) return false;
+        try {
+            JsonNode source = objectMapper.readTree(hit.getMetadataJson()).get("source");
+            return source != null && ChunkService.SOURCE_CODE.equals(source.asText());
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static List<String> sentences(SearchHitDto hit) {
+        if (hit.getContent() == null) return List.of();
+        return Arrays.stream(hit.getContent().split("\n")).map(String::strip).filter(s -> !s.isEmpty()).toList();
+    }
+
+    // chữ thường, bỏ dấu, tách theo ký tự không phải chữ/số
+    private static List<String> terms(String s) {
+        String n = Normalizer.normalize(s.toLowerCase(Locale.ROOT), Normalizer.Form.NFD)
+                .replaceAll("\\p{M}+", "")
+                .replace('đ', 'd');
+        List<String> out = new ArrayList<>();
+        for (String t : n.split("[^\\p{L}\\p{N}]+")) {
+            if (t.length() >= MIN_TERM_LENGTH) out.add(t);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.personalchatbot.service.rag;
+
+import com.example.personalchatbot.dto.SearchHitDto;
+import com.example.personalchatbot.service.search.index.VectorKernels;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Maximal Marginal Relevance: chọn lần lượt hit có
+ *   lambda * sim(query, d) - (1 - lambda) * max_{s đã chọn} sim(d, s)
+ * để tránh nhồi nhiều chunk trùng ý vào prompt.
+ * maxSim[] giữ độ giống lớn nhất của mỗi ứng viên với tập đã chọn (mảng nguyên thuỷ),
+ * nên mỗi cặp (ứng viên, đã chọn) chỉ tính dot product đúng 1 lần.
+ */
+final class MmrSelector {
+    private MmrSelector() {}
+
+    static List<SearchHitDto> select(List<SearchHitDto> candidates, int n, double lambda) {
+        int size = candidates.size();
+        if (size <= 1 || n <= 0) return candidates.stream().limit(Math.max(0, n)).toList();
+
+        // chuẩn hoá L2 một lần để sim = dot
+        float[][] vecs = new float[size][];
+        double[] relevance = new double[size];
+        for (int i = 0; i < size; i++) {
+            SearchHitDto h = candidates.get(i);
+            vecs[i] = h.getEmbedding() == null ? null : VectorKernels.normalizedCopy(h.getEmbedding());
+            relevance[i] = h.getSimilarity();
+        }
+
+        float[] maxSim = new float[size];
+        Arrays.fill(maxSim, Float.NEGATIVE_INFINITY); // chưa chọn gì -> không bị phạt
+        boolean[] taken = new boolean[size];
+        List<SearchHitDto> out = new ArrayList<>(Math.min(n, size));
+
+        while (out.size() < n && out.size() < size) {
+            int best = -1;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < size; i++) {
+                if (taken[i]) continue;
+                double penalty = maxSim[i] == Float.NEGATIVE_INFINITY ? 0.0 : maxSim[i];
+                double score = lambda * relevance[i] - (1.0 - lambda) * penalty;
+                if (score > bestScore) { bestScore = score; best = i; }
+            }
+            taken[best] = true;
+            out.add(candidates.get(best));
+
+            // cập nhật maxSim với phần tử vừa chọn
+            float[] b = vecs[best];
+            if (b == null) continue;
+            for (int i = 0; i < size; i++) {
+                if (taken[i] || vecs[i] == null) continue;
+                float s = VectorKernels.dot(vecs[i], 0, b, 0, Math.min(vecs[i].length, b.length));
+                if (s > maxSim[i]) maxSim[i] = s;
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.personalchatbot.service.rag;
+
+import com.example.personalchatbot.service.llm.LlmService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Sinh truy vấn phụ cho câu hỏi ngắn/mơ hồ bằng 1 lần gọi LLM:
+ * - multi: các cách diễn đạt lại (paraphrase)
+ * - hyde: 1 đoạn trả lời giả định, embed đoạn này thường gần chunk tài liệu hơn câu hỏi
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class QueryExpander {
+    public static final String MODE_NONE = "none";
+    public static final String MODE_MULTI = "multi";
+    public static final String MODE_HYDE = "hyde";
+    public static final String MODE_BOTH = "both";
+
+    private final LlmService llm;
+    private final ObjectMapper om;
+
+    /**
+     * @param mode  multi | hyde | both
+     * @param count số paraphrase (bỏ qua khi mode = hyde)
+     * @return danh sách truy vấn phụ (không gồm câu hỏi gốc), rỗng nếu LLM lỗi
+     */
+    public List<String> expand(String question, String mode, int count) {
+        boolean multi = MODE_MULTI.equals(mode) || MODE_BOTH.equals(mode);
+        boolean hyde = MODE_HYDE.equals(mode) || MODE_BOTH.equals(mode);
+        if (!multi && !hyde) return List.of();
+
+        String system = """
+              You help a retrieval system over internal technical documents (mostly Vietnamese).
+              Reply with pure JSON only: {"paraphrases": [string], "hypothetical": string|null}
+              - paraphrases: %d alternative phrasings of the question, same language, keep project/module names
+              - hypothetical: %s
+              Do not include any explanation or extra text outside JSON.
+            """.formatted(multi ? count : 0,
+                hyde ? "a short passage (<=120 words) that would plausibly answer the question, written like documentation"
+                     : "null");
+
+        try {
+            String raw = llm.generate(system, question);
+            JsonNode root = om.readTree(stripFence(raw));
+
+            Set<String> out = new LinkedHashSet<>();
+            JsonNode ps = root.path("paraphrases");
+            if (multi && ps.isArray()) {
+                for (JsonNode p : ps) {
+                    String s = p.asText("").trim();
+                    if (!s.isEmpty() && !s.equalsIgnoreCase(question.trim())) out.add(s);
+                    if (out.size() >= count) break;
+                }
+            }
+            String h = root.path("hypothetical").asText("").trim();
+            if (hyde && !h.isEmpty() && !"null".equals(h)) out.add(h);
+            return new ArrayList<>(out);
+        } catch (Exception e) {
+            // mở rộng chỉ là tăng cường -> lỗi thì chạy với câu hỏi gốc
+            log.warn("Query expansion lỗi, bỏ qua: {}", e.getMessage());
+            return List.of();
+        }
+    }
+
+    // Model đôi khi bọc JSON trong ```json ... ```
+    private static String stripFence(String s) {
+        if (s == null) return "{}";
+        String t = s.trim();
+        if (t.startsWith("```")) {
+            int start = t.indexOf('\n');
+            int end = t.lastIndexOf("```");
+            if (start > 0 && end > start) t = t.substring(start + 1, end);
+        }
+        return t;
+    }
+}
@@ -1,24 +1,52 @@
 package com.example.personalchatbot.service.rag;
 
 import com.example.personalchatbot.dto.AnswerDto;
+import com.example.personalchatbot.dto.PreparedAnswerDto;
+import com.example.personalchatbot.dto.RetrievalOptions;
+import com.example.personalchatbot.dto.RetrievalStatsDto;
 import com.example.personalchatbot.dto.SearchHitDto;
+import com.example.personalchatbot.service.chunk.ParentBlockService;
+import com.example.personalchatbot.service.embedding.EmbeddingService;
 import com.example.personalchatbot.service.implement.RagServiceImpl;
 import com.example.personalchatbot.service.llm.LlmService;
 import com.example.personalchatbot.service.prompt.PromptService;
 import com.example.personalchatbot.service.search.SearchService;
+import com.example.personalchatbot.service.search.index.MetadataCodes;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pgvector.PGvector;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class RagService implements RagServiceImpl {
     private final SearchService searchService;   // retrieve top-k từ pgvector
     private final PromptService promptService;   // dựng prompt từ hits
     private final LlmService llm;
+    private final QueryExpander queryExpander;   // paraphrase / HyDE
+    private final ExecutorService ragExecutor;
+    private final ParentBlockService parentBlockService; // small-to-big
+    private final ContextAssembler contextAssembler;     // ghép chunk liên tiếp
+    private final EmbeddingService embeddingService;     // embed sớm khi chạy song song với suy luận metadata
+    private final ObjectMapper objectMapper;
+    private final AnswerCacheService answerCacheService; // cache câu trả lời theo ngữ nghĩa
+    private final ContextCompressor contextCompressor;   // chỉ giữ câu liên quan trong mỗi hit
 
     @Override
     public AnswerDto answer(String question,
@@ -27,31 +55,446 @@ public class RagService implements RagServiceImpl {
                             Map<String, String> filters,
                             double temperature,
                             Integer maxOutputTokens) {
+        return answer(question, filters,
+                RetrievalOptions.builder().topK(topK).keepN(keepN).build(),
+                temperature, maxOutputTokens);
+    }
 
-        // 1) Retrieve: tìm top-k chunks theo câu hỏi (có thể có filters từ metadata)
-        List<SearchHitDto> hits = searchService.search(
-                question,
-                topK <= 0 ? 60 : topK,   // mặc định 60 nếu không truyền
-                filters == null ? Map.of() : filters // null-safe
-        );
-
-        // 2) (Optional) Rerank/keep-N: ở đây đơn giản là sort theo similarity giảm dần
-        List<SearchHitDto> kept = hits.stream()
-                .sorted(Comparator.comparingDouble(SearchHitDto::getSimilarity).reversed()) // sim cao trước
-                .limit(keepN <= 0 ? 8 : keepN) // giữ N chunk tốt nhất (mặc định 8)
-                .toList();
+    @Override
+    public AnswerDto answer(String question,
+                            Map<String, String> filters,
+                            RetrievalOptions options,
+                            double temperature,
+                            Integer maxOutputTokens) {
+        return answer(prepare(question, filters, withOutput(options, maxOutputTokens)), temperature, maxOutputTokens);
+    }
 
-        // 3) Build prompt từ câu hỏi + context đã chọn
-        var prompt = promptService.build(question, kept);
+    // prompt dựng trong prepare -> ghi giới hạn output vào options để PromptService chừa đúng phần đó
+    private static RetrievalOptions withOutput(RetrievalOptions options, Integer maxOutputTokens) {
+        if (maxOutputTokens == null || maxOutputTokens.equals(options.getMaxOutputTokens())) return options;
+        return options.toBuilder().maxOutputTokens(maxOutputTokens).build();
+    }
 
+    @Override
+    public AnswerDto answer(PreparedAnswerDto prepared, double temperature, Integer maxOutputTokens) {
         // 4) Gọi LLM sinh câu trả lời
+        var prompt = prepared.getPrompt();
         String text = llm.generate(prompt.getSystem(), prompt.getUser(), temperature, maxOutputTokens);
 
-        // 5) Gom danh sách citations để hiển thị cùng câu trả lời
-        List<String> citations = kept.stream()
-                .map(hit -> hit.getDocId() + "#" + hit.getChunkId())
+        return new AnswerDto(text, prepared.getCitations(), prepared.getRetrieval());
+    }
+
+    /**
+     * Trả lời có cache ngữ nghĩa: 1 lần embed dùng cho tra cache, retrieve đoán trước và lưu cache;
+     * hit -> prepare dừng ngay khi có filters (không search có filter / dựng prompt / gọi LLM),
+     * miss -> sinh câu trả lời rồi lưu cache.
+     */
+    @Override
+    public AnswerDto answer(String question,
+                            CompletableFuture<Map<String, String>> filters,
+                            RetrievalOptions options,
+                            double temperature,
+                            Integer maxOutputTokens) {
+        return answer(question, embedAsync(question), filters, options, temperature, maxOutputTokens);
+    }
+
+    @Override
+    public AnswerDto answer(String question,
+                            CompletableFuture<PGvector> qvec,
+                            CompletableFuture<Map<String, String>> filters,
+                            RetrievalOptions options,
+                            double temperature,
+                            Integer maxOutputTokens) {
+        CompletableFuture<AnswerDto> cached = lookupCached(qvec, filters, options);
+        PreparedAnswerDto prepared = prepare(question, qvec, filters, withOutput(options, maxOutputTokens), cached);
+        if (prepared == null) return join(cached);
+
+        AnswerDto ans = answer(prepared, temperature, maxOutputTokens);
+        if (options.isAnswerCache()) remember(join(qvec), join(filters), ans);
+        return ans;
+    }
+
+    @Override
+    public CompletableFuture<PGvector> embedAsync(String question) {
+        return CompletableFuture.supplyAsync(() -> embeddingService.embed(question), ragExecutor);
+    }
+
+    @Override
+    public CompletableFuture<AnswerDto> lookupCached(CompletableFuture<PGvector> qvec,
+                                                     CompletableFuture<Map<String, String>> filters,
+                                                     RetrievalOptions options) {
+        if (!options.isAnswerCache()) return CompletableFuture.completedFuture(null);
+        return qvec
+                .thenCombine(filters, (v, f) -> answerCacheService.lookup(v.toArray(), f))
+                .exceptionally(e -> {
+                    log.warn("Tra answer cache lỗi, bỏ qua cache: {}", e.getMessage());
+                    return null;
+                });
+    }
+
+    @Override
+    public void remember(PGvector qvec, Map<String, String> filters, AnswerDto answer) {
+        try {
+            answerCacheService.put(qvec.toArray(), filters, answer);
+        } catch (Exception e) {
+            log.warn("Không lưu được answer cache: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public Flux<String> stream(PreparedAnswerDto prepared, double temperature, Integer maxOutputTokens) {
+        var prompt = prepared.getPrompt();
+        return llm.stream(prompt.getSystem(), prompt.getUser(), temperature, maxOutputTokens);
+    }
+
+    @Override
+    public PreparedAnswerDto prepare(String question, Map<String, String> filters, RetrievalOptions options) {
+        // embed tối đa 1 lần, chỉ khi đường retrieve cần tới vector
+        PGvector[] vec = new PGvector[1];
+        return prepare(question, () -> {
+            if (vec[0] == null) vec[0] = embeddingService.embed(question);
+            return vec[0];
+        }, filters, options);
+    }
+
+    private PreparedAnswerDto prepare(String question, Supplier<PGvector> qvec, Map<String, String> filters,
+                                      RetrievalOptions options) {
+        int topK = options.getTopK() <= 0 ? 60 : options.getTopK();   // mặc định 60 nếu không truyền
+        int keepN = options.getKeepN() <= 0 ? 8 : options.getKeepN(); // giữ N chunk tốt nhất (mặc định 8)
+        Double lambda = options.getMmrLambda();
+
+        // 1) Retrieve: tìm top-k chunks theo câu hỏi (có thể có filters từ metadata)
+        //    MMR cần embedding của ứng viên để đo độ trùng lặp giữa các chunk
+        Map<String, String> f = filters == null ? Map.of() : filters; // null-safe
+        String mode = options.getExpansion();
+        boolean expand = mode != null && !QueryExpander.MODE_NONE.equals(mode);
+        RetrievalStatsDto stats = new RetrievalStatsDto();
+        List<SearchHitDto> hits;
+        if (expand) {
+            hits = retrieveExpanded(question, qvec, topK, f, lambda != null, options);
+            stats.setRequestedK(topK);
+            stats.setRounds(1);
+            stats.setFetched(hits.size());
+            // thứ tự RRF không theo similarity -> chỉ lọc theo ngưỡng, không cắt theo gap
+            if (options.getMinSimilarity() != null) {
+                hits = hits.stream().filter(h -> h.getSimilarity() >= options.getMinSimilarity()).toList();
+            }
+            stats.setStopReason(hits.size() < stats.getFetched() ? AdaptiveCutoff.THRESHOLD : AdaptiveCutoff.FULL);
+        } else if (options.isRelaxFilters() && !f.isEmpty()) {
+            hits = retrieveRelaxed(qvec, topK, f, lambda != null, options, stats);
+        } else {
+            hits = retrieveAdaptive(question, qvec, topK, keepN, f, lambda != null, options, stats);
+        }
+        stats.setAfterCutoff(hits.size());
+        return finish(question, hits, options, stats, expand);
+    }
+
+    /**
+     * Như prepare nhưng filters đến sau (suy luận metadata bằng LLM chạy song song):
+     * - trong lúc chờ filters: embed câu hỏi + search không filter với K dư (topK * oversample)
+     * - filters rỗng -> dùng luôn kết quả đoán trước
+     * - có filters -> lọc sau trên ứng viên đã có; đủ keepN thì dừng, thiếu mới search lại có filter
+     *   bằng vector đã embed (không embed lại)
+     * Mở rộng truy vấn / search 2 cấp / tắt speculative -> chờ filters rồi đi đường thường.
+     */
+    @Override
+    public PreparedAnswerDto prepare(String question, CompletableFuture<Map<String, String>> filters,
+                                     RetrievalOptions options) {
+        return prepare(question, embedAsync(question), filters, options, CompletableFuture.completedFuture(null));
+    }
+
+    /**
+     * Như trên nhưng dùng vector đã embed sẵn (chung với tra answer cache) và dừng sớm khi cache hit:
+     * trả null ngay sau khi filters về, không search có filter / ghép context / dựng prompt.
+     */
+    @Override
+    public PreparedAnswerDto prepare(String question, CompletableFuture<PGvector> qvec,
+                                     CompletableFuture<Map<String, String>> filters, RetrievalOptions options,
+                                     CompletableFuture<AnswerDto> cached) {
+        String mode = options.getExpansion();
+        boolean expand = mode != null && !QueryExpander.MODE_NONE.equals(mode);
+        if (!options.isSpeculative() || expand || options.isHierarchical()) {
+            Map<String, String> f = join(filters);
+            // tra cache chỉ còn chờ filters -> hit thì không retrieve
+            if (join(cached) != null) return null;
+            return prepare(question, () -> join(qvec), f, options);
+        }
+
+        int topK = options.getTopK() <= 0 ? 60 : options.getTopK();
+        int keepN = options.getKeepN() <= 0 ? 8 : options.getKeepN();
+        boolean withEmbeddings = options.getMmrLambda() != null;
+        int overK = Math.max(topK, Math.min(Math.max(topK, options.getMaxTopK()),
+                topK * Math.max(1, options.getSpeculativeOversample())));
+
+        CompletableFuture<List<SearchHitDto>> speculative = qvec.thenApplyAsync(
+                v -> searchService.searchByVectors(List.of(v), overK, Map.of(), withEmbeddings).getFirst(),
+                ragExecutor);
+
+        Map<String, String> f = join(filters);
+        // cache hit -> bỏ search có filter, ghép context, dựng prompt (search đoán trước đã chạy song song)
+        if (join(cached) != null) {
+            speculative.cancel(false);
+            return null;
+        }
+        f = f == null ? Map.of() : f;
+        List<SearchHitDto> candidates = join(speculative);
+
+        RetrievalStatsDto stats = new RetrievalStatsDto();
+        stats.setRequestedK(overK);
+        stats.setRounds(1);
+        stats.setFetched(candidates.size());
+
+        List<SearchHitDto> hits;
+        if (f.isEmpty()) {
+            hits = candidates.size() > topK ? candidates.subList(0, topK) : candidates;
+        } else if (options.isRelaxFilters()) {
+            // xếp tier tại chỗ: khớp đủ filter -> chỉ khớp project -> không khớp
+            List<SearchHitDto> tiered = new ArrayList<>(candidates.size());
+            for (SearchHitDto h : candidates) {
+                Map<String, String> meta = MetadataCodes.readKeys(objectMapper, h.getMetadataJson());
+                int tier = matches(meta, f) ? 0
+                        : f.containsKey("project") && f.get("project").equals(meta.get("project")) ? 1 : 2;
+                tiered.add(h.toBuilder().tier(tier).build());
+            }
+            tiered.sort(Comparator.comparingInt(SearchHitDto::getTier)); // ổn định -> giữ thứ tự distance trong tier
+            if (tiered.stream().filter(h -> h.getTier() == 0).count() < keepN) {
+                // tier 0 thiếu: lấy đúng tập có filter rồi đặt lên đầu
+                List<SearchHitDto> refined = searchService.searchByVectors(
+                        List.of(join(qvec)), topK, f, withEmbeddings).getFirst();
+                stats.setRounds(2);
+                tiered = mergeRefined(refined, tiered);
+            }
+            hits = tiered.size() > topK ? tiered.subList(0, topK) : tiered;
+        } else {
+            Map<String, String> want = f;
+            hits = candidates.stream()
+                    .filter(h -> matches(MetadataCodes.readKeys(objectMapper, h.getMetadataJson()), want))
+                    .limit(topK)
+                    .toList();
+            if (hits.size() < keepN) {
+                hits = searchService.searchByVectors(List.of(join(qvec)), topK, f, withEmbeddings).getFirst();
+                stats.setRounds(2);
+            }
+        }
+
+        // cắt theo ngưỡng (thứ tự theo tier thì không cắt theo gap)
+        Double minSim = options.getMinSimilarity();
+        if (options.isRelaxFilters()) {
+            int before = hits.size();
+            if (minSim != null) hits = hits.stream().filter(h -> h.getSimilarity() >= minSim).toList();
+            stats.setStopReason(hits.size() < before ? AdaptiveCutoff.THRESHOLD : AdaptiveCutoff.FULL);
+        } else {
+            int cut = AdaptiveCutoff.index(hits, minSim, options.getMaxGap(), 1);
+            stats.setStopReason(AdaptiveCutoff.reason(hits, cut, minSim));
+            hits = cut < hits.size() ? hits.subList(0, cut) : hits;
+        }
+        stats.setAfterCutoff(hits.size());
+        if (log.isDebugEnabled()) {
+            log.debug("Speculative retrieval: filters={}, candidates={}, rounds={}", f, candidates.size(), stats.getRounds());
+        }
+        return finish(question, hits, options, stats, false);
+    }
+
+    private static boolean matches(Map<String, String> meta, Map<String, String> filters) {
+        for (var e : filters.entrySet()) {
+            if (e.getValue() != null && !e.getValue().equals(meta.get(e.getKey()))) return false;
+        }
+        return true;
+    }
+
+    // hit từ search có filter (tier 0) đứng trước, bỏ trùng với danh sách đã xếp tier
+    private static List<SearchHitDto> mergeRefined(List<SearchHitDto> refined, List<SearchHitDto> tiered) {
+        Map<String, SearchHitDto> byKey = new LinkedHashMap<>();
+        for (SearchHitDto h : refined) byKey.putIfAbsent(h.getDocId() + "#" + h.getChunkId(), h.toBuilder().tier(0).build());
+        for (SearchHitDto h : tiered) byKey.putIfAbsent(h.getDocId() + "#" + h.getChunkId(), h);
+        List<SearchHitDto> out = new ArrayList<>(byKey.values());
+        out.sort(Comparator.comparingInt(SearchHitDto::getTier));
+        return out;
+    }
+
+    // keep-N, ghép context, dựng prompt, citations và log thống kê
+    private PreparedAnswerDto finish(String question, List<SearchHitDto> hits, RetrievalOptions options,
+                                     RetrievalStatsDto stats, boolean expand) {
+        int keepN = options.getKeepN() <= 0 ? 8 : options.getKeepN();
+        Double lambda = options.getMmrLambda();
+
+        // 1b) Small-to-big: chunk con -> khối cha, gộp các con cùng cha trước khi chọn keep-N
+        if (options.isSmallToBig()) hits = parentBlockService.expandToParents(hits);
+
+        // 2) Rerank/keep-N: MMR (relevance - trùng lặp) nếu có lambda, ngược lại sort theo similarity giảm dần
+        //    (kết quả đã fuse RRF / xếp theo tier thì giữ nguyên thứ hạng)
+        List<SearchHitDto> kept = lambda != null
+                ? MmrSelector.select(hits, keepN, Math.max(0.0, Math.min(1.0, lambda)))
+                : expand || options.isRelaxFilters() ? hits.stream().limit(keepN).toList()
+                : hits.stream()
+                        .sorted(Comparator.comparingDouble(SearchHitDto::getSimilarity).reversed()) // sim cao trước
+                        .limit(keepN)
+                        .toList();
+
+        // 2b) Ghép chunk liên tiếp cùng tài liệu (bỏ câu overlap), có thể kéo thêm chunk lân cận
+        List<SearchHitDto> context = kept;
+        if (options.isStitch()) {
+            int budget = options.getMaxContextTokens() <= 0 ? 4000 : options.getMaxContextTokens();
+            context = contextAssembler.assemble(kept, options.isStitchNeighbours(), budget);
+            if (log.isDebugEnabled()) {
+                log.debug("Context stitch: {} hit ({} ký tự) -> {} khối ({} ký tự)",
+                        kept.size(), contentChars(kept), context.size(), contentChars(context));
+            }
+        }
+
+        // 2c) Nén theo câu hỏi: mỗi hit chỉ giữ vài câu liên quan nhất (citation giữ nguyên)
+        context = contextCompressor.compress(question, context,
+                options.getCompression(), options.getCompressionMaxSentences());
+
+        // 3) Build prompt từ câu hỏi + context đã chọn
+        var prompt = promptService.build(question, context, options.getMaxOutputTokens());
+
+        // Citations chỉ gồm hit đã xếp vào prompt (hit bị bỏ vì hết ngân sách token model không thấy)
+        List<String> citations = prompt.getHits().stream()
+                .map(hit -> hit.getLastChunkId() == null
+                        ? hit.getDocId() + "#" + hit.getChunkId()
+                        : hit.getDocId() + "#" + hit.getChunkId() + "-" + hit.getLastChunkId())
                 .toList();
 
-        return new AnswerDto(text, citations);
+        stats.setKept(kept.size());
+        if (options.isRelaxFilters() && kept.stream().anyMatch(h -> h.getTier() != null)) {
+            stats.setTiers(kept.stream().map(SearchHitDto::getTier).toList());
+        }
+        log.info("Retrieval: k={}, fetched={}, rounds={}, afterCutoff={}, kept={}, stop={}, tiers={}",
+                stats.getRequestedK(), stats.getFetched(), stats.getRounds(),
+                stats.getAfterCutoff(), stats.getKept(), stats.getStopReason(), stats.getTiers());
+
+        return new PreparedAnswerDto(prompt, citations, stats);
+    }
+
+    /**
+     * Retrieve với K thích ứng (tắt adaptive = 1 lần search với topK như cũ):
+     * - bắt đầu với initialK nhỏ; câu hỏi dễ thường dừng luôn ở đây
+     * - kết quả có filter bị thiếu (trả về < K và < keepN) -> nhân K lên tới maxTopK
+     * - đủ K mà cả danh sách vẫn trên ngưỡng, không có gap -> đuôi còn liên quan, lấy tới topK
+     * - cuối cùng cắt theo ngưỡng similarity / score gap
+     */
+    private List<SearchHitDto> retrieveAdaptive(String question, Supplier<PGvector> qvec, int topK, int keepN,
+                                                Map<String, String> filters, boolean withEmbeddings,
+                                                RetrievalOptions options, RetrievalStatsDto stats) {
+        Double minSim = options.getMinSimilarity();
+        Double maxGap = options.getMaxGap();
+        int maxK = Math.max(topK, options.getMaxTopK());
+        int k = options.isAdaptive()
+                ? Math.min(topK, Math.max(keepN * 2, options.getInitialK()))
+                : topK;
+
+        // mọi vòng nới K dùng chung 1 vector (cache kết quả theo K nên mỗi vòng mới là 1 lần miss)
+        List<SearchHitDto> hits = search(question, qvec, k, filters, withEmbeddings, options);
+        int rounds = 1;
+
+        if (options.isAdaptive()) {
+            // tập có filter quá thưa (ANN lọc sau khi lấy ứng viên) -> nới K
+            while (!filters.isEmpty() && hits.size() < k && hits.size() < keepN && k < maxK) {
+                k = Math.min(maxK, k * 4);
+                hits = search(question, qvec, k, filters, withEmbeddings, options);
+                rounds++;
+            }
+            // đủ K và chưa chạm ngưỡng/gap -> phần sau K có thể vẫn liên quan
+            if (hits.size() == k && k < topK && AdaptiveCutoff.index(hits, minSim, maxGap, 1) == hits.size()) {
+                k = topK;
+                hits = search(question, qvec, k, filters, withEmbeddings, options);
+                rounds++;
+            }
+        }
+        stats.setRequestedK(k);
+        stats.setRounds(rounds);
+        stats.setFetched(hits.size());
+
+        int cut = AdaptiveCutoff.index(hits, minSim, maxGap, 1);
+        stats.setStopReason(hits.size() < k && cut == hits.size()
+                ? AdaptiveCutoff.EXHAUSTED : AdaptiveCutoff.reason(hits, cut, minSim));
+        return cut < hits.size() ? hits.subList(0, cut) : hits;
+    }
+
+    // search thường hoặc 2 cấp (tài liệu -> chunk) theo options
+    private List<SearchHitDto> search(String question, Supplier<PGvector> qvec, int k, Map<String, String> filters,
+                                      boolean withEmbeddings, RetrievalOptions options) {
+        return options.isHierarchical()
+                ? searchService.searchHierarchical(qvec.get(), k, filters, withEmbeddings)
+                : searchService.search(question, qvec, k, filters, withEmbeddings);
+    }
+
+    /**
+     * Retrieve với filter nới dần (1 round trip): hit khớp đủ filter đứng trước, sau đó tới hit chỉ khớp project,
+     * cuối cùng là hit không filter. Danh sách xếp theo (tier, distance) nên chỉ lọc theo ngưỡng similarity.
+     */
+    private List<SearchHitDto> retrieveRelaxed(Supplier<PGvector> qvec, int topK, Map<String, String> filters,
+                                               boolean withEmbeddings, RetrievalOptions options, RetrievalStatsDto stats) {
+        int k = options.isAdaptive() ? Math.min(topK, Math.max(1, options.getInitialK())) : topK;
+        List<SearchHitDto> hits = searchService.searchRelaxed(qvec.get(), k, filters, withEmbeddings); // vector dùng chung với cả request
+        stats.setRequestedK(k);
+        stats.setRounds(1);
+        stats.setFetched(hits.size());
+
+        Double minSim = options.getMinSimilarity();
+        List<SearchHitDto> out = minSim == null ? hits
+                : hits.stream().filter(h -> h.getSimilarity() >= minSim).toList();
+        stats.setStopReason(out.size() < hits.size() ? AdaptiveCutoff.THRESHOLD : AdaptiveCutoff.FULL);
+        if (log.isDebugEnabled()) {
+            log.debug("Relaxed retrieval tiers: {}", out.stream().map(SearchHitDto::getTier).toList());
+        }
+        return out;
+    }
+
+    /**
+     * Retrieve với truy vấn mở rộng, trong giới hạn expansionBudgetMs:
+     * - vector câu hỏi gốc (dùng chung với cả request) sẵn sàng song song với lời gọi LLM sinh truy vấn phụ
+     * - các truy vấn phụ: 1 lần embedAll; câu hỏi gốc + truy vấn phụ: 1 câu SQL (searchByVectors)
+     * - gộp bằng RRF; hết budget / lỗi thì chỉ search câu hỏi gốc (qua cache)
+     */
+    private List<SearchHitDto> retrieveExpanded(String question, Supplier<PGvector> qvec, int topK,
+                                                Map<String, String> filters, boolean withEmbeddings,
+                                                RetrievalOptions options) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, options.getExpansionBudgetMs()));
+        int count = options.getExpansionCount() <= 0 ? 3 : options.getExpansionCount();
+
+        // vector câu hỏi chuẩn bị song song với lượt LLM sinh truy vấn phụ
+        CompletableFuture<PGvector> original = CompletableFuture.supplyAsync(qvec, ragExecutor);
+        CompletableFuture<List<String>> expanded = CompletableFuture.supplyAsync(
+                () -> queryExpander.expand(question, options.getExpansion(), count), ragExecutor);
+
+        List<List<SearchHitDto>> lists = List.of();
+        try {
+            long remain = Math.max(0, deadline - System.nanoTime());
+            List<String> queries = expanded.get(remain, TimeUnit.NANOSECONDS);
+            if (!queries.isEmpty()) {
+                // 1 lần embedAll cho mọi truy vấn phụ + 1 lần search theo lô cho câu hỏi gốc và truy vấn phụ
+                List<PGvector> vectors = new ArrayList<>(queries.size() + 1);
+                vectors.add(join(original));
+                vectors.addAll(embeddingService.embedAll(queries));
+                lists = searchService.searchByVectors(vectors, topK, filters, withEmbeddings);
+            }
+        } catch (TimeoutException e) {
+            expanded.cancel(true);
+            log.warn("Query expansion vượt budget {}ms, chỉ dùng câu hỏi gốc", options.getExpansionBudgetMs());
+        } catch (Exception e) {
+            log.warn("Query expansion lỗi, chỉ dùng câu hỏi gốc: {}", e.getMessage());
+        }
+        if (lists.size() <= 1) return searchService.search(question, () -> join(original), topK, filters, withEmbeddings);
+
+        // câu hỏi gốc nặng hơn 1 chút để truy vấn phụ không lấn át
+        double[] weights = new double[lists.size()];
+        Arrays.fill(weights, 1.0);
+        weights[0] = 1.5;
+        return RankFusion.rrf(lists, weights, topK);
+    }
+
+    private static int contentChars(List<SearchHitDto> hits) {
+        return hits.stream().mapToInt(h -> h.getContent() == null ? 0 : h.getContent().length()).sum();
+    }
+
+    private static <T> T join(CompletableFuture<T> f) {
+        try {
+            return f.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw e;
+        }
     }
 }
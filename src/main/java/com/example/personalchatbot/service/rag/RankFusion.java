@@ -0,0 +1,43 @@
+package com.example.personalchatbot.service.rag;
+
+import com.example.personalchatbot.dto.SearchHitDto;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Reciprocal Rank Fusion: score(d) = sum_i w_i / (K + rank_i(d)).
+ * Chỉ dựa vào thứ hạng nên gộp được kết quả của các truy vấn có thang similarity khác nhau (câu hỏi vs HyDE).
+ * Mỗi chunk giữ bản hit có similarity cao nhất để MMR/prompt dùng tiếp.
+ */
+final class RankFusion {
+    static final int K = 60;
+
+    private RankFusion() {}
+
+    /**
+     * @param lists   danh sách kết quả, lists[0] là câu hỏi gốc
+     * @param weights trọng số từng danh sách (null = đều 1.0)
+     * @param limit   số hit tối đa trả về
+     */
+    static List<SearchHitDto> rrf(List<List<SearchHitDto>> lists, double[] weights, int limit) {
+        Map<UUID, Double> score = new HashMap<>();
+        Map<UUID, SearchHitDto> best = new LinkedHashMap<>();
+        for (int li = 0; li < lists.size(); li++) {
+            double w = weights == null || li >= weights.length ? 1.0 : weights[li];
+            List<SearchHitDto> hits = lists.get(li);
+            for (int rank = 0; rank < hits.size(); rank++) {
+                SearchHitDto h = hits.get(rank);
+                score.merge(h.getId(), w / (K + rank + 1), Double::sum);
+                best.merge(h.getId(), h, (a, b) -> b.getSimilarity() > a.getSimilarity() ? b : a);
+            }
+        }
+        List<SearchHitDto> out = new ArrayList<>(best.values());
+        out.sort((a, b) -> Double.compare(score.get(b.getId()), score.get(a.getId())));
+        return out.size() > limit ? new ArrayList<>(out.subList(0, limit)) : out;
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.personalchatbot.service.search;
+
+import com.example.personalchatbot.config.SearchConfig;
+import com.example.personalchatbot.entity.ChunkMessage;
+import com.example.personalchatbot.entity.DocumentMessage;
+import com.example.personalchatbot.repository.RagDocumentRepository;
+import com.example.personalchatbot.service.implement.DocumentIndexServiceImpl;
+import com.example.personalchatbot.service.search.index.MetadataCodes;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pgvector.PGvector;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Tầng tài liệu cho retrieval 2 cấp:
+ * - khi ingest: mỗi docId có 1 vector embed từ "title + phần đầu nội dung" (lưu ở rag_documents)
+ * - khi search: chọn top tài liệu trước, sau đó chỉ tìm chunk trong các tài liệu đó
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DocumentIndexService implements DocumentIndexServiceImpl {
+    private static final Set<String> ALLOWED_META_KEYS = Set.of("project", "module", "env", "title", "path");
+
+    private final RagDocumentRepository ragDocumentRepo;
+    private final JdbcTemplate jdbcTemplate;
+    private final SearchConfig searchConfig;
+    private final ObjectMapper objectMapper;
+
+    @Override
+    public Map<String, String> documentTexts(List<ChunkMessage> chunks) {
+        int headChars = Math.max(200, searchConfig.getHierarchicalHeadChars());
+        Map<String, List<ChunkMessage>> byDoc = chunks.stream()
+                .collect(Collectors.groupingBy(ChunkMessage::getDocId, LinkedHashMap::new, Collectors.toList()));
+
+        Map<String, String> out = new LinkedHashMap<>();
+        byDoc.forEach((docId, list) -> {
+            list.sort(Comparator.comparingLong(ChunkMessage::getChunkId));
+            StringBuilder sb = new StringBuilder();
+            String title = MetadataCodes.readKeys(objectMapper, list.getFirst().getMetadata()).get("title");
+            if (title != null && !title.isBlank()) sb.append(title).append('\n');
+            // phần đầu tài liệu: nối các chunk đầu tới khi đủ headChars
+            for (ChunkMessage c : list) {
+                if (sb.length() >= headChars) break;
+                sb.append(c.getContent()).append('\n');
+            }
+            out.put(docId, sb.length() > headChars ? sb.substring(0, headChars) : sb.toString());
+        });
+        return out;
+    }
+
+    @Override
+    public void saveDocuments(Map<String, String> texts, Map<String, PGvector> vectors, List<ChunkMessage> chunks) {
+        if (texts.isEmpty()) return;
+        Map<String, ChunkMessage> firstChunk = new HashMap<>();
+        for (ChunkMessage c : chunks) {
+            firstChunk.merge(c.getDocId(), c, (a, b) -> b.getChunkId() < a.getChunkId() ? b : a);
+        }
+
+        // upsert theo docId
+        Map<String, DocumentMessage> existing = ragDocumentRepo.findByDocIdIn(texts.keySet()).stream()
+                .collect(Collectors.toMap(DocumentMessage::getDocId, Function.identity()));
+        List<DocumentMessage> toSave = new ArrayList<>(texts.size());
+        texts.forEach((docId, text) -> {
+            ChunkMessage head = firstChunk.get(docId);
+            DocumentMessage d = existing.getOrDefault(docId, new DocumentMessage());
+            d.setDocId(docId);
+            d.setTitle(MetadataCodes.readKeys(objectMapper, head.getMetadata()).get("title"));
+            d.setSummary(text);
+            d.setEmbedding(vectors.get(docId));
+            d.setMetadata(head.getMetadata());
+            d.setUpdatedAt(LocalDateTime.now());
+            toSave.add(d);
+        });
+        ragDocumentRepo.saveAll(toSave);
+    }
+
+    @Override
+    public List<String> topDocuments(PGvector qvec, int n, Map<String, String> filters) {
+        StringBuilder sql = new StringBuilder("SELECT doc_id FROM rag_documents WHERE 1=1\n");
+        List<Object> args = new ArrayList<>();
+        if (filters != null) {
+            for (var e : new TreeMap<>(filters).entrySet()) {
+                if (!ALLOWED_META_KEYS.contains(e.getKey()) || e.getValue() == null) continue;
+                sql.append(" AND (metadata->>'").append(e.getKey()).append("') = ?\n");
+                args.add(e.getValue());
+            }
+        }
+        sql.append(" ORDER BY embedding <=> ?\n LIMIT ?");
+        args.add(qvec);
+        args.add(n);
+        try {
+            return jdbcTemplate.queryForList(sql.toString(), String.class, args.toArray());
+        } catch (Exception e) {
+            log.warn("Không tìm được tài liệu (rag_documents chưa sẵn sàng?): {}", e.getMessage());
+            return List.of();
+        }
+    }
+}
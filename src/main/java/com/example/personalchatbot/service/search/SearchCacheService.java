@@ -0,0 +1,133 @@
+package com.example.personalchatbot.service.search;
+
+import com.example.personalchatbot.config.SearchConfig;
+import com.example.personalchatbot.dto.SearchHitDto;
+import com.example.personalchatbot.entity.ChunkMessage;
+import com.example.personalchatbot.event.ChunksIngestedEvent;
+import com.example.personalchatbot.service.implement.SearchCacheServiceImpl;
+import com.example.personalchatbot.service.search.index.MetadataCodes;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Cache kết quả search trước SearchService: bỏ qua cả embed lẫn vector search cho câu hỏi lặp lại.
+ * - Key = (query chuẩn hoá, k, filters đã sắp xếp, withEmbeddings, generation)
+ * - Giới hạn theo dung lượng ước tính (byte) + TTL
+ * - Invalidate bằng generation: ingest vào project P tăng gen(P) và gen toàn cục,
+ *   entry cũ không còn được tra tới và tự hết hạn
+ */
+@Service
+public class SearchCacheService implements SearchCacheServiceImpl {
+    private final SearchConfig searchConfig;
+    private final ObjectMapper objectMapper;
+    private final Cache<Key, List<SearchHitDto>> cache;
+    private final Map<String, AtomicLong> projectGenerations = new ConcurrentHashMap<>();
+    private final AtomicLong globalGeneration = new AtomicLong();
+
+    public SearchCacheService(SearchConfig searchConfig, ObjectMapper objectMapper) {
+        this.searchConfig = searchConfig;
+        this.objectMapper = objectMapper;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(searchConfig.getCacheMaxBytes())
+                .weigher((Key k, List<SearchHitDto> v) -> estimateBytes(k, v))
+                .expireAfterWrite(Duration.ofSeconds(searchConfig.getCacheTtlSeconds()))
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public List<SearchHitDto> getOrLoad(String query, int k, Map<String, String> filters, boolean withEmbeddings,
+                                        Supplier<List<SearchHitDto>> loader) {
+        if (!searchConfig.isCacheEnabled()) return loader.get();
+
+        Map<String, String> f = new TreeMap<>();
+        if (filters != null) filters.forEach((key, v) -> { if (v != null) f.put(key, v); });
+        String project = f.get("project");
+        // chunk không có project không thể khớp filter project -> chỉ cần gen của project đó
+        long gen = project != null ? generationOf(project).get() : globalGeneration.get();
+
+        Key key = new Key(normalize(query), k, f, withEmbeddings, gen);
+        List<SearchHitDto> hits = cache.getIfPresent(key);
+        if (hits == null) {
+            // không dùng cache.get(key, loader): loader gọi HTTP + SQL, không nên giữ lock của map trong lúc chờ
+            hits = List.copyOf(loader.get());
+            cache.put(key, hits);
+        }
+        // trả bản sao để caller sửa hit không làm bẩn cache
+        return hits.stream().map(h -> h.toBuilder().build()).toList();
+    }
+
+    @EventListener
+    public void onChunksIngested(ChunksIngestedEvent event) {
+        Set<String> projects = new HashSet<>();
+        for (ChunkMessage c : event.getChunks()) {
+            String p = MetadataCodes.readKeys(objectMapper, c.getMetadata()).get("project");
+            if (p != null) projects.add(p);
+        }
+        projects.forEach(p -> generationOf(p).incrementAndGet());
+        globalGeneration.incrementAndGet();
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        CacheStats s = cache.stats();
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("enabled", searchConfig.isCacheEnabled());
+        out.put("hitRatio", s.hitRate());
+        out.put("hits", s.hitCount());
+        out.put("misses", s.missCount());
+        out.put("evictions", s.evictionCount());
+        out.put("entries", cache.estimatedSize());
+        out.put("estimatedBytes", cache.policy().eviction()
+                .map(e -> e.weightedSize().orElse(0L)).orElse(0L));
+        out.put("maxBytes", searchConfig.getCacheMaxBytes());
+        return out;
+    }
+
+    private AtomicLong generationOf(String project) {
+        return projectGenerations.computeIfAbsent(project, p -> new AtomicLong());
+    }
+
+    /** Chuẩn hoá query: NFC, lowercase, gộp khoảng trắng (giữ dấu tiếng Việt vì dấu đổi nghĩa) */
+    public static String normalize(String q) {
+        if (q == null) return "";
+        String s = Normalizer.normalize(q, Normalizer.Form.NFC).toLowerCase(Locale.ROOT).trim();
+        return s.replaceAll("\\s+", " ");
+    }
+
+    // Ước lượng byte trên heap: String ~2 byte/ký tự, embedding 4 byte/chiều, + overhead object
+    private static int estimateBytes(Key k, List<SearchHitDto> hits) {
+        long bytes = 64 + 2L * k.getQuery().length();
+        for (SearchHitDto h : hits) {
+            bytes += 96;
+            bytes += 2L * (len(h.getContent()) + len(h.getMetadataJson()) + len(h.getDocId()));
+            if (h.getEmbedding() != null) bytes += 16 + 4L * h.getEmbedding().length;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, bytes);
+    }
+
+    private static int len(String s) {
+        return s == null ? 0 : s.length();
+    }
+
+    @Value
+    static class Key {
+        String query;
+        int k;
+        Map<String, String> filters;
+        boolean withEmbeddings;
+        long generation;
+    }
+}
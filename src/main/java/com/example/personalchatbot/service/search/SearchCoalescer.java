@@ -0,0 +1,183 @@
+package com.example.personalchatbot.service.search;
+
+import com.example.personalchatbot.dto.SearchHitDto;
+import com.pgvector.PGvector;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gộp các truy vấn vector đến trong cùng 1 cửa sổ ngắn thành 1 câu SQL (unnest + LATERAL).
+ * - Chỉ gộp các truy vấn cùng "hình dạng": k, filters, withEmbeddings
+ * - Số câu SQL chạy đồng thời bị giới hạn bởi số sender -> giảm áp lực lên connection pool
+ * - close(): chờ các nhóm đang chạy xong (có giới hạn), truy vấn nào còn dở đều kết thúc bằng lỗi
+ */
+@Slf4j
+final class SearchCoalescer implements AutoCloseable {
+    private static final long CLOSE_TIMEOUT_MS = 5_000;
+
+    /** Thực thi 1 nhóm truy vấn cùng hình dạng, trả kết quả theo đúng thứ tự vectors */
+    interface BatchExecutor {
+        List<List<SearchHitDto>> execute(List<PGvector> vectors, int k, Map<String, String> filters, boolean withEmbeddings);
+    }
+
+    private static final class Pending {
+        final PGvector vector;
+        final int k;
+        final Map<String, String> filters;
+        final boolean withEmbeddings;
+        final CompletableFuture<List<SearchHitDto>> future = new CompletableFuture<>();
+
+        Pending(PGvector vector, int k, Map<String, String> filters, boolean withEmbeddings) {
+            this.vector = vector;
+            this.k = k;
+            this.filters = filters == null ? Map.of() : new TreeMap<>(filters);
+            this.withEmbeddings = withEmbeddings;
+        }
+
+        List<Object> shape() {
+            return List.of(k, filters, withEmbeddings);
+        }
+    }
+
+    private final BatchExecutor executor;
+    private final long windowNanos;
+    private final int maxQueries;
+    private final long closeTimeoutMs;
+    private final LinkedBlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Set<Pending> inFlight = ConcurrentHashMap.newKeySet(); // đã submit, chưa có kết quả
+    private final ExecutorService senders;
+    private final Thread dispatcher;
+    private volatile boolean running = true;
+
+    SearchCoalescer(BatchExecutor executor, long windowMs, int maxQueries, int senderThreads) {
+        this(executor, windowMs, maxQueries, senderThreads, CLOSE_TIMEOUT_MS);
+    }
+
+    SearchCoalescer(BatchExecutor executor, long windowMs, int maxQueries, int senderThreads, long closeTimeoutMs) {
+        this.executor = executor;
+        this.closeTimeoutMs = closeTimeoutMs;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+        this.maxQueries = Math.max(1, maxQueries);
+        this.senders = Executors.newFixedThreadPool(Math.max(1, senderThreads), r -> {
+            Thread t = new Thread(r, "search-coalesce-sender");
+            t.setDaemon(true);
+            return t;
+        });
+        this.dispatcher = Thread.ofPlatform().daemon().name("search-coalesce-dispatcher").start(this::loop);
+    }
+
+    CompletableFuture<List<SearchHitDto>> submit(PGvector vector, int k, Map<String, String> filters, boolean withEmbeddings) {
+        Pending p = new Pending(vector, k, filters, withEmbeddings);
+        if (!running) {
+            p.future.completeExceptionally(closed());
+            return p.future;
+        }
+        inFlight.add(p);
+        p.future.whenComplete((v, e) -> inFlight.remove(p));
+        queue.add(p);
+        // close() chạy xen giữa lúc kiểm tra và lúc add -> không ai lấy truy vấn này nữa
+        if (!running) p.future.completeExceptionally(closed());
+        return p.future;
+    }
+
+    private void loop() {
+        while (running) {
+            List<Pending> window = null;
+            try {
+                Pending first = queue.take();
+                window = new ArrayList<>();
+                window.add(first);
+
+                // gom thêm cho tới hết cửa sổ thời gian hoặc đủ maxQueries
+                long deadline = System.nanoTime() + windowNanos;
+                while (window.size() < maxQueries) {
+                    long remain = deadline - System.nanoTime();
+                    if (remain <= 0) {
+                        queue.drainTo(window, maxQueries - window.size());
+                        break;
+                    }
+                    Pending p = queue.poll(remain, TimeUnit.NANOSECONDS);
+                    if (p == null) break;
+                    window.add(p);
+                }
+
+                // tách theo hình dạng, mỗi nhóm = 1 câu SQL
+                Map<List<Object>, List<Pending>> groups = new LinkedHashMap<>();
+                for (Pending p : window) groups.computeIfAbsent(p.shape(), x -> new ArrayList<>()).add(p);
+                for (List<Pending> group : groups.values()) {
+                    try {
+                        senders.execute(() -> flush(group));
+                    } catch (RejectedExecutionException e) {
+                        // pool gửi đã shutdown (close) -> nhóm không bao giờ chạy
+                        fail(group, closed());
+                    }
+                }
+            } catch (InterruptedException e) {
+                // close() khi đang gom -> cửa sổ dở không được gửi
+                fail(window, closed());
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("Search coalescer dispatch lỗi: ", e);
+                fail(window, e);
+            }
+        }
+    }
+
+    private void flush(List<Pending> group) {
+        Pending head = group.getFirst();
+        try {
+            List<List<SearchHitDto>> results = executor.execute(
+                    group.stream().map(p -> p.vector).toList(), head.k, head.filters, head.withEmbeddings);
+            for (int i = 0; i < group.size(); i++) {
+                group.get(i).future.complete(Objects.requireNonNullElse(results.get(i), List.of()));
+            }
+            if (log.isDebugEnabled() && group.size() > 1) {
+                log.debug("Search coalesced: {} truy vấn -> 1 SQL", group.size());
+            }
+        } catch (Exception e) {
+            fail(group, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        dispatcher.interrupt();
+        senders.shutdown();
+        try {
+            dispatcher.join(closeTimeoutMs);
+            // nhóm đang chạy SQL: chờ kết quả thay vì bỏ dở
+            if (!senders.awaitTermination(closeTimeoutMs, TimeUnit.MILLISECONDS)) senders.shutdownNow();
+        } catch (InterruptedException e) {
+            senders.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        // còn trong queue hoặc nhóm chưa xong sau timeout -> kết thúc bằng lỗi, không để caller chờ mãi
+        queue.clear();
+        fail(new ArrayList<>(inFlight), closed());
+    }
+
+    private static void fail(List<Pending> group, Throwable e) {
+        if (group == null) return;
+        for (Pending p : group) p.future.completeExceptionally(e);
+    }
+
+    private static IllegalStateException closed() {
+        return new IllegalStateException("Search coalescer is closed");
+    }
+}
@@ -0,0 +1,171 @@
+package com.example.personalchatbot.service.search;
+
+import com.example.personalchatbot.config.SearchConfig;
+import com.example.personalchatbot.dto.SearchPlanDto;
+import com.example.personalchatbot.entity.ChunkMessage;
+import com.example.personalchatbot.event.ChunksDeletedEvent;
+import com.example.personalchatbot.event.ChunksIngestedEvent;
+import com.example.personalchatbot.service.implement.SearchPlannerServiceImpl;
+import com.example.personalchatbot.service.search.index.MetadataCodes;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Planner cho vector search có filter, dựa trên bộ đếm số chunk theo từng giá trị project/module/env:
+ * - ước lượng số dòng khớp = N * tích(count(key=v) / N) (giả định các cột độc lập)
+ * - tập con nhỏ -> EXACT: quét chính xác tập đã lọc (đúng 100%, nhanh vì ít dòng)
+ * - filter lỏng -> ANN thường (lọc sau vẫn đủ k)
+ * - filter chặt trên tập lớn -> ITERATIVE nếu pgvector hỗ trợ, ngược lại OVERSAMPLE (ef_search/LIMIT dư theo 1/selectivity)
+ * Bộ đếm nạp 1 lần khi khởi động, cập nhật tăng dần khi ingest/xoá chunk.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SearchPlannerService implements SearchPlannerServiceImpl {
+    private static final List<String> COUNTED_KEYS = List.of("project", "module", "env");
+    private static final double UNKNOWN_KEY_SELECTIVITY = 0.05; // title/path: không đếm, coi là khá chặt
+    private static final double OVERSAMPLE_SAFETY = 1.5;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SearchConfig searchConfig;
+    private final ObjectMapper objectMapper;
+
+    private final Map<String, Map<String, Long>> counts = new ConcurrentHashMap<>();
+    private final AtomicLong total = new AtomicLong();
+    private volatile boolean ready = false;
+    private volatile boolean iterativeScan = false;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void init() {
+        if (!searchConfig.isPlannerEnabled()) return;
+        Thread.ofPlatform().daemon().name("search-planner-stats").start(() -> {
+            try {
+                // hnsw.iterative_scan có từ pgvector 0.8.0
+                String version = jdbcTemplate.query(
+                        "SELECT extversion FROM pg_extension WHERE extname = 'vector'",
+                        rs -> rs.next() ? rs.getString(1) : null);
+                boolean iterative = atLeast(version, 0, 8);
+
+                jdbcTemplate.query("""
+                        SELECT 'project' AS k, metadata->>'project' AS v, count(*) FROM rag_chunks GROUP BY 2
+                        UNION ALL
+                        SELECT 'module', metadata->>'module', count(*) FROM rag_chunks GROUP BY 2
+                        UNION ALL
+                        SELECT 'env', metadata->>'env', count(*) FROM rag_chunks GROUP BY 2
+                        """, rs -> {
+                    addCount(rs.getString(1), rs.getString(2), rs.getLong(3));
+                });
+                markReady(iterative);
+                log.info("Search planner: {} chunk, pgvector {}, iterative scan={}", total.get(), version, iterativeScan);
+            } catch (Exception e) {
+                log.warn("Không nạp được thống kê cho search planner, dùng ANN mặc định: {}", e.getMessage());
+            }
+        });
+    }
+
+    // 1 dòng thống kê (key, value, count); dòng project tính luôn vào tổng
+    void addCount(String key, String value, long n) {
+        if ("project".equals(key)) total.addAndGet(n); // mọi dòng đều thuộc đúng 1 nhóm project (kể cả null)
+        if (value != null) counts.computeIfAbsent(key, x -> new ConcurrentHashMap<>()).merge(value, n, Long::sum);
+    }
+
+    void markReady(boolean iterative) {
+        iterativeScan = iterative;
+        ready = true;
+    }
+
+    @EventListener
+    public void onChunksIngested(ChunksIngestedEvent event) {
+        if (ready) adjust(event.getChunks(), 1);
+    }
+
+    @TransactionalEventListener
+    public void onChunksDeleted(ChunksDeletedEvent event) {
+        if (ready) adjust(event.getChunks(), -1);
+    }
+
+    // delta = +1 khi ingest, -1 khi xoá; giá trị về 0 thì bỏ khỏi map
+    void adjust(List<ChunkMessage> chunks, long delta) {
+        for (ChunkMessage c : chunks) {
+            Map<String, String> meta = MetadataCodes.readKeys(objectMapper, c.getMetadata());
+            for (String key : COUNTED_KEYS) {
+                String v = meta.get(key);
+                if (v != null) counts.computeIfAbsent(key, x -> new ConcurrentHashMap<>())
+                        .merge(v, delta, (a, b) -> a + b > 0 ? a + b : null);
+            }
+            total.addAndGet(delta);
+        }
+    }
+
+    @Override
+    public SearchPlanDto plan(Map<String, String> filters, int k, boolean partitioned) {
+        long n = total.get();
+        if (!ready || filters == null || filters.isEmpty() || n == 0) return SearchPlanDto.ann();
+
+        // partition: ANN index chỉ chứa dòng của project -> selectivity tính trên project
+        String project = filters.get("project");
+        long base = partitioned && project != null ? count("project", project) : n;
+        double est = n;
+        for (var e : filters.entrySet()) {
+            if (partitioned && "project".equals(e.getKey())) {
+                est *= (double) base / n;
+            } else if (COUNTED_KEYS.contains(e.getKey())) {
+                est *= (double) count(e.getKey(), e.getValue()) / n;
+            } else {
+                est *= UNKNOWN_KEY_SELECTIVITY;
+            }
+        }
+        long estimated = (long) Math.ceil(est);
+        double selectivity = base == 0 ? 0.0 : Math.min(1.0, est / base);
+
+        SearchPlanDto.SearchPlanDtoBuilder plan = SearchPlanDto.builder()
+                .baseRows(base)
+                .estimatedRows(estimated)
+                .selectivity(selectivity);
+
+        if (estimated <= searchConfig.getPlannerExactMaxRows()) {
+            return plan.strategy(SearchPlanDto.EXACT).build();
+        }
+        if (selectivity >= searchConfig.getPlannerAnnMinSelectivity()) {
+            return plan.strategy(SearchPlanDto.ANN).build();
+        }
+        int maxEf = searchConfig.getPlannerMaxEfSearch();
+        if (iterativeScan) {
+            return plan.strategy(SearchPlanDto.ITERATIVE).efSearch(Math.min(maxEf, Math.max(40, k * 2))).build();
+        }
+        int candidates = (int) Math.min(maxEf, Math.ceil(k / selectivity * OVERSAMPLE_SAFETY));
+        return plan.strategy(SearchPlanDto.OVERSAMPLE)
+                .candidateK(Math.max(k, candidates))
+                .efSearch(Math.max(k, candidates))
+                .build();
+    }
+
+    private long count(String key, String value) {
+        Map<String, Long> byValue = counts.get(key);
+        return byValue == null ? 0 : byValue.getOrDefault(value, 0L);
+    }
+
+    // "0.8.0" >= major.minor
+    private static boolean atLeast(String version, int major, int minor) {
+        if (version == null) return false;
+        try {
+            String[] p = version.split("\\.");
+            int ma = Integer.parseInt(p[0]);
+            int mi = p.length > 1 ? Integer.parseInt(p[1]) : 0;
+            return ma > major || (ma == major && mi >= minor);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+}
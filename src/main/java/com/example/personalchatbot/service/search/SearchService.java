@@ -1,23 +1,46 @@
 package com.example.personalchatbot.service.search;
 
+import com.example.personalchatbot.config.ErrorConfig;
+import com.example.personalchatbot.config.SearchConfig;
 import com.example.personalchatbot.dto.SearchHitDto;
+import com.example.personalchatbot.dto.SearchPlanDto;
+import com.example.personalchatbot.dto.VectorHitDto;
+import com.example.personalchatbot.exception.AppException;
+import com.example.personalchatbot.repository.RagChunkSearchRepository;
 import com.example.personalchatbot.service.embedding.EmbeddingService;
 import com.example.personalchatbot.service.implement.SearchServiceImpl;
+import com.example.personalchatbot.service.implement.VectorIndexServiceImpl;
+import com.example.personalchatbot.service.search.partition.PartitionIndexService;
 import com.pgvector.PGvector;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import jakarta.persistence.Query;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.postgresql.util.PGobject;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.stereotype.Service;
 
+import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class SearchService implements SearchServiceImpl {
 
     private final EmbeddingService embeddingService;
+    private final ObjectProvider<VectorIndexServiceImpl> vectorIndex; // chỉ có khi search.backend != pgvector
+    private final PartitionIndexService partitionIndexService;
+    private final SearchCacheService searchCacheService;
+    private final SearchConfig searchConfig;
+    private final RagChunkSearchRepository ragChunkSearchRepo;
+    private final SearchPlannerService searchPlannerService;
+    private final DocumentIndexService documentIndexService;
 
     @PersistenceContext
     private EntityManager entityManager;
@@ -26,34 +49,305 @@ public class SearchService implements SearchServiceImpl {
             "project", "module", "env", "title", "path"
     );
 
+    // gộp các truy vấn pgvector đồng thời thành 1 câu SQL (null = tắt)
+    private SearchCoalescer coalescer;
+
+    @PostConstruct
+    void initCoalescer() {
+        if (searchConfig.getCoalesceWindowMs() <= 0) return;
+        coalescer = new SearchCoalescer(
+                (vecs, k, filters, withEmbeddings) -> vecs.size() == 1
+                        ? List.of(searchPgvector(vecs.getFirst(), k, filters, withEmbeddings))
+                        : searchPgvectorBatch(vecs, k, filters, withEmbeddings),
+                searchConfig.getCoalesceWindowMs(),
+                searchConfig.getCoalesceMaxQueries(),
+                searchConfig.getCoalesceSenders());
+    }
+
+    @PreDestroy
+    void closeCoalescer() {
+        if (coalescer != null) coalescer.close();
+    }
+
+    @Override
+    public List<SearchHitDto> search(String query, int k, Map<String, String> filters, boolean withEmbeddings) {
+        final int topK = k <= 0 ? 10 : k;
+        // 0) Cache theo (query chuẩn hoá, k, filters): hit thì bỏ qua cả embed lẫn vector search
+        return searchCacheService.getOrLoad(query, topK, filters, withEmbeddings,
+                () -> searchByVector(embeddingService.embed(query), topK, filters, withEmbeddings));
+    }
+
+    @Override
+    public List<SearchHitDto> search(String query, Supplier<PGvector> qvec, int k, Map<String, String> filters,
+                                     boolean withEmbeddings) {
+        final int topK = k <= 0 ? 10 : k;
+        return searchCacheService.getOrLoad(query, topK, filters, withEmbeddings,
+                () -> searchByVector(qvec.get(), topK, filters, withEmbeddings));
+    }
+
+    @Override
+    public List<List<SearchHitDto>> searchBatch(List<String> queries, int k, Map<String, String> filters,
+                                                boolean withEmbeddings) {
+        if (queries == null || queries.isEmpty()) return List.of();
+        // 1 lần embedAll cho cả batch (EmbeddingService tự chia theo embedding.batch-size)
+        return searchByVectors(embeddingService.embedAll(queries), k, filters, withEmbeddings);
+    }
+
+    @Override
+    public List<List<SearchHitDto>> searchByVectors(List<PGvector> qvecs, int k, Map<String, String> filters,
+                                                    boolean withEmbeddings) {
+        if (qvecs == null || qvecs.isEmpty()) return List.of();
+        final int topK = k <= 0 ? 10 : k;
+
+        // Index trong JVM: xếp hạng tại chỗ từng query, hydrate tất cả trong 1 câu SQL
+        VectorIndexServiceImpl index = vectorIndex.getIfAvailable();
+        if (index != null && index.isReady()) {
+            List<List<VectorHitDto>> ranked = new ArrayList<>(qvecs.size());
+            for (PGvector v : qvecs) ranked.add(index.search(v.toArray(), topK, filters));
+            return hydrateAll(ranked, withEmbeddings);
+        }
+        return searchPgvectorBatch(qvecs, topK, filters, withEmbeddings);
+    }
+
+    private List<List<SearchHitDto>> searchPgvectorBatch(List<PGvector> qvecs, int topK, Map<String, String> filters,
+                                                         boolean withEmbeddings) {
+        // pgvector: 1 round trip, mỗi vector query là 1 dòng của unnest,
+        // LATERAL chạy kNN riêng cho từng dòng (vẫn dùng được ANN index)
+        StringBuilder inner = new StringBuilder("""
+                SELECT id, doc_id, chunk_id, content, metadata,
+                       (embedding <=> q.vec) AS distance, token_count
+                """);
+        if (withEmbeddings) inner.append("     , embedding::text AS embedding_text\n");
+        inner.append(" FROM rag_chunks\n WHERE 1=1\n");
+
+        Map<String, Object> params = new HashMap<>();
+        appendFilters(inner, filters, params);
+        inner.append(" ORDER BY embedding <=> q.vec\n LIMIT :k");
+
+        String sql = """
+                SELECT q.ord, h.*
+                FROM unnest(CAST(:qs AS vector[])) WITH ORDINALITY AS q(vec, ord)
+                CROSS JOIN LATERAL (
+                %s
+                ) h
+                ORDER BY q.ord, h.distance
+                """.formatted(inner);
+
+        Query q = entityManager.createNativeQuery(sql);
+        q.setParameter("qs", toVectorArrayLiteral(qvecs)); // {"[...]","[...]"}
+        q.setParameter("k", topK);
+        for (var e : params.entrySet()) q.setParameter(e.getKey(), e.getValue());
+
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = q.getResultList();
+
+        // tách kết quả theo ord (1-based) về đúng query
+        List<List<SearchHitDto>> out = new ArrayList<>(qvecs.size());
+        for (int i = 0; i < qvecs.size(); i++) out.add(new ArrayList<>(topK));
+        for (Object[] r : rows) {
+            int ord = ((Number) r[0]).intValue();
+            out.get(ord - 1).add(mapRow(r, 1, withEmbeddings));
+        }
+        return out;
+    }
+
+    @Override
+    public List<SearchHitDto> searchRelaxed(String query, int k, Map<String, String> filters, boolean withEmbeddings) {
+        final int topK = k <= 0 ? 10 : k;
+        List<Map<String, String>> tiers = relaxationTiers(filters);
+        if (tiers.size() == 1) {
+            // không có filter để nới -> search thường (cache trả bản sao nên gán tier được)
+            List<SearchHitDto> hits = search(query, topK, filters, withEmbeddings);
+            hits.forEach(h -> h.setTier(0));
+            return hits;
+        }
+        return searchRelaxed(embeddingService.embed(query), topK, filters, withEmbeddings);
+    }
+
     @Override
-    public List<SearchHitDto> search(String query, int k, Map<String, String> filters) {
-        if (k <= 0) k = 10;
+    public List<SearchHitDto> searchRelaxed(PGvector qvec, int k, Map<String, String> filters, boolean withEmbeddings) {
+        final int topK = k <= 0 ? 10 : k;
+        List<Map<String, String>> tiers = relaxationTiers(filters);
+        if (tiers.size() == 1) {
+            List<SearchHitDto> hits = searchByVector(qvec, topK, filters, withEmbeddings);
+            hits.forEach(h -> h.setTier(0));
+            return hits;
+        }
+
+        // Index trong JVM: search từng tier tại chỗ, gộp rồi hydrate 1 lần
+        VectorIndexServiceImpl index = vectorIndex.getIfAvailable();
+        if (index != null && index.isReady()) {
+            float[] v = qvec.toArray();
+            List<VectorHitDto> merged = new ArrayList<>(topK);
+            List<Integer> mergedTier = new ArrayList<>(topK);
+            Set<UUID> seen = new HashSet<>();
+            for (int t = 0; t < tiers.size() && merged.size() < topK; t++) {
+                for (VectorHitDto h : index.search(v, topK, tiers.get(t))) {
+                    if (merged.size() >= topK) break;
+                    if (!seen.add(h.getId())) continue;
+                    merged.add(h);
+                    mergedTier.add(tierLevel(tiers, t));
+                }
+            }
+            List<SearchHitDto> hits = hydrateAll(List.of(merged), withEmbeddings).getFirst();
+            Map<UUID, Integer> tierById = new HashMap<>();
+            for (int i = 0; i < merged.size(); i++) tierById.put(merged.get(i).getId(), mergedTier.get(i));
+            for (SearchHitDto h : hits) h.setTier(tierById.get(h.getId()));
+            return hits;
+        }
+
+        // pgvector: mỗi tier là 1 kNN con (vẫn dùng ANN index), UNION ALL trong 1 round trip,
+        // DISTINCT ON giữ tier tốt nhất của mỗi chunk, rồi xếp theo (tier, distance)
+        Map<String, Object> params = new HashMap<>();
+        params.put("q", qvec.toString());
+        params.put("k", topK);
+        StringBuilder union = new StringBuilder();
+        for (int t = 0; t < tiers.size(); t++) {
+            if (t > 0) union.append(" UNION ALL\n");
+            union.append("(SELECT ").append(tierLevel(tiers, t)).append(" AS tier, id, doc_id, chunk_id, content, metadata,\n")
+                 .append("        (embedding <=> CAST(:q AS vector)) AS distance, token_count");
+            if (withEmbeddings) union.append(", embedding::text AS embedding_text");
+            union.append("\n FROM rag_chunks\n WHERE 1=1\n");
+            appendFilters(union, tiers.get(t), params);
+            union.append(" ORDER BY embedding <=> CAST(:q AS vector)\n LIMIT :k)");
+        }
+        String sql = """
+                SELECT * FROM (
+                  SELECT DISTINCT ON (id) * FROM (
+                %s
+                  ) u
+                  ORDER BY id, tier
+                ) d
+                ORDER BY tier, distance
+                LIMIT :k
+                """.formatted(union);
+
+        Query q = entityManager.createNativeQuery(sql);
+        for (var e : params.entrySet()) q.setParameter(e.getKey(), e.getValue());
+
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = q.getResultList();
+
+        List<SearchHitDto> hits = new ArrayList<>(rows.size());
+        for (Object[] r : rows) {
+            SearchHitDto h = mapRow(r, 1, withEmbeddings);
+            h.setTier(((Number) r[0]).intValue());
+            hits.add(h);
+        }
+        return hits;
+    }
 
-        // 1) Embed query -> PGvector
-        PGvector qvec = embeddingService.embed(query);
+    @Override
+    public List<SearchHitDto> searchHierarchical(String query, int k, Map<String, String> filters, boolean withEmbeddings) {
+        final int topK = k <= 0 ? 10 : k;
+        if (!searchConfig.isHierarchicalEnabled()) return search(query, topK, filters, withEmbeddings);
+        // 1 lần embed dùng cho cả 2 bước
+        return searchHierarchical(embeddingService.embed(query), topK, filters, withEmbeddings);
+    }
+
+    @Override
+    public List<SearchHitDto> searchHierarchical(PGvector qvec, int k, Map<String, String> filters, boolean withEmbeddings) {
+        final int topK = k <= 0 ? 10 : k;
+        if (!searchConfig.isHierarchicalEnabled()) return searchByVector(qvec, topK, filters, withEmbeddings);
+
+        List<String> docIds = documentIndexService.topDocuments(qvec, searchConfig.getHierarchicalTopDocs(), filters);
+        if (docIds.isEmpty()) {
+            return searchByVector(qvec, topK, filters, withEmbeddings);
+        }
+        // filter mức tài liệu lấy từ chunk đầu -> bước 2 vẫn áp filter cho từng chunk (module/env/path)
+        SortedMap<String, String> chunkFilters = new TreeMap<>();
+        if (filters != null) {
+            for (var e : filters.entrySet()) {
+                if (ALLOWED_META_KEYS.contains(e.getKey()) && e.getValue() != null) chunkFilters.put(e.getKey(), e.getValue());
+            }
+        }
+        List<SearchHitDto> hits = ragChunkSearchRepo.searchWithinDocuments(qvec, topK, docIds, chunkFilters, withEmbeddings);
+        log.debug("Hierarchical search: {} tài liệu -> {} chunk", docIds.size(), hits.size());
+        return hits;
+    }
+
+    // Các mức filter từ chặt tới lỏng, bỏ mức trùng: đủ filter -> chỉ project -> không filter
+    private static List<Map<String, String>> relaxationTiers(Map<String, String> filters) {
+        Map<String, String> full = new TreeMap<>();
+        if (filters != null) {
+            for (var e : filters.entrySet()) {
+                if (ALLOWED_META_KEYS.contains(e.getKey()) && e.getValue() != null) full.put(e.getKey(), e.getValue());
+            }
+        }
+        List<Map<String, String>> tiers = new ArrayList<>(3);
+        tiers.add(full);
+        if (full.isEmpty()) return tiers;
+        if (full.containsKey("project") && full.size() > 1) tiers.add(Map.of("project", full.get("project")));
+        tiers.add(Map.of());
+        return tiers;
+    }
+
+    // tier báo ra ngoài theo ý nghĩa cố định (0 đủ filter, 1 chỉ project, 2 không filter), không theo vị trí
+    private static int tierLevel(List<Map<String, String>> tiers, int t) {
+        Map<String, String> f = tiers.get(t);
+        if (t == 0) return 0;
+        return f.isEmpty() ? 2 : 1;
+    }
+
+    // 1 vector đã embed: index trong JVM / coalescer / pgvector (planner, partition)
+    private List<SearchHitDto> searchByVector(PGvector qvec, int k, Map<String, String> filters, boolean withEmbeddings) {
+        // 1b) Có index trong JVM đã sẵn sàng -> xếp hạng tại chỗ, Postgres chỉ hydrate content
+        VectorIndexServiceImpl index = vectorIndex.getIfAvailable();
+        if (index != null && index.isReady()) {
+            return hydrateAll(List.of(index.search(qvec.toArray(), k, filters)), withEmbeddings).getFirst();
+        }
+
+        // 1c) Coalescer bật -> chờ ghép chung câu SQL với các truy vấn đồng thời khác
+        if (coalescer != null) {
+            try {
+                return coalescer.submit(qvec, k, filters, withEmbeddings).join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException re) throw re;
+                throw new AppException(ErrorConfig.INTERNAL_SERVER_ERROR, String.valueOf(e.getCause()));
+            }
+        }
+        return searchPgvector(qvec, k, filters, withEmbeddings);
+    }
+
+    private List<SearchHitDto> searchPgvector(PGvector qvec, int k, Map<String, String> filters, boolean withEmbeddings) {
+        // JDBC thuần: bind PGvector trực tiếp, SQL cache theo hình dạng filter
+        if (searchConfig.isJdbcFastPath()) {
+            SortedMap<String, String> bound = new TreeMap<>();
+            String inlineProject = null;
+            if (filters != null) {
+                for (var e : filters.entrySet()) {
+                    if (!ALLOWED_META_KEYS.contains(e.getKey()) || e.getValue() == null) continue;
+                    if ("project".equals(e.getKey()) && partitionIndexService.hasPartition(e.getValue())) {
+                        inlineProject = PartitionIndexService.quote(e.getValue());
+                    } else {
+                        bound.put(e.getKey(), e.getValue());
+                    }
+                }
+            }
+            // planner chọn ANN / iterative / oversample / exact theo độ chọn lọc ước lượng của filter
+            Map<String, String> all = new TreeMap<>(bound);
+            if (inlineProject != null) all.put("project", filters.get("project"));
+            SearchPlanDto plan = searchPlannerService.plan(all, k, inlineProject != null);
+            if (!all.isEmpty()) {
+                log.info("Search plan: strategy={}, est={}/{}, selectivity={}, ef={}, candidateK={}, filters={}",
+                        plan.getStrategy(), plan.getEstimatedRows(), plan.getBaseRows(),
+                        String.format("%.4f", plan.getSelectivity()), plan.getEfSearch(), plan.getCandidateK(), all.keySet());
+            }
+            return ragChunkSearchRepo.search(qvec, k, bound, inlineProject, withEmbeddings, plan);
+        }
 
         // 2) Chuẩn bị SQL (native) với cosine distance
         StringBuilder sql = new StringBuilder("""
             SELECT id, doc_id, chunk_id, content, metadata,
-                   (embedding <=> CAST(:q AS vector)) AS distance
-            FROM rag_chunks
-            WHERE 1=1
+                   (embedding <=> CAST(:q AS vector)) AS distance, token_count
             """);
+        if (withEmbeddings) sql.append("     , embedding::text AS embedding_text\n");
+        sql.append(" FROM rag_chunks\n WHERE 1=1\n");
 
         // 3) Thêm filter metadata động (metadata->>'key' = :meta_key)
         Map<String, Object> params = new HashMap<>();
         params.put("q", qvec.toString()); // dùng chuỗi "[...]" + CAST(:q AS vector)
-
-        if (filters != null) {
-            for (var e : filters.entrySet()) {
-                String key = e.getKey();
-                if (!ALLOWED_META_KEYS.contains(key)) continue; // bỏ qua key không whitelisted
-                String paramName = "meta_" + key;
-                sql.append(" AND (metadata->>'").append(key).append("') = :").append(paramName).append("\n");
-                params.put(paramName, e.getValue());
-            }
-        }
+        appendFilters(sql, filters, params);
 
         // 4) Order theo distance ASC (gần nhất trước)
         sql.append(" ORDER BY distance ASC");
@@ -70,19 +364,103 @@ public class SearchService implements SearchServiceImpl {
         List<Object[]> rows = q.getResultList();
 
         List<SearchHitDto> hits = new ArrayList<>(rows.size());
-        for (Object[] r : rows) {
-            // cột theo SELECT: id, doc_id, chunk_id, content, metadata, distance
-            java.util.UUID id = (java.util.UUID) r[0];
-            String docId = Objects.toString(r[1], null);
-            long chunkId = ((Number) r[2]).longValue();
-            String content = Objects.toString(r[3], null);
-            String metadataJson = toJsonString(r[4]);
-            double distance = ((Number) r[5]).doubleValue();
-            double similarity = 1.0 - distance; // cosine similarity ~ 1 - distance
+        for (Object[] r : rows) hits.add(mapRow(r, 0, withEmbeddings));
+        return hits;
+    }
 
-            hits.add(new SearchHitDto(id, docId, chunkId, content, metadataJson, distance, similarity));
+    // Thêm điều kiện metadata->>'key' cho từng filter whitelisted
+    private void appendFilters(StringBuilder sql, Map<String, String> filters, Map<String, Object> params) {
+        if (filters == null) return;
+        for (var e : filters.entrySet()) {
+            String key = e.getKey();
+            if (!ALLOWED_META_KEYS.contains(key)) continue; // bỏ qua key không whitelisted
+            if ("project".equals(key) && partitionIndexService.hasPartition(e.getValue())) {
+                // project có partial index riêng -> dùng literal để planner khớp predicate của index
+                sql.append(" AND (metadata->>'project') = ").append(PartitionIndexService.quote(e.getValue())).append("\n");
+                continue;
+            }
+            String paramName = "meta_" + key;
+            sql.append(" AND (metadata->>'").append(key).append("') = :").append(paramName).append("\n");
+            params.put(paramName, e.getValue());
+        }
+    }
+
+    // cột tính từ offset: id, doc_id, chunk_id, content, metadata, distance, token_count[, embedding_text]
+    private static SearchHitDto mapRow(Object[] r, int offset, boolean withEmbeddings) {
+        double distance = ((Number) r[offset + 5]).doubleValue();
+        return SearchHitDto.builder()
+                .id((UUID) r[offset])
+                .docId(Objects.toString(r[offset + 1], null))
+                .chunkId(((Number) r[offset + 2]).longValue())
+                .content(Objects.toString(r[offset + 3], null))
+                .metadataJson(toJsonString(r[offset + 4]))
+                .distance(distance)
+                .similarity(1.0 - distance) // cosine similarity ~ 1 - distance
+                .tokenCount(r[offset + 6] == null ? null : ((Number) r[offset + 6]).intValue())
+                .embedding(withEmbeddings ? toFloatArray(r[offset + 7]) : null)
+                .build();
+    }
+
+    // Lấy content/metadata theo id (1 câu SQL cho mọi danh sách), giữ nguyên thứ tự và distance do index trả về
+    private List<List<SearchHitDto>> hydrateAll(List<List<VectorHitDto>> rankedLists, boolean withEmbeddings) {
+        Set<UUID> ids = new HashSet<>();
+        for (List<VectorHitDto> ranked : rankedLists) {
+            for (VectorHitDto v : ranked) ids.add(v.getId());
+        }
+
+        Map<UUID, Object[]> byId = new HashMap<>(ids.size() * 2);
+        if (!ids.isEmpty()) {
+            Query q = entityManager.createNativeQuery(withEmbeddings
+                    ? "SELECT id, doc_id, chunk_id, content, metadata, token_count, embedding::text FROM rag_chunks WHERE id IN (:ids)"
+                    : "SELECT id, doc_id, chunk_id, content, metadata, token_count FROM rag_chunks WHERE id IN (:ids)");
+            q.setParameter("ids", ids);
+
+            @SuppressWarnings("unchecked")
+            List<Object[]> rows = q.getResultList();
+            for (Object[] r : rows) byId.put((UUID) r[0], r);
+        }
+
+        List<List<SearchHitDto>> out = new ArrayList<>(rankedLists.size());
+        for (List<VectorHitDto> ranked : rankedLists) {
+            List<SearchHitDto> hits = new ArrayList<>(ranked.size());
+            for (VectorHitDto v : ranked) {
+                Object[] r = byId.get(v.getId());
+                if (r == null) continue; // đã bị xoá khỏi DB nhưng index chưa biết
+                hits.add(SearchHitDto.builder()
+                        .id(v.getId())
+                        .docId(Objects.toString(r[1], null))
+                        .chunkId(((Number) r[2]).longValue())
+                        .content(Objects.toString(r[3], null))
+                        .metadataJson(toJsonString(r[4]))
+                        .distance(v.getDistance())
+                        .similarity(1.0 - v.getDistance())
+                        .tokenCount(r[5] == null ? null : ((Number) r[5]).intValue())
+                        .embedding(withEmbeddings ? toFloatArray(r[6]) : null)
+                        .build());
+            }
+            out.add(hits);
+        }
+        return out;
+    }
+
+    // Mảng vector dạng text của Postgres: {"[0.1,0.2]","[0.3,0.4]"} -> CAST(... AS vector[])
+    private static String toVectorArrayLiteral(List<PGvector> vecs) {
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < vecs.size(); i++) {
+            if (i > 0) sb.append(',');
+            sb.append('"').append(vecs.get(i).toString()).append('"');
+        }
+        return sb.append('}').toString();
+    }
+
+    // embedding::text dạng "[0.1,0.2,...]" -> float[]
+    private static float[] toFloatArray(Object o) {
+        if (o == null) return null;
+        try {
+            return new PGvector(Objects.toString(o)).toArray();
+        } catch (SQLException e) {
+            throw new AppException(ErrorConfig.INTERNAL_SERVER_ERROR, e.getMessage());
         }
-        return hits;
     }
 
     // Trả về JSON dưới dạng String, dù driver có thể trả PGobject(jsonb) hoặc String
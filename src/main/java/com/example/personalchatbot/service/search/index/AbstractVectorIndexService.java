@@ -0,0 +1,95 @@
+package com.example.personalchatbot.service.search.index;
+
+import com.example.personalchatbot.dto.VectorHitDto;
+import com.example.personalchatbot.entity.ChunkMessage;
+import com.example.personalchatbot.event.ChunksDeletedEvent;
+import com.example.personalchatbot.event.ChunksIngestedEvent;
+import com.example.personalchatbot.repository.RagChunkVectorRepository;
+import com.example.personalchatbot.service.implement.VectorIndexServiceImpl;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Phần chung của các bản sao vector trong JVM:
+ * - Warm-load từ rag_chunks khi app sẵn sàng (thread nền, trong lúc nạp SearchService vẫn dùng pgvector)
+ * - Đồng bộ khi ingest qua {@link ChunksIngestedEvent}, khi xoá qua {@link ChunksDeletedEvent}
+ * - Mã hoá filter metadata bằng {@link MetadataCodes}
+ */
+@Slf4j
+public abstract class AbstractVectorIndexService implements VectorIndexServiceImpl {
+    protected final MetadataCodes codes = new MetadataCodes();
+    private final RagChunkVectorRepository vectorRepo;
+    private final ObjectMapper objectMapper;
+    private volatile boolean ready;
+
+    protected AbstractVectorIndexService(RagChunkVectorRepository vectorRepo, ObjectMapper objectMapper) {
+        this.vectorRepo = vectorRepo;
+        this.objectMapper = objectMapper;
+    }
+
+    /** Ghi 1 vector (thêm mới hoặc thay bản cũ cùng id) */
+    protected abstract void put(UUID id, float[] vector, int[] metaCodes);
+
+    /** Xoá 1 vector (bỏ qua nếu không có) */
+    protected abstract void delete(UUID id);
+
+    /** Top-k theo cosine distance; wanted = null khi không lọc */
+    protected abstract List<VectorHitDto> query(float[] query, int k, int[] wanted);
+
+    protected abstract int size();
+
+    protected abstract String name();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmLoad() {
+        Thread.ofPlatform().daemon().name(name() + "-warm-load").start(() -> {
+            long t0 = System.currentTimeMillis();
+            try {
+                vectorRepo.forEachVector(row -> put(row.getId(), row.getEmbedding(), codes.encode(row.getMetadata())));
+                ready = true;
+                log.info("{} warm-load xong: {} vector trong {} ms", name(), size(), System.currentTimeMillis() - t0);
+            } catch (Exception e) {
+                log.error("{} warm-load lỗi, tiếp tục dùng pgvector: ", name(), e);
+            }
+        });
+    }
+
+    @EventListener
+    public void onChunksIngested(ChunksIngestedEvent event) {
+        upsert(event.getChunks());
+    }
+
+    @TransactionalEventListener
+    public void onChunksDeleted(ChunksDeletedEvent event) {
+        for (ChunkMessage c : event.getChunks()) delete(c.getId());
+    }
+
+    @Override
+    public boolean isReady() {
+        return ready;
+    }
+
+    @Override
+    public List<VectorHitDto> search(float[] query, int k, Map<String, String> filters) {
+        int[] wanted = codes.encodeFilters(filters);
+        if (wanted == null) return List.of(); // giá trị filter chưa từng xuất hiện -> rỗng như SQL
+        boolean anyFilter = false;
+        for (int w : wanted) anyFilter |= w != MetadataCodes.ANY;
+        return query(query, k, anyFilter ? wanted : null);
+    }
+
+    @Override
+    public void upsert(List<ChunkMessage> chunks) {
+        for (ChunkMessage c : chunks) {
+            if (c.getId() == null || c.getEmbedding() == null) continue;
+            put(c.getId(), c.getEmbedding().toArray(), codes.encode(MetadataCodes.readKeys(objectMapper, c.getMetadata())));
+        }
+    }
+}
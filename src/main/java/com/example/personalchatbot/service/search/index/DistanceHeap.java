@@ -0,0 +1,110 @@
+package com.example.personalchatbot.service.search.index;
+
+import java.util.Arrays;
+
+/**
+ * Binary heap trên mảng nguyên thuỷ (float distance + int node), không boxing.
+ * - maxHeap=true: đỉnh là phần tử XA nhất -> dùng giữ top-k gần nhất
+ * - maxHeap=false: đỉnh là phần tử GẦN nhất -> dùng làm hàng đợi ứng viên
+ */
+final class DistanceHeap {
+    private final boolean maxHeap;
+    private float[] dist;
+    private int[] node;
+    private int size;
+
+    DistanceHeap(int capacity, boolean maxHeap) {
+        int cap = Math.max(4, capacity);
+        this.maxHeap = maxHeap;
+        this.dist = new float[cap];
+        this.node = new int[cap];
+    }
+
+    int size() { return size; }
+
+    boolean isEmpty() { return size == 0; }
+
+    int peekNode() { return node[0]; }
+
+    float peekDist() { return dist[0]; }
+
+    void push(int n, float d) {
+        if (size == dist.length) {
+            dist = Arrays.copyOf(dist, size * 2);
+            node = Arrays.copyOf(node, size * 2);
+        }
+        int i = size++;
+        // sift-up
+        while (i > 0) {
+            int p = (i - 1) >>> 1;
+            if (!before(d, dist[p])) break;
+            dist[i] = dist[p];
+            node[i] = node[p];
+            i = p;
+        }
+        dist[i] = d;
+        node[i] = n;
+    }
+
+    /** Bỏ phần tử đỉnh và trả về node của nó */
+    int pop() {
+        int top = node[0];
+        size--;
+        if (size > 0) {
+            float d = dist[size];
+            int n = node[size];
+            int i = 0;
+            // sift-down
+            while (true) {
+                int c = 2 * i + 1;
+                if (c >= size) break;
+                if (c + 1 < size && before(dist[c + 1], dist[c])) c++;
+                if (!before(dist[c], d)) break;
+                dist[i] = dist[c];
+                node[i] = node[c];
+                i = c;
+            }
+            dist[i] = d;
+            node[i] = n;
+        }
+        return top;
+    }
+
+    /** Giữ tối đa k phần tử gần nhất (chỉ dùng với maxHeap) */
+    boolean offer(int n, float d, int k) {
+        if (size < k) {
+            push(n, d);
+            return true;
+        }
+        if (d < dist[0]) {
+            pop();
+            push(n, d);
+            return true;
+        }
+        return false;
+    }
+
+    /** Xuất node theo distance tăng dần (heap rỗng sau khi gọi) */
+    int[] drainAscending(float[] distOut) {
+        int n = size;
+        int[] nodes = new int[n];
+        float[] ds = new float[n];
+        for (int i = n - 1; i >= 0; i--) {
+            ds[i] = dist[0];
+            nodes[i] = pop();
+        }
+        if (!maxHeap) {
+            // min-heap pop ra tăng dần -> đảo lại
+            for (int i = 0, j = n - 1; i < j; i++, j--) {
+                int tn = nodes[i]; nodes[i] = nodes[j]; nodes[j] = tn;
+                float td = ds[i]; ds[i] = ds[j]; ds[j] = td;
+            }
+        }
+        if (distOut != null) System.arraycopy(ds, 0, distOut, 0, Math.min(n, distOut.length));
+        return nodes;
+    }
+
+    private boolean before(float a, float b) {
+        return maxHeap ? a > b : a < b;
+    }
+}
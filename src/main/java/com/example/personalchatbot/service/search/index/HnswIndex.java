@@ -0,0 +1,340 @@
+package com.example.personalchatbot.service.search.index;
+
+import com.example.personalchatbot.dto.VectorHitDto;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * HNSW (Hierarchical Navigable Small World) trong JVM cho cosine distance.
+ * - Vector đã chuẩn hoá L2 lưu liền mạch trong các page float[] (không có object per-node)
+ * - Một writer tại một thời điểm (lock); reader KHÔNG BAO GIỜ lock:
+ *   danh sách láng giềng được thay copy-on-write qua AtomicReferenceArray,
+ *   dữ liệu node được ghi xong trước khi node được publish vào graph
+ * - Pre-filter metadata (mã int từ {@link MetadataCodes}) và xoá mềm (tombstone)
+ */
+public final class HnswIndex {
+    private static final int PAGE_BITS = 10;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS; // 1024 node / page
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final int[] NO_LINKS = new int[0];
+
+    private final int dim;
+    private final int m;              // số láng giềng tối đa ở layer > 0
+    private final int m0;             // số láng giềng tối đa ở layer 0
+    private final int efConstruction;
+    private final double levelMult;
+    private final int metaWidth;
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final Map<UUID, Integer> nodeById = new ConcurrentHashMap<>();
+    private volatile Page[] pages = new Page[0];
+    private volatile int size;        // số node đã publish
+    private volatile long entry = -1; // (level << 32) | node, -1 = index rỗng
+    private volatile int live;        // số node chưa bị xoá
+
+    public HnswIndex(int dim, int m, int efConstruction, int metaWidth) {
+        this.dim = dim;
+        this.m = Math.max(4, m);
+        this.m0 = this.m * 2;
+        this.efConstruction = Math.max(this.m, efConstruction);
+        this.levelMult = 1.0 / Math.log(this.m);
+        this.metaWidth = metaWidth;
+    }
+
+    public int size() { return live; }
+
+    public int dim() { return dim; }
+
+    // ================= Writer =================
+
+    /** Thêm mới hoặc thay thế vector của id (bản cũ bị xoá mềm) */
+    public void upsert(UUID id, float[] vector, int[] metaCodes) {
+        if (vector.length != dim) {
+            throw new IllegalArgumentException("Vector dim mismatch: " + vector.length + " != " + dim);
+        }
+        writeLock.lock();
+        try {
+            Integer old = nodeById.get(id);
+            if (old != null) tombstone(old);
+
+            int node = size;
+            Page page = pageFor(node);
+            int slot = node & PAGE_MASK;
+
+            // 1) ghi dữ liệu node (chưa ai nhìn thấy node này)
+            float[] v = VectorKernels.normalizedCopy(vector);
+            System.arraycopy(v, 0, page.vectors, slot * dim, dim);
+            if (metaCodes != null) System.arraycopy(metaCodes, 0, page.meta, slot * metaWidth, metaWidth);
+            page.idHi[slot] = id.getMostSignificantBits();
+            page.idLo[slot] = id.getLeastSignificantBits();
+
+            int level = randomLevel();
+            int[][] own = new int[level + 1][];
+            Arrays.fill(own, NO_LINKS);
+            page.links.set(slot, own);
+
+            long ep = entry;
+            if (ep == -1) {
+                publish(id, node);
+                entry = ((long) level << 32) | node;
+                return;
+            }
+
+            int cur = (int) ep;
+            int epLevel = (int) (ep >>> 32);
+            // 2) tham lam từ đỉnh xuống tới layer level+1
+            for (int l = epLevel; l > level; l--) cur = greedy(v, cur, l);
+
+            // 3) nối cạnh ở từng layer <= level
+            for (int l = Math.min(level, epLevel); l >= 0; l--) {
+                DistanceHeap found = searchLayer(v, cur, efConstruction, l, null, false, Integer.MAX_VALUE);
+                float[] ds = new float[found.size()];
+                int[] cands = found.drainAscending(ds);
+                if (cands.length == 0) continue;
+                int maxLinks = l == 0 ? m0 : m;
+                int[] selected = selectNeighbours(cands, ds, maxLinks);
+                setLinks(node, l, selected);
+                for (int n : selected) addBackLink(n, node, l, maxLinks);
+                cur = cands[0];
+            }
+
+            publish(id, node);
+            if (level > epLevel) entry = ((long) level << 32) | node;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public void remove(UUID id) {
+        writeLock.lock();
+        try {
+            Integer node = nodeById.remove(id);
+            if (node != null) tombstone(node);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void publish(UUID id, int node) {
+        nodeById.put(id, node);
+        live++;
+        size = node + 1;
+    }
+
+    private void tombstone(int node) {
+        Page p = pages[node >>> PAGE_BITS];
+        if (p.deleted.getAndSet(node & PAGE_MASK, 1) == 0) live--;
+    }
+
+    private Page pageFor(int node) {
+        int pi = node >>> PAGE_BITS;
+        Page[] ps = pages;
+        if (pi < ps.length) return ps[pi];
+        Page[] grown = Arrays.copyOf(ps, pi + 1);
+        grown[pi] = new Page(dim, metaWidth);
+        pages = grown;
+        return grown[pi];
+    }
+
+    private int randomLevel() {
+        double r = ThreadLocalRandom.current().nextDouble();
+        return (int) Math.min(16, Math.floor(-Math.log(1.0 - r) * levelMult));
+    }
+
+    /** Heuristic chọn láng giềng (HNSW paper, Alg.4): ưu tiên ứng viên đa hướng, bù thêm nếu thiếu */
+    private int[] selectNeighbours(int[] cands, float[] ds, int max) {
+        int[] out = new int[Math.min(max, cands.length)];
+        int n = 0;
+        boolean[] taken = new boolean[cands.length];
+        for (int i = 0; i < cands.length && n < out.length; i++) {
+            boolean good = true;
+            for (int j = 0; j < n; j++) {
+                if (distance(cands[i], out[j]) < ds[i]) { good = false; break; }
+            }
+            if (good) { out[n++] = cands[i]; taken[i] = true; }
+        }
+        for (int i = 0; i < cands.length && n < out.length; i++) {
+            if (!taken[i]) out[n++] = cands[i];
+        }
+        return out;
+    }
+
+    private void addBackLink(int from, int to, int level, int maxLinks) {
+        int[] cur = links(from, level);
+        int[] next;
+        if (cur.length < maxLinks) {
+            next = Arrays.copyOf(cur, cur.length + 1);
+            next[cur.length] = to;
+        } else {
+            // đầy -> chọn lại trong (láng giềng cũ + node mới) theo khoảng cách tới 'from'
+            DistanceHeap h = new DistanceHeap(cur.length + 1, false);
+            h.push(to, distance(from, to));
+            for (int x : cur) h.push(x, distance(from, x));
+            float[] ds = new float[h.size()];
+            int[] cands = h.drainAscending(ds);
+            next = selectNeighbours(cands, ds, maxLinks);
+        }
+        setLinks(from, level, next);
+    }
+
+    private void setLinks(int node, int level, int[] neighbours) {
+        Page p = pages[node >>> PAGE_BITS];
+        int slot = node & PAGE_MASK;
+        int[][] cur = p.links.get(slot);
+        if (level >= cur.length) return;
+        int[][] copy = cur.clone(); // copy-on-write: reader đang giữ mảng cũ vẫn an toàn
+        copy[level] = neighbours;
+        p.links.set(slot, copy);
+    }
+
+    // ================= Reader =================
+
+    /**
+     * Top-k theo cosine distance, chỉ trả node khớp filter.
+     * Khi filter quá chọn lọc (graph không gom đủ k kết quả hoặc phải đi quá xa) -> quét chính xác tập đã lọc.
+     */
+    public List<VectorHitDto> search(float[] query, int k, int ef, int[] filter) {
+        long ep = entry;
+        if (ep == -1 || k <= 0) return List.of();
+        float[] q = VectorKernels.normalizedCopy(query);
+
+        int cur = (int) ep;
+        for (int l = (int) (ep >>> 32); l > 0; l--) cur = greedy(q, cur, l);
+
+        int efs = Math.max(ef, k);
+        DistanceHeap found = searchLayer(q, cur, efs, 0, filter, true, filter == null ? Integer.MAX_VALUE : efs * 64);
+        if (found == null || (found.size() < k && filter != null)) {
+            found = exactScan(q, k, filter);
+        }
+        while (found.size() > k) found.pop();
+        return toHits(found);
+    }
+
+    /** Quét tuần tự chính xác trên các node khớp filter (dự phòng cho filter rất chọn lọc) */
+    private DistanceHeap exactScan(float[] q, int k, int[] filter) {
+        DistanceHeap top = new DistanceHeap(k + 1, true);
+        Page[] ps = pages;
+        int n = size;
+        for (int node = 0; node < n; node++) {
+            Page p = ps[node >>> PAGE_BITS];
+            int slot = node & PAGE_MASK;
+            if (p.deleted.get(slot) != 0) continue;
+            if (!MetadataCodes.matches(p.meta, slot * metaWidth, filter)) continue;
+            top.offer(node, 1f - VectorKernels.dot(q, 0, p.vectors, slot * dim, dim), k);
+        }
+        return top;
+    }
+
+    private int greedy(float[] q, int start, int level) {
+        int cur = start;
+        float best = distance(q, cur);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int n : links(cur, level)) {
+                float d = distance(q, n);
+                if (d < best) { best = d; cur = n; changed = true; }
+            }
+        }
+        return cur;
+    }
+
+    /**
+     * Beam search trong 1 layer.
+     * @param filter      null = không lọc; node không khớp vẫn được dùng để điều hướng
+     * @param skipDeleted true khi trả kết quả cho reader (writer vẫn cần node đã xoá để nối cạnh)
+     * @param maxVisits   giới hạn số node ghé thăm để filter chọn lọc không biến thành quét toàn bộ
+     * @return null nếu vượt maxVisits (caller chuyển sang quét chính xác)
+     */
+    private DistanceHeap searchLayer(float[] q, int start, int ef, int level, int[] filter,
+                                     boolean skipDeleted, int maxVisits) {
+        BitSet visited = new BitSet(size + 1);
+        DistanceHeap candidates = new DistanceHeap(ef * 2, false);
+        DistanceHeap results = new DistanceHeap(ef + 1, true);
+
+        float d0 = distance(q, start);
+        visited.set(start);
+        candidates.push(start, d0);
+        if (accept(start, filter, skipDeleted)) results.push(start, d0);
+
+        int visits = 1;
+        while (!candidates.isEmpty()) {
+            float cd = candidates.peekDist();
+            if (results.size() >= ef && cd > results.peekDist()) break;
+            int c = candidates.pop();
+            for (int n : links(c, level)) {
+                if (visited.get(n)) continue;
+                visited.set(n);
+                if (++visits > maxVisits) return null;
+                float d = distance(q, n);
+                if (results.size() < ef || d < results.peekDist()) {
+                    candidates.push(n, d);
+                    if (accept(n, filter, skipDeleted)) results.offer(n, d, ef);
+                }
+            }
+        }
+        return results;
+    }
+
+    private boolean accept(int node, int[] filter, boolean skipDeleted) {
+        Page p = pages[node >>> PAGE_BITS];
+        int slot = node & PAGE_MASK;
+        if (skipDeleted && p.deleted.get(slot) != 0) return false;
+        return MetadataCodes.matches(p.meta, slot * metaWidth, filter);
+    }
+
+    private List<VectorHitDto> toHits(DistanceHeap heap) {
+        float[] ds = new float[heap.size()];
+        int[] nodes = heap.drainAscending(ds);
+        Page[] ps = pages;
+        List<VectorHitDto> out = new ArrayList<>(nodes.length);
+        for (int i = 0; i < nodes.length; i++) {
+            Page p = ps[nodes[i] >>> PAGE_BITS];
+            int slot = nodes[i] & PAGE_MASK;
+            out.add(new VectorHitDto(new UUID(p.idHi[slot], p.idLo[slot]), ds[i]));
+        }
+        return out;
+    }
+
+    private int[] links(int node, int level) {
+        int[][] all = pages[node >>> PAGE_BITS].links.get(node & PAGE_MASK);
+        return all == null || level >= all.length ? NO_LINKS : all[level];
+    }
+
+    // ================= Distance =================
+
+    private float distance(float[] q, int node) {
+        Page p = pages[node >>> PAGE_BITS];
+        return 1f - VectorKernels.dot(q, 0, p.vectors, (node & PAGE_MASK) * dim, dim);
+    }
+
+    private float distance(int a, int b) {
+        Page pa = pages[a >>> PAGE_BITS];
+        Page pb = pages[b >>> PAGE_BITS];
+        return 1f - VectorKernels.dot(pa.vectors, (a & PAGE_MASK) * dim, pb.vectors, (b & PAGE_MASK) * dim, dim);
+    }
+
+    private static final class Page {
+        final float[] vectors;                     // PAGE_SIZE * dim, liền mạch
+        final int[] meta;                          // PAGE_SIZE * metaWidth
+        final long[] idHi = new long[PAGE_SIZE];
+        final long[] idLo = new long[PAGE_SIZE];
+        final AtomicReferenceArray<int[][]> links = new AtomicReferenceArray<>(PAGE_SIZE); // [level][neighbour]
+        final AtomicIntegerArray deleted = new AtomicIntegerArray(PAGE_SIZE);
+
+        Page(int dim, int metaWidth) {
+            this.vectors = new float[PAGE_SIZE * dim];
+            this.meta = new int[PAGE_SIZE * Math.max(1, metaWidth)];
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.personalchatbot.service.search.index;
+
+import com.example.personalchatbot.config.SearchConfig;
+import com.example.personalchatbot.dto.EmbeddingDto;
+import com.example.personalchatbot.dto.VectorHitDto;
+import com.example.personalchatbot.repository.RagChunkVectorRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bản sao HNSW của rag_chunks nằm trong JVM (search.backend=hnsw).
+ * - Mỗi project một graph riêng: truy vấn có filter project chỉ duyệt graph của tenant đó
+ * - Không có filter project -> duyệt mọi partition rồi gộp top-k
+ * Chỉ trả id + distance; content vẫn hydrate từ Postgres.
+ */
+@Service
+@ConditionalOnProperty(name = "search.backend", havingValue = "hnsw")
+public class HnswIndexService extends AbstractVectorIndexService {
+    private final SearchConfig searchConfig;
+    private final int dim;
+    private final Map<Integer, HnswIndex> partitions = new ConcurrentHashMap<>(); // mã project -> graph
+    private final Map<UUID, Integer> partitionOf = new ConcurrentHashMap<>();
+
+    public HnswIndexService(SearchConfig searchConfig,
+                            EmbeddingDto embeddingDto,
+                            RagChunkVectorRepository vectorRepo,
+                            ObjectMapper objectMapper) {
+        super(vectorRepo, objectMapper);
+        this.searchConfig = searchConfig;
+        this.dim = embeddingDto.getExpectedDim() != null ? embeddingDto.getExpectedDim() : 1536;
+    }
+
+    @Override
+    protected synchronized void put(UUID id, float[] vector, int[] metaCodes) {
+        int p = metaCodes == null ? MetadataCodes.NONE : metaCodes[MetadataCodes.PROJECT];
+        Integer prev = partitionOf.put(id, p);
+        if (prev != null && prev != p) partitions.get(prev).remove(id); // chunk đổi project
+        partitions.computeIfAbsent(p, x -> new HnswIndex(dim, searchConfig.getHnswM(),
+                        searchConfig.getHnswEfConstruction(), codes.width()))
+                .upsert(id, vector, metaCodes);
+    }
+
+    @Override
+    protected synchronized void delete(UUID id) {
+        Integer p = partitionOf.remove(id);
+        if (p != null) partitions.get(p).remove(id);
+    }
+
+    @Override
+    protected List<VectorHitDto> query(float[] query, int k, int[] wanted) {
+        int ef = searchConfig.getHnswEfSearch();
+        if (wanted != null && wanted[MetadataCodes.PROJECT] != MetadataCodes.ANY) {
+            HnswIndex idx = partitions.get(wanted[MetadataCodes.PROJECT]);
+            return idx == null ? List.of() : idx.search(query, k, ef, wanted);
+        }
+        // global: top-k từng partition rồi gộp
+        List<VectorHitDto> all = new ArrayList<>();
+        for (HnswIndex idx : partitions.values()) all.addAll(idx.search(query, k, ef, wanted));
+        all.sort(Comparator.comparingDouble(VectorHitDto::getDistance));
+        return all.size() > k ? List.copyOf(all.subList(0, k)) : all;
+    }
+
+    @Override
+    protected int size() {
+        return partitions.values().stream().mapToInt(HnswIndex::size).sum();
+    }
+
+    @Override
+    protected String name() {
+        return "hnsw";
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.personalchatbot.service.search.index;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Từ điển mã hoá giá trị metadata -> int để index trong JVM lọc bằng so sánh số nguyên.
+ * - Mã 0 = không có giá trị (null)
+ * - ANY (-1) trong filter = không lọc cột đó
+ */
+public final class MetadataCodes {
+    /** Cùng whitelist với SearchService, thứ tự cố định = thứ tự cột trong mảng mã */
+    public static final List<String> KEYS = List.of("project", "module", "env", "title", "path");
+    public static final int PROJECT = 0; // cột dùng để phân vùng index theo tenant
+    public static final int ANY = -1;
+    public static final int NONE = 0;
+
+    private final List<Map<String, Integer>> dictionaries = KEYS.stream()
+            .map(k -> (Map<String, Integer>) new ConcurrentHashMap<String, Integer>())
+            .toList();
+    private final List<AtomicInteger> nextCodes = KEYS.stream().map(k -> new AtomicInteger(1)).toList();
+
+    public int width() {
+        return KEYS.size();
+    }
+
+    /** Mã hoá metadata của 1 chunk (phía writer, cấp mã mới nếu gặp giá trị lạ) */
+    public int[] encode(Map<String, String> metadata) {
+        int[] out = new int[KEYS.size()];
+        for (int i = 0; i < KEYS.size(); i++) {
+            String v = metadata == null ? null : metadata.get(KEYS.get(i));
+            if (v == null) continue;
+            AtomicInteger next = nextCodes.get(i);
+            out[i] = dictionaries.get(i).computeIfAbsent(v, x -> next.getAndIncrement());
+        }
+        return out;
+    }
+
+    /**
+     * Mã hoá filter truy vấn (phía reader, không cấp mã mới).
+     * @return null nếu có giá trị chưa từng xuất hiện -> chắc chắn không có kết quả
+     */
+    public int[] encodeFilters(Map<String, String> filters) {
+        int[] out = new int[KEYS.size()];
+        for (int i = 0; i < KEYS.size(); i++) {
+            String v = filters == null ? null : filters.get(KEYS.get(i));
+            if (v == null) { out[i] = ANY; continue; }
+            Integer code = dictionaries.get(i).get(v);
+            if (code == null) return null;
+            out[i] = code;
+        }
+        return out;
+    }
+
+    /** Đọc các key lọc từ chuỗi JSON metadata (jsonb) */
+    public static Map<String, String> readKeys(ObjectMapper om, String json) {
+        Map<String, String> out = new HashMap<>();
+        if (json == null || json.isBlank()) return out;
+        try {
+            JsonNode root = om.readTree(json);
+            for (String key : KEYS) {
+                JsonNode n = root.get(key);
+                if (n != null && !n.isNull()) out.put(key, n.asText());
+            }
+        } catch (Exception ignore) {
+            // metadata hỏng -> coi như không có giá trị lọc
+        }
+        return out;
+    }
+
+    /** Kiểm tra một dòng mã (bắt đầu tại offset) có khớp filter không */
+    static boolean matches(int[] rowCodes, int offset, int[] wanted) {
+        if (wanted == null) return true;
+        for (int i = 0; i < wanted.length; i++) {
+            if (wanted[i] != ANY && rowCodes[offset + i] != wanted[i]) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.personalchatbot.service.search.index;
+
+import com.example.personalchatbot.config.ErrorConfig;
+import com.example.personalchatbot.config.SearchConfig;
+import com.example.personalchatbot.dto.EmbeddingDto;
+import com.example.personalchatbot.dto.VectorHitDto;
+import com.example.personalchatbot.exception.AppException;
+import com.example.personalchatbot.repository.RagChunkVectorRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Backend quét chính xác trên file memory-mapped (search.backend=mmap).
+ * Phù hợp tenant cỡ vừa (&lt;500k chunk): recall tuyệt đối, không cần build graph.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "search.backend", havingValue = "mmap")
+public class MmapVectorIndexService extends AbstractVectorIndexService {
+    private final MmapVectorStore store;
+
+    public MmapVectorIndexService(SearchConfig searchConfig,
+                                  EmbeddingDto embeddingDto,
+                                  RagChunkVectorRepository vectorRepo,
+                                  ObjectMapper objectMapper) throws IOException {
+        super(vectorRepo, objectMapper);
+        int dim = embeddingDto.getExpectedDim() != null ? embeddingDto.getExpectedDim() : 1536;
+        this.store = new MmapVectorStore(Path.of(searchConfig.getMmapPath()), dim, codes.width(),
+                searchConfig.getMmapParallelism());
+        log.info("mmap vector store: {} (SIMD={})", searchConfig.getMmapPath(), VectorKernels.SIMD);
+    }
+
+    @Override
+    protected void put(UUID id, float[] vector, int[] metaCodes) {
+        try {
+            store.upsert(id, vector, metaCodes);
+        } catch (IOException e) {
+            throw new AppException(ErrorConfig.INTERNAL_SERVER_ERROR, e.getMessage());
+        }
+    }
+
+    @Override
+    protected void delete(UUID id) {
+        store.remove(id);
+    }
+
+    @Override
+    protected List<VectorHitDto> query(float[] query, int k, int[] wanted) {
+        return store.search(query, k, wanted);
+    }
+
+    @Override
+    protected int size() {
+        return store.size();
+    }
+
+    @Override
+    protected String name() {
+        return "mmap";
+    }
+
+    @PreDestroy
+    void close() throws IOException {
+        store.close();
+    }
+}
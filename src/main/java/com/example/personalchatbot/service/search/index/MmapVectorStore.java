@@ -0,0 +1,256 @@
+package com.example.personalchatbot.service.search.index;
+
+import com.example.personalchatbot.dto.VectorHitDto;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Kho vector off-heap trên file memory-mapped, quét chính xác (exact recall).
+ * - Vector đã chuẩn hoá L2, float32 little-endian, xếp liền nhau theo dòng: row i ở [i*dim, (i+1)*dim)
+ * - File chia thành các segment map riêng (mỗi MappedByteBuffer < 2GB)
+ * - id/metadata mã hoá giữ trên heap dạng mảng nguyên thuỷ
+ * - Reader đọc snapshot volatile, không lock; writer duy nhất append rồi publish snapshot mới
+ * - Quét song song trên ForkJoinPool, mỗi task giữ top-k bằng {@link DistanceHeap}
+ * - Danh sách dòng theo project (posting): truy vấn có filter project chỉ quét dòng của tenant đó
+ * File chỉ là bộ nhớ off-heap: mỗi lần khởi động được dựng lại từ rag_chunks.
+ */
+public final class MmapVectorStore implements Closeable {
+    private static final long SEGMENT_BYTES = 1L << 30; // 1GB / segment
+    private static final int LEAF_ROWS = 4096;          // số dòng mỗi task lá
+
+    private final int dim;
+    private final int metaWidth;
+    private final int rowsPerSegment;
+    private final FileChannel channel;
+    private final ForkJoinPool pool;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final Map<UUID, Integer> rowById = new HashMap<>(); // chỉ writer truy cập
+    private final ThreadLocal<float[]> scratch;
+    private volatile Snapshot snap;
+
+    public MmapVectorStore(Path file, int dim, int metaWidth, int parallelism) throws IOException {
+        this.dim = dim;
+        this.metaWidth = Math.max(1, metaWidth);
+        this.rowsPerSegment = (int) (SEGMENT_BYTES / (4L * dim));
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        this.scratch = ThreadLocal.withInitial(() -> new float[dim]);
+        this.snap = new Snapshot(new FloatBuffer[0], new long[0], new long[0], new int[0], new boolean[0],
+                new int[0][], new int[0], 0, 0);
+    }
+
+    public int size() {
+        return snap.live;
+    }
+
+    // ================= Writer =================
+
+    public void upsert(UUID id, float[] vector, int[] metaCodes) throws IOException {
+        if (vector.length != dim) {
+            throw new IllegalArgumentException("Vector dim mismatch: " + vector.length + " != " + dim);
+        }
+        writeLock.lock();
+        try {
+            Snapshot s = snap;
+            int row = s.count;
+            FloatBuffer[] segments = ensureSegment(s.segments, row / rowsPerSegment);
+            segments[row / rowsPerSegment].put((row % rowsPerSegment) * dim, VectorKernels.normalizedCopy(vector));
+
+            // mảng sidecar: ghi tại chỗ nếu còn chỗ, hết chỗ thì nhân đôi (reader cũ vẫn giữ mảng cũ)
+            long[] hi = s.idHi, lo = s.idLo;
+            int[] meta = s.meta;
+            boolean[] deleted = s.deleted;
+            if (row == hi.length) {
+                int cap = Math.max(1024, hi.length * 2);
+                hi = Arrays.copyOf(hi, cap);
+                lo = Arrays.copyOf(lo, cap);
+                meta = Arrays.copyOf(meta, cap * metaWidth);
+                deleted = Arrays.copyOf(deleted, cap);
+            }
+            hi[row] = id.getMostSignificantBits();
+            lo[row] = id.getLeastSignificantBits();
+            if (metaCodes != null) System.arraycopy(metaCodes, 0, meta, row * metaWidth, metaCodes.length);
+
+            // posting của project: append tại chỗ, reader cũ chỉ đọc tới postingSizes của snapshot nó giữ
+            int p = metaCodes == null ? MetadataCodes.NONE : metaCodes[MetadataCodes.PROJECT];
+            int[][] postings = s.postings;
+            int[] postingSizes = s.postingSizes;
+            if (p >= postings.length) {
+                postings = Arrays.copyOf(postings, p + 1);
+                postingSizes = Arrays.copyOf(postingSizes, p + 1);
+            } else {
+                postingSizes = postingSizes.clone();
+            }
+            int[] posting = postings[p] == null ? new int[16] : postings[p];
+            if (postingSizes[p] == posting.length) {
+                posting = Arrays.copyOf(posting, posting.length * 2);
+            }
+            if (posting != postings[p]) {
+                postings = postings.clone();
+                postings[p] = posting;
+            }
+            posting[postingSizes[p]++] = row;
+
+            int live = s.live + 1;
+            Integer old = rowById.put(id, row);
+            if (old != null && !deleted[old]) {
+                deleted[old] = true;
+                live--;
+            }
+            snap = new Snapshot(segments, hi, lo, meta, deleted, postings, postingSizes, row + 1, live);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /** Xoá mềm dòng của id; vùng file không thu hồi (dựng lại khi khởi động) */
+    public void remove(UUID id) {
+        writeLock.lock();
+        try {
+            Integer row = rowById.remove(id);
+            Snapshot s = snap;
+            if (row == null || s.deleted[row]) return;
+            s.deleted[row] = true;
+            snap = new Snapshot(s.segments, s.idHi, s.idLo, s.meta, s.deleted, s.postings, s.postingSizes,
+                    s.count, s.live - 1);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private FloatBuffer[] ensureSegment(FloatBuffer[] segments, int index) throws IOException {
+        if (index < segments.length) return segments;
+        FloatBuffer[] grown = Arrays.copyOf(segments, index + 1);
+        long bytes = 4L * dim * rowsPerSegment;
+        // map READ_WRITE ngoài kích thước hiện tại sẽ tự nới file
+        MappedByteBuffer mbb = channel.map(FileChannel.MapMode.READ_WRITE, index * bytes, bytes);
+        grown[index] = mbb.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+        return grown;
+    }
+
+    // ================= Reader =================
+
+    /** Top-k chính xác theo cosine distance, chỉ xét dòng khớp filter */
+    public List<VectorHitDto> search(float[] query, int k, int[] filter) {
+        Snapshot s = snap;
+        if (s.count == 0 || k <= 0) return List.of();
+        float[] q = VectorKernels.normalizedCopy(query);
+
+        int[] rows = null; // null = quét mọi dòng
+        int n = s.count;
+        if (filter != null && filter[MetadataCodes.PROJECT] != MetadataCodes.ANY) {
+            int p = filter[MetadataCodes.PROJECT];
+            if (p >= s.postings.length || s.postings[p] == null) return List.of();
+            rows = s.postings[p];
+            n = s.postingSizes[p];
+        }
+        DistanceHeap top = pool.invoke(new ScanTask(s, q, k, filter, rows, 0, n));
+
+        float[] ds = new float[top.size()];
+        int[] best = top.drainAscending(ds);
+        List<VectorHitDto> out = new ArrayList<>(best.length);
+        for (int i = 0; i < best.length; i++) {
+            out.add(new VectorHitDto(new UUID(s.idHi[best[i]], s.idLo[best[i]]), ds[i]));
+        }
+        return out;
+    }
+
+    private final class ScanTask extends RecursiveTask<DistanceHeap> {
+        private final Snapshot s;
+        private final float[] q;
+        private final int k;
+        private final int[] filter;
+        private final int[] rows;   // null = vị trí chính là số dòng
+        private final int from, to; // khoảng vị trí (trong rows hoặc trong toàn bộ dòng)
+
+        ScanTask(Snapshot s, float[] q, int k, int[] filter, int[] rows, int from, int to) {
+            this.s = s;
+            this.q = q;
+            this.k = k;
+            this.filter = filter;
+            this.rows = rows;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected DistanceHeap compute() {
+            if (to - from <= LEAF_ROWS) return scan();
+            int mid = (from + to) >>> 1;
+            ScanTask left = new ScanTask(s, q, k, filter, rows, from, mid);
+            left.fork();
+            DistanceHeap right = new ScanTask(s, q, k, filter, rows, mid, to).compute();
+            DistanceHeap merged = left.join();
+            // gộp 2 heap top-k
+            while (!right.isEmpty()) {
+                float d = right.peekDist();
+                merged.offer(right.pop(), d, k);
+            }
+            return merged;
+        }
+
+        private DistanceHeap scan() {
+            DistanceHeap top = new DistanceHeap(k + 1, true);
+            float[] row = scratch.get();
+            for (int pos = from; pos < to; pos++) {
+                int r = rows == null ? pos : rows[pos];
+                if (s.deleted[r]) continue;
+                if (!MetadataCodes.matches(s.meta, r * metaWidth, filter)) continue; // pre-filter trước khi đọc vector
+                // bulk copy 1 dòng off-heap -> mảng scratch rồi dot bằng SIMD
+                s.segments[r / rowsPerSegment].get((r % rowsPerSegment) * dim, row, 0, dim);
+                top.offer(r, 1f - VectorKernels.dot(q, 0, row, 0, dim), k);
+            }
+            return top;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        pool.shutdown();
+        channel.close();
+    }
+
+    /** Trạng thái bất biến reader nhìn thấy; count = số dòng đã ghi xong */
+    private static final class Snapshot {
+        final FloatBuffer[] segments;
+        final long[] idHi, idLo;
+        final int[] meta;
+        final boolean[] deleted;
+        final int[][] postings;     // mã project -> các dòng thuộc project
+        final int[] postingSizes;
+        final int count;
+        final int live;
+
+        Snapshot(FloatBuffer[] segments, long[] idHi, long[] idLo, int[] meta, boolean[] deleted,
+                 int[][] postings, int[] postingSizes, int count, int live) {
+            this.segments = segments;
+            this.idHi = idHi;
+            this.idLo = idLo;
+            this.meta = meta;
+            this.deleted = deleted;
+            this.postings = postings;
+            this.postingSizes = postingSizes;
+            this.count = count;
+            this.live = live;
+        }
+    }
+}
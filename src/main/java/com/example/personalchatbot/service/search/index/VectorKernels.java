@@ -0,0 +1,41 @@
+package com.example.personalchatbot.service.search.index;
+
+/**
+ * Kernel tích vô hướng dùng chung cho các index vector trong JVM.
+ * Dùng SIMD (jdk.incubator.vector) khi JVM chạy với --add-modules jdk.incubator.vector,
+ * ngược lại fallback vòng lặp scalar (4 accumulator).
+ */
+public final class VectorKernels {
+    private VectorKernels() {}
+
+    public static final boolean SIMD = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    /** a[ao..ao+len) · b[bo..bo+len) */
+    public static float dot(float[] a, int ao, float[] b, int bo, int len) {
+        return SIMD ? SimdDot.dot(a, ao, b, bo, len) : scalarDot(a, ao, b, bo, len);
+    }
+
+    static float scalarDot(float[] a, int ao, float[] b, int bo, int len) {
+        float s0 = 0f, s1 = 0f, s2 = 0f, s3 = 0f;
+        int i = 0;
+        for (; i + 3 < len; i += 4) {
+            s0 += a[ao + i] * b[bo + i];
+            s1 += a[ao + i + 1] * b[bo + i + 1];
+            s2 += a[ao + i + 2] * b[bo + i + 2];
+            s3 += a[ao + i + 3] * b[bo + i + 3];
+        }
+        for (; i < len; i++) s0 += a[ao + i] * b[bo + i];
+        return s0 + s1 + s2 + s3;
+    }
+
+    /** Bản sao đã chuẩn hoá L2 (v/||v||) để cosine distance = 1 - dot */
+    public static float[] normalizedCopy(float[] v) {
+        float[] out = v.clone();
+        double sum = 0.0;
+        for (float x : out) sum += (double) x * x;
+        double norm = Math.sqrt(sum);
+        if (norm == 0.0) return out;
+        for (int i = 0; i < out.length; i++) out[i] = (float) (out[i] / norm);
+        return out;
+    }
+}
@@ -0,0 +1,183 @@
+package com.example.personalchatbot.service.search.partition;
+
+import com.example.personalchatbot.config.SearchConfig;
+import com.example.personalchatbot.entity.ChunkMessage;
+import com.example.personalchatbot.event.ChunksDeletedEvent;
+import com.example.personalchatbot.event.ChunksIngestedEvent;
+import com.example.personalchatbot.service.implement.PartitionIndexServiceImpl;
+import com.example.personalchatbot.service.search.index.MetadataCodes;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Phân vùng rag_chunks theo project bằng partial ANN index:
+ *   CREATE INDEX ... ON rag_chunks USING hnsw (embedding vector_cosine_ops) WHERE (metadata->>'project') = '<project>'
+ * - Project nhỏ (&lt; min-rows) chỉ dùng btree trên project + sắp xếp chính xác (nhanh vì tập nhỏ)
+ * - Project vượt ngưỡng được tạo index riêng (CONCURRENTLY, chạy nền) khi khởi động hoặc khi ingest
+ * - Index INVALID (CREATE INDEX CONCURRENTLY lỗi giữa chừng) bị xoá rồi tạo lại, không coi là đã có partition
+ * btree theo project do migration V4 tạo.
+ * Nhờ vậy truy vấn theo tenant chỉ phụ thuộc kích thước tenant, không phải toàn bộ corpus.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PartitionIndexService implements PartitionIndexServiceImpl {
+    private static final String INDEX_PREFIX = "rag_chunks_emb_p_";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SearchConfig searchConfig;
+    private final ObjectMapper objectMapper;
+
+    private final Map<String, Long> counts = new ConcurrentHashMap<>();
+    private final Set<String> partitions = ConcurrentHashMap.newKeySet();
+    private final Set<String> building = ConcurrentHashMap.newKeySet();
+    private final ExecutorService ddlExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "partition-index-ddl");
+        t.setDaemon(true);
+        return t;
+    });
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void init() {
+        if (!searchConfig.isPartitionEnabled()) return;
+        ddlExecutor.submit(() -> {
+            try {
+                // pg_indexes liệt kê cả index INVALID -> đọc indisvalid từ pg_index
+                Map<String, Boolean> existing = new HashMap<>();
+                jdbcTemplate.query("""
+                        SELECT c.relname, i.indisvalid
+                        FROM pg_index i
+                        JOIN pg_class c ON c.oid = i.indexrelid
+                        JOIN pg_class t ON t.oid = i.indrelid
+                        WHERE t.relname = 'rag_chunks' AND c.relname LIKE ?
+                        """, rs -> {
+                    existing.put(rs.getString(1), rs.getBoolean(2));
+                }, INDEX_PREFIX + "%");
+                existing.forEach((name, valid) -> {
+                    if (!valid) dropIndex(name);
+                });
+
+                jdbcTemplate.query("""
+                        SELECT metadata->>'project' AS project, count(*) AS n
+                        FROM rag_chunks
+                        WHERE metadata->>'project' IS NOT NULL
+                        GROUP BY 1
+                        """, rs -> {
+                    String project = rs.getString(1);
+                    counts.put(project, rs.getLong(2));
+                    if (Boolean.TRUE.equals(existing.get(indexName(project)))) partitions.add(project);
+                });
+                counts.keySet().forEach(this::maybeBuild);
+                log.info("Partition index: {} project, {} có ANN index riêng", counts.size(), partitions.size());
+            } catch (Exception e) {
+                log.warn("Không khởi tạo được partition index, dùng index toàn cục: {}", e.getMessage());
+            }
+        });
+    }
+
+    @EventListener
+    public void onChunksIngested(ChunksIngestedEvent event) {
+        if (!searchConfig.isPartitionEnabled()) return;
+        Map<String, Long> added = new HashMap<>();
+        for (ChunkMessage c : event.getChunks()) {
+            String project = MetadataCodes.readKeys(objectMapper, c.getMetadata()).get("project");
+            if (project != null) added.merge(project, 1L, Long::sum);
+        }
+        added.forEach((project, n) -> {
+            counts.merge(project, n, Long::sum);
+            ddlExecutor.submit(() -> maybeBuild(project));
+        });
+    }
+
+    @TransactionalEventListener
+    public void onChunksDeleted(ChunksDeletedEvent event) {
+        if (!searchConfig.isPartitionEnabled()) return;
+        for (ChunkMessage c : event.getChunks()) {
+            String project = MetadataCodes.readKeys(objectMapper, c.getMetadata()).get("project");
+            // partition index đã tạo thì giữ lại; chỉ trừ bộ đếm (về 0 thì bỏ)
+            if (project != null) counts.computeIfPresent(project, (p, n) -> n > 1 ? n - 1 : null);
+        }
+    }
+
+    @Override
+    public boolean hasPartition(String project) {
+        return project != null && partitions.contains(project);
+    }
+
+    @Override
+    public long rowCount(String project) {
+        return project == null ? 0 : counts.getOrDefault(project, 0L);
+    }
+
+    /** Literal SQL an toàn cho project (chỉ dùng với project đã biết, nháy đơn được nhân đôi) */
+    public static String quote(String value) {
+        return "'" + value.replace("'", "''") + "'";
+    }
+
+    private void maybeBuild(String project) {
+        if (partitions.contains(project) || rowCount(project) < searchConfig.getPartitionMinRows()) return;
+        if (!building.add(project)) return;
+        try {
+            long t0 = System.currentTimeMillis();
+            // CONCURRENTLY: không khoá ghi rag_chunks; không chạy được trong transaction nên dùng autocommit
+            jdbcTemplate.execute("CREATE INDEX CONCURRENTLY IF NOT EXISTS " + indexName(project)
+                    + " ON rag_chunks USING hnsw (embedding vector_cosine_ops)"
+                    + " WHERE (metadata->>'project') = " + quote(project));
+            if (!isValid(indexName(project))) {
+                // IF NOT EXISTS bỏ qua cả index INVALID còn sót -> xoá để lần sau tạo lại
+                dropIndex(indexName(project));
+                return;
+            }
+            partitions.add(project);
+            log.info("Tạo partition index cho project={} ({} chunk) trong {} ms",
+                    project, rowCount(project), System.currentTimeMillis() - t0);
+        } catch (Exception e) {
+            log.warn("Tạo partition index cho project={} lỗi: {}", project, e.getMessage());
+            // CIC lỗi để lại index INVALID
+            dropIndex(indexName(project));
+        } finally {
+            building.remove(project);
+        }
+    }
+
+    private boolean isValid(String indexName) {
+        Boolean valid = jdbcTemplate.query("""
+                SELECT i.indisvalid FROM pg_index i JOIN pg_class c ON c.oid = i.indexrelid WHERE c.relname = ?
+                """, rs -> rs.next() ? rs.getBoolean(1) : null, indexName);
+        return Boolean.TRUE.equals(valid);
+    }
+
+    private void dropIndex(String indexName) {
+        try {
+            jdbcTemplate.execute("DROP INDEX CONCURRENTLY IF EXISTS " + indexName);
+            log.info("Xoá partition index INVALID {}", indexName);
+        } catch (Exception e) {
+            log.warn("Không xoá được index {}: {}", indexName, e.getMessage());
+        }
+    }
+
+    private static String indexName(String project) {
+        try {
+            byte[] h = MessageDigest.getInstance("MD5").digest(project.getBytes(StandardCharsets.UTF_8));
+            return INDEX_PREFIX + HexFormat.of().formatHex(h, 0, 6);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package com.example.personalchatbot.service.session;
+
+import com.example.personalchatbot.config.SessionConfig;
+import com.example.personalchatbot.dto.ConversationDto;
+import com.example.personalchatbot.dto.ConversationTurnDto;
+import com.example.personalchatbot.entity.ConversationSession;
+import com.example.personalchatbot.repository.RagSessionRepository;
+import com.example.personalchatbot.service.implement.SessionServiceImpl;
+import com.example.personalchatbot.service.llm.LlmService;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.knuddels.jtokkit.api.Encoding;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SessionService implements SessionServiceImpl {
+    private final SessionConfig sessionConfig;
+    private final LlmService llm;
+    private final Encoding embeddingEncoding; // CL100K, cùng tokenizer với PromptService
+    private final ObjectMapper om;
+    private final ExecutorService ragExecutor;
+    private final RagSessionRepository ragSessionRepo;
+
+    // LRU theo số phiên + hết hạn khi không hoạt động; phiên bị bỏ vẫn còn trong DB nếu bật persist
+    private Cache<String, ConversationDto> sessions;
+
+    // phiên đang tóm tắt -> không chạy 2 lượt tóm tắt chồng nhau; delete() đánh dấu cả bản đang tóm tắt
+    private final Map<String, ConversationDto> folding = new ConcurrentHashMap<>();
+
+    // ghi DB nối đuôi theo từng phiên -> bản lưu sau không bị bản cũ hơn ghi đè
+    private final Map<String, CompletableFuture<Void>> writes = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    void initCache() {
+        sessions = Caffeine.newBuilder()
+                .maximumSize(sessionConfig.getMaxSessions())
+                .expireAfterAccess(Duration.ofMinutes(sessionConfig.getIdleMinutes()))
+                .build();
+    }
+
+    @Override
+    public ConversationDto get(String sessionId) {
+        return sessions.get(sessionId, this::load);
+    }
+
+    @Override
+    public boolean hasHistory(String sessionId) {
+        ConversationDto conv = sessions.getIfPresent(sessionId);
+        if (conv == null) {
+            // không persist -> phiên không có trong bộ nhớ là phiên mới
+            if (!sessionConfig.isPersist()) return false;
+            conv = get(sessionId);
+        }
+        synchronized (conv) {
+            return !conv.getTurns().isEmpty() || (conv.getSummary() != null && !conv.getSummary().isBlank());
+        }
+    }
+
+    @Override
+    public String condense(String sessionId, String question) {
+        if (!hasHistory(sessionId)) return question;
+        ConversationDto conv = get(sessionId);
+        String history = historyText(conv);
+        if (history.isEmpty()) return question;
+
+        String system = """
+              You rewrite a follow-up question from a conversation about internal technical documents (mostly Vietnamese)
+              into a standalone question that can be understood without the conversation.
+              - Resolve pronouns and references (it, that table, module đó...) using the conversation
+              - Keep project/module/table names exactly as written; keep the language of the question
+              - If the question is already standalone, return it unchanged
+              Reply with the standalone question only, no explanation.
+            """;
+        String user = history + "\n\nFollow-up question: " + question;
+
+        try {
+            String out = llm.generate(system, user);
+            if (out == null || out.isBlank()) return question;
+            return out.trim();
+        } catch (Exception e) {
+            // viết lại chỉ là tăng cường -> lỗi thì retrieve bằng câu hỏi gốc
+            log.warn("Condense câu hỏi lỗi, dùng câu hỏi gốc: {}", e.getMessage());
+            return question;
+        }
+    }
+
+    @Override
+    public void append(String sessionId, String question, String answer) {
+        ConversationDto conv = get(sessionId);
+        int total;
+        synchronized (conv) {
+            conv.getTurns().add(new ConversationTurnDto(question, answer, tokensOf(question) + tokensOf(answer)));
+            total = conv.getTurns().stream().mapToInt(ConversationTurnDto::getTokens).sum();
+        }
+
+        // vượt ngân sách -> gộp các lượt cũ vào tóm tắt, ngoài đường trả lời
+        if (total > sessionConfig.getHistoryMaxTokens()
+                && conv.getTurns().size() > sessionConfig.getKeepRecentTurns()
+                && folding.putIfAbsent(sessionId, conv) == null) {
+            ragExecutor.execute(() -> {
+                try {
+                    fold(conv);
+                } catch (Exception e) {
+                    // giữ nguyên lịch sử; lượt sau thử lại
+                    log.warn("Tóm tắt phiên {} lỗi: {}", sessionId, e.getMessage());
+                } finally {
+                    folding.remove(sessionId, conv);
+                    enqueueWrite(sessionId, () -> persist(conv));
+                }
+            });
+        } else {
+            enqueueWrite(sessionId, () -> persist(conv));
+        }
+    }
+
+    @Override
+    public void delete(String sessionId) {
+        // bản trong cache và bản đang tóm tắt (có thể đã bị cache bỏ) -> persist() sau đó bỏ qua
+        markDeleted(sessions.getIfPresent(sessionId));
+        markDeleted(folding.get(sessionId));
+        sessions.invalidate(sessionId);
+        // xếp sau các lần lưu đang chờ -> phiên đã xoá không bị ghi lại
+        enqueueWrite(sessionId, () -> {
+            try {
+                ragSessionRepo.deleteById(sessionId);
+            } catch (Exception e) {
+                log.warn("Không xoá được phiên {}: {}", sessionId, e.getMessage());
+            }
+        });
+    }
+
+    private static void markDeleted(ConversationDto conv) {
+        if (conv == null) return;
+        synchronized (conv) {
+            conv.setDeleted(true);
+        }
+    }
+
+    // Nối thao tác ghi vào sau thao tác ghi trước của cùng phiên (chạy nền, phiên khác vẫn song song)
+    private void enqueueWrite(String sessionId, Runnable write) {
+        if (!sessionConfig.isPersist()) return;
+        CompletableFuture<Void> next = writes.compute(sessionId, (k, prev) -> prev == null
+                ? CompletableFuture.runAsync(write, ragExecutor)
+                : prev.exceptionally(e -> null).thenRunAsync(write, ragExecutor));
+        next.whenComplete((v, e) -> writes.remove(sessionId, next));
+    }
+
+    // Tóm tắt cũ + các lượt cũ -> tóm tắt mới; chỉ giữ keepRecentTurns lượt cuối nguyên văn
+    private void fold(ConversationDto conv) {
+        String previous;
+        List<ConversationTurnDto> older;
+        synchronized (conv) {
+            int n = conv.getTurns().size() - sessionConfig.getKeepRecentTurns();
+            if (n <= 0 || conv.isDeleted()) return;
+            previous = conv.getSummary();
+            older = new ArrayList<>(conv.getTurns().subList(0, n));
+        }
+
+        StringBuilder user = new StringBuilder();
+        if (previous != null && !previous.isBlank()) {
+            user.append("Summary so far:\n").append(previous).append("\n\n");
+        }
+        user.append("New turns:\n");
+        for (ConversationTurnDto t : older) appendTurn(user, t);
+
+        String system = """
+              You maintain a running summary of a conversation about internal technical documents (mostly Vietnamese).
+              Merge the summary so far with the new turns into one updated summary of at most %d tokens.
+              Keep facts the user may refer back to: project/module/table names, decisions, numbers, open questions.
+              Write in the language of the conversation. Reply with the summary only.
+            """.formatted(sessionConfig.getSummaryMaxTokens());
+
+        String summary = llm.generate(system, user.toString());
+        if (summary == null || summary.isBlank()) return;
+        summary = capTokens(summary.trim(), sessionConfig.getSummaryMaxTokens());
+
+        synchronized (conv) {
+            conv.setSummary(summary);
+            // chỉ bỏ đúng các lượt đã tóm tắt; lượt mới thêm trong lúc gọi LLM vẫn giữ
+            conv.getTurns().subList(0, older.size()).clear();
+        }
+    }
+
+    // Tóm tắt + các lượt mới nhất vừa ngân sách token -> chi phí prompt không tăng theo độ dài phiên
+    private String historyText(ConversationDto conv) {
+        String summary;
+        List<ConversationTurnDto> turns;
+        synchronized (conv) {
+            summary = conv.getSummary();
+            turns = new ArrayList<>(conv.getTurns());
+        }
+        if ((summary == null || summary.isBlank()) && turns.isEmpty()) return "";
+
+        int budget = sessionConfig.getHistoryMaxTokens();
+        int from = turns.size();
+        while (from > 0 && turns.get(from - 1).getTokens() <= budget) {
+            budget -= turns.get(from - 1).getTokens();
+            from--;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        if (summary != null && !summary.isBlank()) {
+            sb.append("Conversation summary:\n").append(summary).append("\n\n");
+        }
+        if (from < turns.size()) {
+            sb.append("Recent turns:\n");
+            for (ConversationTurnDto t : turns.subList(from, turns.size())) appendTurn(sb, t);
+        }
+        return sb.toString().trim();
+    }
+
+    private static void appendTurn(StringBuilder sb, ConversationTurnDto t) {
+        sb.append("User: ").append(t.getQuestion()).append('\n')
+          .append("Assistant: ").append(t.getAnswer()).append('\n');
+    }
+
+    private int tokensOf(String s) {
+        return s == null || s.isEmpty() ? 0 : embeddingEncoding.countTokens(s);
+    }
+
+    // LLM không luôn tuân giới hạn độ dài -> cắt theo tỉ lệ ký tự/token
+    private String capTokens(String s, int maxTokens) {
+        int tokens = tokensOf(s);
+        if (tokens <= maxTokens) return s;
+        return s.substring(0, (int) ((long) s.length() * maxTokens / tokens)) + "…";
+    }
+
+    private ConversationDto load(String sessionId) {
+        if (sessionConfig.isPersist()) {
+            try {
+                var row = ragSessionRepo.findById(sessionId).orElse(null);
+                if (row != null) {
+                    List<ConversationTurnDto> turns = row.getTurns() == null ? new ArrayList<>()
+                            : om.readValue(row.getTurns(), new TypeReference<ArrayList<ConversationTurnDto>>() {});
+                    return new ConversationDto(sessionId, row.getSummary(), turns, false);
+                }
+            } catch (Exception e) {
+                log.warn("Không đọc được phiên {}: {}", sessionId, e.getMessage());
+            }
+        }
+        return new ConversationDto(sessionId);
+    }
+
+    private void persist(ConversationDto conv) {
+        if (!sessionConfig.isPersist()) return;
+        try {
+            ConversationSession row;
+            synchronized (conv) {
+                if (conv.isDeleted()) return; // lần lưu xếp sau delete() không được tạo lại dòng đã xoá
+                row = new ConversationSession(conv.getSessionId(), conv.getSummary(),
+                        om.writeValueAsString(conv.getTurns()), LocalDateTime.now());
+            }
+            ragSessionRepo.save(row);
+        } catch (Exception e) {
+            log.warn("Không lưu được phiên {}: {}", conv.getSessionId(), e.getMessage());
+        }
+    }
+}
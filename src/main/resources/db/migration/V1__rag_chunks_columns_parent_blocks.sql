@@ -0,0 +1,17 @@
+-- Small-to-big: chunk con trỏ tới khối cha, khối cha chỉ lưu text (không embed)
+ALTER TABLE rag_chunks ADD COLUMN IF NOT EXISTS parent_id bigint;
+
+-- Số token lưu lúc ingest -> dựng prompt theo ngân sách token không phải tokenize lại
+ALTER TABLE rag_chunks ADD COLUMN IF NOT EXISTS token_count integer;
+ALTER TABLE rag_chunks ADD COLUMN IF NOT EXISTS tokenizer varchar(32);
+
+CREATE TABLE IF NOT EXISTS rag_parent_blocks (
+    id uuid PRIMARY KEY,
+    doc_id varchar(255) NOT NULL,
+    parent_id bigint NOT NULL,
+    content text NOT NULL,
+    metadata jsonb,
+    token_count integer,
+    updated_at timestamp,
+    UNIQUE (doc_id, parent_id)
+);
@@ -0,0 +1,12 @@
+-- Tầng tài liệu cho retrieval 2 cấp (search.hierarchical.enabled)
+CREATE TABLE IF NOT EXISTS rag_documents (
+    id uuid PRIMARY KEY,
+    doc_id varchar(255) NOT NULL UNIQUE,
+    title varchar(255),
+    summary text,
+    embedding vector(1536) NOT NULL,
+    metadata jsonb,
+    updated_at timestamp
+);
+
+CREATE INDEX IF NOT EXISTS rag_documents_emb_idx ON rag_documents USING hnsw (embedding vector_cosine_ops);
@@ -0,0 +1,3 @@
+-- Bước 2 của search 2 cấp + thay chunk theo tài liệu khi ingest lại: lọc rag_chunks theo doc_id.
+-- CONCURRENTLY không khoá ghi bảng; Flyway tự chạy ngoài transaction nên để riêng 1 file.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS rag_chunks_doc_id_idx ON rag_chunks (doc_id);
@@ -0,0 +1,3 @@
+-- btree theo project: project nhỏ (chưa có partition index) lọc + sắp xếp chính xác, planner ước lượng selectivity.
+-- CONCURRENTLY không khoá ghi bảng; Flyway tự chạy ngoài transaction nên để riêng 1 file.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS rag_chunks_project_idx ON rag_chunks ((metadata->>'project'));
@@ -0,0 +1,7 @@
+-- Phiên hội thoại (session.persist): tóm tắt cuốn chiếu + các lượt chưa tóm tắt
+CREATE TABLE IF NOT EXISTS rag_sessions (
+    session_id varchar(255) PRIMARY KEY,
+    summary text,
+    turns jsonb,
+    updated_at timestamp
+);
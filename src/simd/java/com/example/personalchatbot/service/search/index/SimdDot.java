@@ -0,0 +1,29 @@
+package com.example.personalchatbot.service.search.index;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Chỉ được nạp khi module jdk.incubator.vector có mặt (xem {@code VectorKernels.SIMD}).
+ * Nằm ở source set simd riêng: chỉ file này compile với --add-modules jdk.incubator.vector.
+ */
+final class SimdDot {
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    private SimdDot() {}
+
+    static float dot(float[] a, int ao, float[] b, int bo, int len) {
+        FloatVector acc = FloatVector.zero(SPECIES);
+        int i = 0;
+        int upper = SPECIES.loopBound(len);
+        for (; i < upper; i += SPECIES.length()) {
+            FloatVector va = FloatVector.fromArray(SPECIES, a, ao + i);
+            FloatVector vb = FloatVector.fromArray(SPECIES, b, bo + i);
+            acc = va.fma(vb, acc);
+        }
+        float s = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < len; i++) s += a[ao + i] * b[bo + i];
+        return s;
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.personalchatbot.repository;
+
+import com.example.personalchatbot.dto.SearchPlanDto;
+import org.junit.jupiter.api.Test;
+
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RagChunkSearchRepositoryTest {
+
+    @Test
+    void oversampleAppliesPartitionProjectInsideAnnSubquery() {
+        TreeMap<String, String> filters = new TreeMap<>();
+        filters.put("module", "billing");
+
+        String sql = RagChunkSearchRepository.buildSql(SearchPlanDto.OVERSAMPLE, filters, "'big'", false);
+
+        int project = sql.indexOf("(metadata->>'project') = 'big'");
+        int innerLimit = sql.indexOf("LIMIT ?) t");
+        int module = sql.indexOf("(metadata->>'module') = ?");
+        assertTrue(project >= 0 && project < innerLimit, "project phải lọc trong subquery ANN:\n" + sql);
+        assertTrue(module > innerLimit, "module lọc sau khi lấy dư ứng viên:\n" + sql);
+        assertEquals(1, sql.split("'big'", -1).length - 1);
+        // qvec, candidateK, module, k
+        assertEquals(4, sql.chars().filter(c -> c == '?').count());
+    }
+
+    @Test
+    void oversampleWithoutPartitionScansGlobalIndex() {
+        TreeMap<String, String> filters = new TreeMap<>();
+        filters.put("project", "small");
+
+        String sql = RagChunkSearchRepository.buildSql(SearchPlanDto.OVERSAMPLE, filters, null, false);
+
+        String inner = sql.substring(0, sql.indexOf("LIMIT ?) t"));
+        assertFalse(inner.contains("metadata->>'project'"));
+        assertTrue(sql.indexOf("(metadata->>'project') = ?") > inner.length());
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.personalchatbot.service.metadata;
+
+import com.example.personalchatbot.config.MetadataConfig;
+import com.example.personalchatbot.dto.MetadataDto;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetadataClassifierTest {
+
+    private MetadataClassifier classifier;
+
+    @BeforeEach
+    void setUp() {
+        MetadataConfig config = new MetadataConfig();
+        config.setLocalEnabled(true);
+        config.setMinSimilarity(0.3);
+        config.setMinMargin(0.03);
+        config.setMinTokenLength(4);
+
+        classifier = new MetadataClassifier(null, config, new ObjectMapper());
+        classifier.add("Finex", "Payments", null, 1);
+        classifier.add("Lending", "Approvals", null, 1);
+        classifier.add("Lending", "Payments", null, 1);
+        classifier.add("AI", "Core Banking", null, 1);
+        classifier.markReady();
+    }
+
+    @Test
+    void tokensAreLowercasedWithoutVietnameseDiacritics() {
+        assertEquals(List.of("loi", "dong", "bo", "o", "moi", "truong", "uat"),
+                MetadataClassifier.tokens("Lỗi đồng-bộ ở môi trường UAT?"));
+    }
+
+    @Test
+    void matchesLongestPhraseAndEnvSynonyms() {
+        Map<String, Set<String>> found = classifier.match("module core banking trên staging");
+
+        assertEquals(Set.of("Core Banking"), found.get("module"));
+        assertEquals(Set.of("STG"), found.get("env"));
+    }
+
+    @Test
+    void shortNameMatchesOnlyWhenWrittenExactly() {
+        assertNull(classifier.match("ai phụ trách bảng này?").get("project"));
+        assertEquals(Set.of("AI"), classifier.match("bảng này của AI à?").get("project"));
+        assertNull(classifier.match("AIR team").get("project"));
+    }
+
+    @Test
+    void explicitProjectHasFullConfidence() {
+        MetadataDto m = classifier.classify("Finex trên PROD lỗi gì?", null);
+
+        assertEquals("Finex", m.getProject());
+        assertEquals("PROD", m.getEnv());
+        assertEquals(1.0, m.getExtra().get("confidence"));
+    }
+
+    @Test
+    void projectInferredFromUniqueModuleHasLowerConfidence() {
+        MetadataDto m = classifier.classify("quy trình approvals", null);
+
+        assertEquals("Lending", m.getProject());
+        assertEquals("Approvals", m.getModule());
+        assertEquals(MetadataClassifier.MODULE_CONFIDENCE, m.getExtra().get("confidence"));
+    }
+
+    @Test
+    void fallsBackToLlmWithoutProject() {
+        assertNull(classifier.classify("deploy lên production thế nào?", null)); // chỉ có env
+        assertNull(classifier.classify("payments bị chậm", null));              // module thuộc 2 project
+    }
+}
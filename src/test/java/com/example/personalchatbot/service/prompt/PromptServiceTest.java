@@ -0,0 +1,81 @@
+package com.example.personalchatbot.service.prompt;
+
+import com.example.personalchatbot.config.LlmConfig;
+import com.example.personalchatbot.config.RagConfig;
+import com.example.personalchatbot.dto.PromptDto;
+import com.example.personalchatbot.dto.SearchHitDto;
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.EncodingType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PromptServiceTest {
+
+    private LlmConfig llmConfig;
+    private PromptService promptService;
+
+    @BeforeEach
+    void setUp() {
+        llmConfig = new LlmConfig();
+        llmConfig.setContextWindowTokens(128_000);
+        llmConfig.setOutputToken(512);
+        RagConfig ragConfig = new RagConfig();
+        ragConfig.setMaxContextTokens(300);
+        promptService = new PromptService(
+                Encodings.newDefaultEncodingRegistry().getEncoding(EncodingType.CL100K_BASE), llmConfig, ragConfig);
+    }
+
+    private static SearchHitDto hit(String docId, long chunkId, String content, int tokens, double sim) {
+        return SearchHitDto.builder().docId(docId).chunkId(chunkId).content(content)
+                .tokenCount(tokens).similarity(sim).build();
+    }
+
+    @Test
+    void hitsThatDoNotFitAreLeftOutOfContextAndPackedHits() {
+        SearchHitDto a = hit("a", 1, "alpha", 50, 0.9);
+        SearchHitDto big = hit("b", 2, "beta", 5_000, 0.8);
+        SearchHitDto c = hit("c", 3, "gamma", 50, 0.7);
+
+        PromptDto prompt = promptService.build("câu hỏi", List.of(a, big, c));
+
+        assertEquals(List.of(a, c), prompt.getHits());
+        assertTrue(prompt.getUser().contains("[a#1]"));
+        assertTrue(prompt.getUser().contains("[c#3]"));
+        assertFalse(prompt.getUser().contains("[b#2]"));
+    }
+
+    @Test
+    void topHitIsTruncatedWhenNothingFits() {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 400; i++) content.append("dòng số ").append(i).append(" của tài liệu\n");
+        SearchHitDto big = hit("b", 7, content.toString(), 5_000, 0.8);
+
+        PromptDto prompt = promptService.build("câu hỏi", List.of(big));
+
+        assertEquals(List.of(big), prompt.getHits());
+        assertTrue(prompt.getUser().contains("dòng số 0 "));
+        assertFalse(prompt.getUser().contains("dòng số 399 "));
+    }
+
+    @Test
+    void noHitsMeansNoCitations() {
+        PromptDto prompt = promptService.build("câu hỏi", List.of());
+        assertTrue(prompt.getHits().isEmpty());
+    }
+
+    @Test
+    void contextBudgetReservesThePerCallOutputLimit() {
+        llmConfig.setContextWindowTokens(1_200);
+        SearchHitDto a = hit("a", 1, "alpha", 200, 0.9);
+
+        // cấu hình 512 output -> còn chỗ cho hit; lần gọi xin output bằng cả cửa sổ -> không còn chỗ cho context
+        assertEquals(List.of(a), promptService.build("câu hỏi", List.of(a), null).getHits());
+        PromptDto prompt = promptService.build("câu hỏi", List.of(a), 1_200);
+        assertTrue(prompt.getHits().isEmpty());
+        assertFalse(prompt.getUser().contains("[a#1]"));
+    }
+}
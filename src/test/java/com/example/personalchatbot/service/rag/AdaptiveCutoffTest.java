@@ -0,0 +1,51 @@
+package com.example.personalchatbot.service.rag;
+
+import com.example.personalchatbot.dto.SearchHitDto;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveCutoffTest {
+
+    private static List<SearchHitDto> hits(double... sims) {
+        return Arrays.stream(sims).mapToObj(s -> SearchHitDto.builder().similarity(s).build()).toList();
+    }
+
+    @Test
+    void cutsBelowThreshold() {
+        List<SearchHitDto> h = hits(0.9, 0.8, 0.3, 0.2);
+        int cut = AdaptiveCutoff.index(h, 0.5, null, 1);
+        assertEquals(2, cut);
+        assertEquals(AdaptiveCutoff.THRESHOLD, AdaptiveCutoff.reason(h, cut, 0.5));
+    }
+
+    @Test
+    void cutsAtScoreGap() {
+        List<SearchHitDto> h = hits(0.9, 0.88, 0.6, 0.58);
+        int cut = AdaptiveCutoff.index(h, 0.1, 0.15, 1);
+        assertEquals(2, cut);
+        assertEquals(AdaptiveCutoff.GAP, AdaptiveCutoff.reason(h, cut, 0.1));
+    }
+
+    @Test
+    void keepsMinimumEvenBelowThreshold() {
+        List<SearchHitDto> h = hits(0.2, 0.1);
+        assertEquals(1, AdaptiveCutoff.index(h, 0.5, null, 1));
+    }
+
+    @Test
+    void noCutWhenEverythingRelevant() {
+        List<SearchHitDto> h = hits(0.9, 0.85, 0.8);
+        int cut = AdaptiveCutoff.index(h, 0.5, 0.15, 1);
+        assertEquals(3, cut);
+        assertEquals(AdaptiveCutoff.FULL, AdaptiveCutoff.reason(h, cut, 0.5));
+    }
+
+    @Test
+    void nullLimitsDisableCutting() {
+        assertEquals(3, AdaptiveCutoff.index(hits(0.9, 0.1, 0.0), null, null, 1));
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.personalchatbot.service.rag;
+
+import com.example.personalchatbot.config.RagConfig;
+import com.example.personalchatbot.config.SearchConfig;
+import com.example.personalchatbot.dto.AnswerDto;
+import com.example.personalchatbot.entity.ChunkMessage;
+import com.example.personalchatbot.event.ChunksIngestedEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AnswerCacheServiceTest {
+
+    private static final float[] Q = {1f, 0f, 0f, 0f};
+
+    private AnswerCacheService cache;
+
+    @BeforeEach
+    void setUp() {
+        RagConfig rag = new RagConfig();
+        rag.setAnswerCache(true);
+        rag.setAnswerCacheThreshold(0.95);
+        rag.setAnswerCacheMaxEntries(100);
+        rag.setAnswerCacheTtlSeconds(3600);
+        SearchConfig search = new SearchConfig();
+        search.setHnswM(8);
+        search.setHnswEfConstruction(32);
+        search.setHnswEfSearch(16);
+        cache = new AnswerCacheService(rag, search);
+    }
+
+    private static AnswerDto answer(String text, String... citations) {
+        return new AnswerDto(text, List.of(citations), null);
+    }
+
+    private static ChunksIngestedEvent ingested(String docId) {
+        ChunkMessage c = new ChunkMessage();
+        c.setDocId(docId);
+        return new ChunksIngestedEvent(List.of(c));
+    }
+
+    @Test
+    void hitsOnlyWithSameFilterShape() {
+        cache.put(Q, Map.of("project", "billing"), answer("a", "doc1#3"));
+
+        assertEquals("a", cache.lookup(Q, Map.of("project", "billing", "title", "khác")).getText());
+        assertNull(cache.lookup(Q, Map.of("project", "payroll")));
+        assertNull(cache.lookup(new float[]{0f, 1f, 0f, 0f}, Map.of("project", "billing")));
+    }
+
+    @Test
+    void reingestDropsAnswersCitingTheDocument() {
+        cache.put(Q, Map.of(), answer("a", "doc1#3", "doc2#1-2"));
+        cache.put(new float[]{0f, 1f, 0f, 0f}, Map.of(), answer("b", "doc3#0"));
+
+        cache.onChunksIngested(ingested("doc2"));
+
+        assertNull(cache.lookup(Q, Map.of()));
+        assertEquals("b", cache.lookup(new float[]{0f, 1f, 0f, 0f}, Map.of()).getText());
+        assertEquals(1L, cache.stats().get("invalidated"));
+        assertEquals(1, cache.stats().get("entries"));
+    }
+
+    @Test
+    void reingestOfUncitedDocumentKeepsEntries() {
+        cache.put(Q, Map.of(), answer("a", "doc1#3"));
+
+        cache.onChunksIngested(ingested("doc9"));
+
+        assertEquals("a", cache.lookup(Q, Map.of()).getText());
+        assertEquals(0L, cache.stats().get("invalidated"));
+    }
+}
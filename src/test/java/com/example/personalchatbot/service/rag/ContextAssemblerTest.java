@@ -0,0 +1,78 @@
+package com.example.personalchatbot.service.rag;
+
+import com.example.personalchatbot.dto.SearchHitDto;
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.EncodingType;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContextAssemblerTest {
+
+    private final ContextAssembler assembler = new ContextAssembler(
+            null, Encodings.newDefaultEncodingRegistry().getEncoding(EncodingType.CL100K_BASE));
+
+    private static SearchHitDto hit(String docId, long chunkId, String content, double sim) {
+        return SearchHitDto.builder().docId(docId).chunkId(chunkId).content(content).tokenCount(10).similarity(sim).build();
+    }
+
+    @Test
+    void appendWithoutOverlapDropsRepeatedLines() {
+        StringBuilder prev = new StringBuilder("l1\nl2\nl3");
+        ContextAssembler.appendWithoutOverlap(prev, "l2\nl3\nl4");
+        assertEquals("l1\nl2\nl3\nl4", prev.toString());
+    }
+
+    @Test
+    void appendWithoutOverlapKeepsDisjointText() {
+        StringBuilder prev = new StringBuilder("a\nb");
+        ContextAssembler.appendWithoutOverlap(prev, "c");
+        assertEquals("a\nb\nc", prev.toString());
+
+        ContextAssembler.appendWithoutOverlap(prev, null);
+        assertEquals("a\nb\nc", prev.toString());
+    }
+
+    @Test
+    void consecutiveChunksAreStitchedIntoOneBlock() {
+        List<SearchHitDto> out = assembler.assemble(List.of(
+                hit("a", 2, "x\ny", 0.8),
+                hit("a", 3, "y\nz", 0.6)), false, 4000);
+
+        assertEquals(1, out.size());
+        SearchHitDto block = out.getFirst();
+        assertEquals(2, block.getChunkId());
+        assertEquals(3L, block.getLastChunkId());
+        assertEquals("x\ny\nz", block.getContent());
+        assertNull(block.getTokenCount());
+        assertEquals(0.8, block.getSimilarity(), 1e-9);
+    }
+
+    @Test
+    void outputKeepsInputRankIncludingParentBlocks() {
+        SearchHitDto parent = SearchHitDto.builder().docId("p").chunkId(1).parentId(1L).content("khối cha").similarity(0.9).build();
+        List<SearchHitDto> out = assembler.assemble(List.of(
+                parent,
+                hit("a", 2, "a2", 0.8),
+                hit("b", 5, "b5", 0.7),
+                hit("a", 3, "a3", 0.6)), false, 4000);
+
+        assertEquals(3, out.size());
+        assertSame(parent, out.get(0));
+        assertEquals("a", out.get(1).getDocId());
+        assertEquals(3L, out.get(1).getLastChunkId());
+        assertEquals("b", out.get(2).getDocId());
+    }
+
+    @Test
+    void rerankOrderWinsOverSimilarity() {
+        // MMR có thể xếp hit similarity thấp hơn lên trước -> giữ nguyên
+        List<SearchHitDto> out = assembler.assemble(List.of(
+                hit("x", 1, "x1", 0.5),
+                hit("y", 1, "y1", 0.9)), false, 4000);
+
+        assertEquals(List.of("x", "y"), out.stream().map(SearchHitDto::getDocId).toList());
+    }
+}
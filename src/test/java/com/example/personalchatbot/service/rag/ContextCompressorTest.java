@@ -0,0 +1,60 @@
+package com.example.personalchatbot.service.rag;
+
+import com.example.personalchatbot.dto.SearchHitDto;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContextCompressorTest {
+
+    private static final List<String> LINES = List.of("a", "b", "c", "d", "e");
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+    private final ContextCompressor compressor = new ContextCompressor(null, executor, new ObjectMapper());
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void keepsTopSentencesInOriginalOrderWithGapMarkers() {
+        String out = ContextCompressor.keepTop(LINES, new double[]{0.1, 0.9, 0, 0.5, 0}, 2);
+        assertEquals("…\nb\n…\nd\n…", out);
+    }
+
+    @Test
+    void neverKeepsZeroScoreSentencesToFillTheQuota() {
+        String out = ContextCompressor.keepTop(LINES, new double[]{0.8, 0, 0, 0, 0}, 3);
+        assertEquals("a\n…", out);
+    }
+
+    @Test
+    void keepsLeadingSentencesWhenNothingScores() {
+        String out = ContextCompressor.keepTop(LINES, new double[5], 2);
+        assertEquals("a\nb\n…", out);
+    }
+
+    @Test
+    void leavesSourceCodeHitsUntouched() {
+        String code = "int total = 0;\nfor (Item i : items) {\n  total += i.price();\n}\nreturn total;";
+        String text = "Bảng orders lưu đơn hàng.\nCột price là giá.\nThời tiết hôm nay đẹp.\nKhông liên quan.";
+        List<SearchHitDto> hits = List.of(
+                SearchHitDto.builder().docId("a").chunkId(1).content(code)
+                        .metadataJson("{\"source\":\"code\",\"language\":\"java\"}").build(),
+                SearchHitDto.builder().docId("b").chunkId(1).content(text)
+                        .metadataJson("{\"source\":\"markdown\"}").build());
+
+        List<SearchHitDto> out = compressor.compress("price trong bảng orders", hits,
+                ContextCompressor.MODE_LEXICAL, 2);
+
+        assertEquals(code, out.get(0).getContent());
+        assertEquals("Bảng orders lưu đơn hàng.\nCột price là giá.\n…", out.get(1).getContent());
+    }
+}
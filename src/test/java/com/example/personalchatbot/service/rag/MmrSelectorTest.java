@@ -0,0 +1,47 @@
+package com.example.personalchatbot.service.rag;
+
+import com.example.personalchatbot.dto.SearchHitDto;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MmrSelectorTest {
+
+    private static SearchHitDto hit(String doc, double similarity, float... embedding) {
+        return SearchHitDto.builder().docId(doc).similarity(similarity)
+                .embedding(embedding.length == 0 ? null : embedding).build();
+    }
+
+    private static List<String> docs(List<SearchHitDto> hits) {
+        return hits.stream().map(SearchHitDto::getDocId).toList();
+    }
+
+    private final List<SearchHitDto> candidates = List.of(
+            hit("a", 0.90, 1f, 0f),
+            hit("a-dup", 0.89, 1f, 0.01f),
+            hit("c", 0.70, 0f, 1f));
+
+    @Test
+    void skipsNearDuplicateOfAlreadySelectedHit() {
+        assertEquals(List.of("a", "c"), docs(MmrSelector.select(candidates, 2, 0.5)));
+    }
+
+    @Test
+    void lambdaOneIsPureRelevanceOrder() {
+        assertEquals(List.of("a", "a-dup", "c"), docs(MmrSelector.select(candidates, 3, 1.0)));
+    }
+
+    @Test
+    void hitsWithoutEmbeddingsAreNotPenalised() {
+        List<SearchHitDto> plain = List.of(hit("x", 0.9), hit("y", 0.8), hit("z", 0.7));
+        assertEquals(List.of("x", "y"), docs(MmrSelector.select(plain, 2, 0.3)));
+    }
+
+    @Test
+    void boundsOnN() {
+        assertEquals(3, MmrSelector.select(candidates, 10, 0.5).size());
+        assertTrue(MmrSelector.select(candidates, 0, 0.5).isEmpty());
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.personalchatbot.service.rag;
+
+import com.example.personalchatbot.dto.SearchHitDto;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RankFusionTest {
+
+    private static final UUID A = UUID.randomUUID();
+    private static final UUID B = UUID.randomUUID();
+    private static final UUID C = UUID.randomUUID();
+
+    private static SearchHitDto hit(UUID id, double similarity) {
+        return SearchHitDto.builder().id(id).similarity(similarity).build();
+    }
+
+    @Test
+    void documentsFoundByBothQueriesRankFirst() {
+        List<SearchHitDto> out = RankFusion.rrf(List.of(
+                List.of(hit(A, 0.9), hit(B, 0.8)),
+                List.of(hit(C, 0.7), hit(B, 0.6))), null, 10);
+
+        assertEquals(List.of(B, A, C), out.stream().map(SearchHitDto::getId).toList());
+    }
+
+    @Test
+    void weightBreaksTiesInFavourOfTheOriginalQuestion() {
+        List<SearchHitDto> out = RankFusion.rrf(List.of(
+                List.of(hit(A, 0.9)),
+                List.of(hit(C, 0.9))), new double[]{1.5, 1.0}, 10);
+
+        assertEquals(List.of(A, C), out.stream().map(SearchHitDto::getId).toList());
+    }
+
+    @Test
+    void keepsTheHighestSimilarityCopyAndRespectsLimit() {
+        List<SearchHitDto> out = RankFusion.rrf(List.of(
+                List.of(hit(A, 0.5), hit(B, 0.4), hit(C, 0.3)),
+                List.of(hit(A, 0.8))), null, 2);
+
+        assertEquals(2, out.size());
+        assertEquals(A, out.getFirst().getId());
+        assertEquals(0.8, out.getFirst().getSimilarity());
+    }
+}
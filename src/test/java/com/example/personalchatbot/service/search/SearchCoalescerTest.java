@@ -0,0 +1,82 @@
+package com.example.personalchatbot.service.search;
+
+import com.example.personalchatbot.dto.SearchHitDto;
+import com.pgvector.PGvector;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchCoalescerTest {
+
+    private static final PGvector V = new PGvector(new float[]{1f, 0f});
+
+    private static void assertFailsPromptly(CompletableFuture<List<SearchHitDto>> f) {
+        assertThrows(ExecutionException.class, () -> f.get(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void groupsSameShapeIntoOneBatch() throws Exception {
+        List<Integer> batchSizes = new ArrayList<>();
+        SearchCoalescer c = new SearchCoalescer((vs, k, f, e) -> {
+            synchronized (batchSizes) { batchSizes.add(vs.size()); }
+            return vs.stream().map(v -> List.<SearchHitDto>of()).toList();
+        }, 200, 10, 1, 100);
+        try {
+            CompletableFuture<List<SearchHitDto>> a = c.submit(V, 5, Map.of(), false);
+            CompletableFuture<List<SearchHitDto>> b = c.submit(V, 5, Map.of(), false);
+            assertEquals(List.of(), a.get(2, TimeUnit.SECONDS));
+            assertEquals(List.of(), b.get(2, TimeUnit.SECONDS));
+            assertEquals(List.of(2), batchSizes);
+        } finally {
+            c.close();
+        }
+    }
+
+    @Test
+    void closeFailsWindowWhoseSqlIsStillRunning() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch never = new CountDownLatch(1);
+        SearchCoalescer c = new SearchCoalescer((vs, k, f, e) -> {
+            started.countDown();
+            try {
+                never.await(); // SQL treo
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IllegalStateException("interrupted");
+        }, 0, 10, 1, 100);
+
+        CompletableFuture<List<SearchHitDto>> f = c.submit(V, 5, Map.of(), false);
+        assertTrue(started.await(2, TimeUnit.SECONDS));
+        c.close();
+
+        assertFailsPromptly(f);
+    }
+
+    @Test
+    void closeFailsWindowStillBeingCollected() throws Exception {
+        // cửa sổ dài -> dispatcher đang giữ truy vấn khi close()
+        SearchCoalescer c = new SearchCoalescer((vs, k, f, e) -> List.of(), 60_000, 10, 1, 100);
+        CompletableFuture<List<SearchHitDto>> f = c.submit(V, 5, Map.of(), false);
+        Thread.sleep(100);
+        c.close();
+
+        assertFailsPromptly(f);
+    }
+
+    @Test
+    void submitAfterCloseFailsImmediately() {
+        SearchCoalescer c = new SearchCoalescer((vs, k, f, e) -> List.of(), 0, 10, 1, 100);
+        c.close();
+
+        assertTrue(c.submit(V, 5, Map.of(), false).isCompletedExceptionally());
+    }
+}
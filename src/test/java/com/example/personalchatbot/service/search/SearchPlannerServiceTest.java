@@ -0,0 +1,89 @@
+package com.example.personalchatbot.service.search;
+
+import com.example.personalchatbot.config.SearchConfig;
+import com.example.personalchatbot.dto.SearchPlanDto;
+import com.example.personalchatbot.entity.ChunkMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchPlannerServiceTest {
+
+    private SearchPlannerService planner;
+
+    @BeforeEach
+    void setUp() {
+        SearchConfig config = new SearchConfig();
+        config.setPlannerEnabled(true);
+        config.setPlannerExactMaxRows(1_000);
+        config.setPlannerAnnMinSelectivity(0.1);
+        config.setPlannerMaxEfSearch(1_000);
+
+        planner = new SearchPlannerService(null, config, new ObjectMapper());
+        // 1M chunk: project "big" 200k (có partition), module "billing" 10k trên toàn bảng
+        planner.addCount("project", "big", 200_000);
+        planner.addCount("project", "other", 800_000);
+        planner.addCount("module", "billing", 10_000);
+        planner.addCount("env", "prod", 500_000);
+        planner.markReady(false);
+    }
+
+    @Test
+    void partitionedProjectWithSelectiveModuleOversamplesAgainstProjectRows() {
+        SearchPlanDto plan = planner.plan(Map.of("project", "big", "module", "billing"), 5, true);
+
+        assertEquals(SearchPlanDto.OVERSAMPLE, plan.getStrategy());
+        assertEquals(200_000, plan.getBaseRows());      // partial index chỉ chứa dòng của project
+        assertEquals(2_000, plan.getEstimatedRows());   // 1M * 0.2 * 0.01
+        assertEquals(0.01, plan.getSelectivity(), 1e-9);
+        assertEquals(750, plan.getCandidateK());        // 5 / 0.01 * 1.5
+    }
+
+    @Test
+    void unpartitionedProjectMeasuresSelectivityAgainstWholeTable() {
+        SearchPlanDto plan = planner.plan(Map.of("project", "big", "module", "billing"), 5, false);
+
+        assertEquals(1_000_000, plan.getBaseRows());
+        assertEquals(0.002, plan.getSelectivity(), 1e-9);
+        assertEquals(1_000, plan.getCandidateK());      // chạm trần max-ef-search
+    }
+
+    @Test
+    void smallMatchingSetUsesExactScan() {
+        planner.addCount("module", "tiny", 100);
+        SearchPlanDto plan = planner.plan(Map.of("module", "tiny"), 5, false);
+        assertEquals(SearchPlanDto.EXACT, plan.getStrategy());
+    }
+
+    @Test
+    void looseFilterStaysOnAnn() {
+        SearchPlanDto plan = planner.plan(Map.of("env", "prod"), 5, false);
+        assertEquals(SearchPlanDto.ANN, plan.getStrategy());
+    }
+
+    @Test
+    void iterativeScanPreferredWhenSupported() {
+        planner.markReady(true);
+        SearchPlanDto plan = planner.plan(Map.of("project", "big", "module", "billing"), 5, true);
+        assertEquals(SearchPlanDto.ITERATIVE, plan.getStrategy());
+        assertEquals(40, plan.getEfSearch());
+    }
+
+    @Test
+    void deletedChunksAreSubtractedFromCounts() {
+        ChunkMessage c = new ChunkMessage();
+        c.setMetadata("{\"project\":\"big\",\"module\":\"tiny\"}");
+        planner.adjust(List.of(c), 1);
+        assertEquals(SearchPlanDto.EXACT, planner.plan(Map.of("module", "tiny"), 5, false).getStrategy());
+
+        planner.adjust(List.of(c), -1);
+        SearchPlanDto plan = planner.plan(Map.of("module", "tiny"), 5, false);
+        assertEquals(1_000_000, plan.getBaseRows());
+        assertEquals(0, plan.getEstimatedRows()); // module không còn chunk nào
+    }
+}
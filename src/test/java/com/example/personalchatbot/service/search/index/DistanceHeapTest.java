@@ -0,0 +1,47 @@
+package com.example.personalchatbot.service.search.index;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DistanceHeapTest {
+
+    private static final float[] DIST = {0.5f, 0.1f, 0.9f, 0.3f, 0.7f, 0.2f, 0.8f};
+
+    @Test
+    void maxHeapOfferKeepsKNearest() {
+        DistanceHeap top = new DistanceHeap(4, true);
+        for (int i = 0; i < DIST.length; i++) top.offer(i, DIST[i], 3);
+
+        assertEquals(3, top.size());
+        assertEquals(0.3f, top.peekDist()); // đỉnh = phần tử xa nhất trong top-k
+        float[] ds = new float[3];
+        assertArrayEquals(new int[]{1, 5, 3}, top.drainAscending(ds));
+        assertArrayEquals(new float[]{0.1f, 0.2f, 0.3f}, ds, 0f);
+        assertTrue(top.isEmpty());
+    }
+
+    @Test
+    void minHeapPopsNearestFirstAndGrowsPastCapacity() {
+        DistanceHeap queue = new DistanceHeap(1, false);
+        for (int i = 0; i < DIST.length; i++) queue.push(i, DIST[i]);
+
+        assertEquals(DIST.length, queue.size());
+        assertEquals(1, queue.peekNode());
+        assertEquals(1, queue.pop());
+        assertEquals(5, queue.pop());
+    }
+
+    @Test
+    void drainAscendingWorksForBothOrders() {
+        DistanceHeap max = new DistanceHeap(8, true);
+        DistanceHeap min = new DistanceHeap(8, false);
+        for (int i = 0; i < DIST.length; i++) {
+            max.push(i, DIST[i]);
+            min.push(i, DIST[i]);
+        }
+        int[] expected = {1, 5, 3, 0, 4, 6, 2};
+        assertArrayEquals(expected, max.drainAscending(null));
+        assertArrayEquals(expected, min.drainAscending(null));
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.personalchatbot.service.search.index;
+
+import com.example.personalchatbot.dto.VectorHitDto;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HnswIndexTest {
+
+    private static final int DIM = 16;
+
+    private static float[] random(Random rnd) {
+        float[] v = new float[DIM];
+        for (int i = 0; i < DIM; i++) v[i] = (float) rnd.nextGaussian();
+        return v;
+    }
+
+    private static float cosineDistance(float[] a, float[] b) {
+        return 1f - VectorKernels.scalarDot(VectorKernels.normalizedCopy(a), 0, VectorKernels.normalizedCopy(b), 0, DIM);
+    }
+
+    @Test
+    void approximateTopKHasHighRecallAgainstExactScan() {
+        Random rnd = new Random(42);
+        HnswIndex index = new HnswIndex(DIM, 16, 100, 1);
+        List<UUID> ids = new ArrayList<>();
+        List<float[]> vectors = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            UUID id = UUID.randomUUID();
+            float[] v = random(rnd);
+            ids.add(id);
+            vectors.add(v);
+            index.upsert(id, v, new int[]{1});
+        }
+
+        int k = 10, queries = 50, found = 0;
+        for (int q = 0; q < queries; q++) {
+            float[] query = random(rnd);
+            Set<UUID> exact = new HashSet<>();
+            IntStream.range(0, ids.size()).boxed()
+                    .sorted(Comparator.comparingDouble(i -> cosineDistance(query, vectors.get(i))))
+                    .limit(k)
+                    .forEach(i -> exact.add(ids.get(i)));
+            for (VectorHitDto h : index.search(query, k, 64, null)) {
+                if (exact.contains(h.getId())) found++;
+            }
+        }
+        assertTrue(found >= 0.9 * k * queries, "recall@10 = " + (double) found / (k * queries));
+    }
+
+    @Test
+    void resultsAreSortedByDistance() {
+        Random rnd = new Random(7);
+        HnswIndex index = new HnswIndex(DIM, 8, 50, 1);
+        for (int i = 0; i < 300; i++) index.upsert(UUID.randomUUID(), random(rnd), new int[]{1});
+
+        List<VectorHitDto> hits = index.search(random(rnd), 20, 40, null);
+        assertEquals(20, hits.size());
+        for (int i = 1; i < hits.size(); i++) {
+            assertTrue(hits.get(i - 1).getDistance() <= hits.get(i).getDistance());
+        }
+    }
+
+    @Test
+    void filterReturnsOnlyMatchingNodesEvenWhenVerySelective() {
+        Random rnd = new Random(1);
+        HnswIndex index = new HnswIndex(DIM, 8, 50, 1);
+        Set<UUID> rare = new HashSet<>();
+        for (int i = 0; i < 1_000; i++) {
+            UUID id = UUID.randomUUID();
+            int code = i % 100 == 0 ? 2 : 1; // 10 node mã 2
+            if (code == 2) rare.add(id);
+            index.upsert(id, random(rnd), new int[]{code});
+        }
+
+        List<VectorHitDto> hits = index.search(random(rnd), 10, 20, new int[]{2});
+        assertEquals(10, hits.size());
+        hits.forEach(h -> assertTrue(rare.contains(h.getId())));
+    }
+
+    @Test
+    void removeAndUpsertReplaceNodes() {
+        HnswIndex index = new HnswIndex(4, 4, 16, 1);
+        UUID a = UUID.randomUUID();
+        UUID b = UUID.randomUUID();
+        index.upsert(a, new float[]{1, 0, 0, 0}, new int[]{1});
+        index.upsert(b, new float[]{0, 1, 0, 0}, new int[]{1});
+
+        // upsert lại a sang hướng khác -> bản cũ bị xoá mềm
+        index.upsert(a, new float[]{0, 0, 1, 0}, new int[]{1});
+        assertEquals(2, index.size());
+        VectorHitDto top = index.search(new float[]{0, 0, 1, 0}, 1, 10, null).getFirst();
+        assertEquals(a, top.getId());
+        assertEquals(0.0, top.getDistance(), 1e-6);
+
+        index.remove(b);
+        assertEquals(1, index.size());
+        assertTrue(index.search(new float[]{0, 1, 0, 0}, 2, 10, null).stream().noneMatch(h -> h.getId().equals(b)));
+    }
+
+    @Test
+    void rejectsWrongDimension() {
+        HnswIndex index = new HnswIndex(4, 4, 16, 1);
+        assertThrows(IllegalArgumentException.class, () -> index.upsert(UUID.randomUUID(), new float[3], null));
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.personalchatbot.service.search.index;
+
+import com.example.personalchatbot.dto.VectorHitDto;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MmapVectorStoreTest {
+
+    private static final int DIM = 8;
+    private static final int WIDTH = MetadataCodes.KEYS.size();
+
+    @TempDir
+    Path dir;
+
+    private static float[] random(Random rnd) {
+        float[] v = new float[DIM];
+        for (int i = 0; i < DIM; i++) v[i] = (float) rnd.nextGaussian();
+        return v;
+    }
+
+    private static int[] codes(int project) {
+        int[] c = new int[WIDTH];
+        c[MetadataCodes.PROJECT] = project;
+        return c;
+    }
+
+    private static int[] filter(int project) {
+        int[] f = new int[WIDTH];
+        Arrays.fill(f, MetadataCodes.ANY);
+        f[MetadataCodes.PROJECT] = project;
+        return f;
+    }
+
+    @Test
+    void parallelScanMatchesBruteForceTopK() throws Exception {
+        Random rnd = new Random(11);
+        List<UUID> ids = new ArrayList<>();
+        List<float[]> vectors = new ArrayList<>();
+        try (MmapVectorStore store = new MmapVectorStore(dir.resolve("v.bin"), DIM, WIDTH, 4)) {
+            // > LEAF_ROWS dòng -> quét chia thành nhiều task
+            for (int i = 0; i < 10_000; i++) {
+                UUID id = UUID.randomUUID();
+                float[] v = random(rnd);
+                ids.add(id);
+                vectors.add(VectorKernels.normalizedCopy(v));
+                store.upsert(id, v, codes(1 + i % 3));
+            }
+            float[] q = VectorKernels.normalizedCopy(random(rnd));
+            Set<UUID> expected = IntStream.range(0, ids.size()).boxed()
+                    .sorted(Comparator.comparingDouble(i -> -VectorKernels.scalarDot(q, 0, vectors.get(i), 0, DIM)))
+                    .limit(15)
+                    .map(ids::get)
+                    .collect(Collectors.toSet());
+
+            List<VectorHitDto> hits = store.search(q, 15, null);
+            assertEquals(expected, hits.stream().map(VectorHitDto::getId).collect(Collectors.toSet()));
+            for (int i = 1; i < hits.size(); i++) {
+                assertTrue(hits.get(i - 1).getDistance() <= hits.get(i).getDistance());
+            }
+        }
+    }
+
+    @Test
+    void projectFilterScansOnlyThatTenant() throws Exception {
+        Random rnd = new Random(5);
+        List<UUID> tenant2 = new ArrayList<>();
+        try (MmapVectorStore store = new MmapVectorStore(dir.resolve("p.bin"), DIM, WIDTH, 2)) {
+            for (int i = 0; i < 500; i++) {
+                UUID id = UUID.randomUUID();
+                int project = i % 5 == 0 ? 2 : 1;
+                if (project == 2) tenant2.add(id);
+                store.upsert(id, random(rnd), codes(project));
+            }
+            List<VectorHitDto> hits = store.search(random(rnd), 200, filter(2));
+
+            assertEquals(tenant2.size(), hits.size());
+            hits.forEach(h -> assertTrue(tenant2.contains(h.getId())));
+            assertTrue(store.search(random(rnd), 5, filter(9)).isEmpty()); // project chưa có dòng nào
+        }
+    }
+
+    @Test
+    void upsertSameIdHidesOldRow() throws Exception {
+        try (MmapVectorStore store = new MmapVectorStore(dir.resolve("u.bin"), 4, WIDTH, 1)) {
+            UUID a = UUID.randomUUID();
+            store.upsert(a, new float[]{1, 0, 0, 0}, codes(1));
+            store.upsert(UUID.randomUUID(), new float[]{0, 1, 0, 0}, codes(1));
+            store.upsert(a, new float[]{0, 0, 1, 0}, codes(1));
+
+            assertEquals(2, store.size());
+            List<VectorHitDto> hits = store.search(new float[]{1, 0, 0, 0}, 10, null);
+            assertEquals(2, hits.size());
+            VectorHitDto aHit = hits.stream().filter(h -> h.getId().equals(a)).findFirst().orElseThrow();
+            assertEquals(1.0, aHit.getDistance(), 1e-6); // vector mới vuông góc với query
+        }
+    }
+
+    @Test
+    void removeHidesRowAndIgnoresUnknownId() throws Exception {
+        try (MmapVectorStore store = new MmapVectorStore(dir.resolve("r.bin"), 4, WIDTH, 1)) {
+            UUID a = UUID.randomUUID();
+            UUID b = UUID.randomUUID();
+            store.upsert(a, new float[]{1, 0, 0, 0}, codes(1));
+            store.upsert(b, new float[]{0, 1, 0, 0}, codes(1));
+
+            store.remove(a);
+            store.remove(a);
+            store.remove(UUID.randomUUID());
+
+            assertEquals(1, store.size());
+            assertEquals(List.of(b), store.search(new float[]{1, 0, 0, 0}, 10, null).stream()
+                    .map(VectorHitDto::getId).toList());
+        }
+    }
+}
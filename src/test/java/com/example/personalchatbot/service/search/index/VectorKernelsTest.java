@@ -0,0 +1,52 @@
+package com.example.personalchatbot.service.search.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VectorKernelsTest {
+
+    private static float[] random(Random rnd, int n) {
+        float[] v = new float[n];
+        for (int i = 0; i < n; i++) v[i] = (float) rnd.nextGaussian();
+        return v;
+    }
+
+    private static double naiveDot(float[] a, int ao, float[] b, int bo, int len) {
+        double s = 0;
+        for (int i = 0; i < len; i++) s += (double) a[ao + i] * b[bo + i];
+        return s;
+    }
+
+    @Test
+    void scalarAndSimdMatchNaiveDotWithOffsetsAndTails() {
+        Random rnd = new Random(3);
+        float[] a = random(rnd, 1_600);
+        float[] b = random(rnd, 1_600);
+        // độ dài lẻ -> có phần đuôi ngoài loopBound / ngoài nhóm 4
+        for (int len : new int[]{0, 1, 3, 7, 37, 1_536}) {
+            double expected = naiveDot(a, 5, b, 11, len);
+            assertEquals(expected, VectorKernels.scalarDot(a, 5, b, 11, len), 1e-3);
+            assertEquals(expected, VectorKernels.dot(a, 5, b, 11, len), 1e-3);
+            if (VectorKernels.SIMD) assertEquals(expected, SimdDot.dot(a, 5, b, 11, len), 1e-3);
+        }
+    }
+
+    @Test
+    void simdIsEnabledUnderGradleTest() {
+        // build.gradle chạy test với --add-modules jdk.incubator.vector -> nhánh SIMD phải được bật và kiểm ở trên
+        assertTrue(VectorKernels.SIMD);
+    }
+
+    @Test
+    void normalizedCopyHasUnitLengthAndLeavesInputAlone() {
+        float[] v = {3f, 4f};
+        float[] n = VectorKernels.normalizedCopy(v);
+
+        assertArrayEquals(new float[]{0.6f, 0.8f}, n, 1e-6f);
+        assertArrayEquals(new float[]{3f, 4f}, v, 0f);
+        assertArrayEquals(new float[]{0f, 0f}, VectorKernels.normalizedCopy(new float[2]), 0f);
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.personalchatbot.service.session;
+
+import com.example.personalchatbot.config.SessionConfig;
+import com.example.personalchatbot.entity.ConversationSession;
+import com.example.personalchatbot.repository.RagSessionRepository;
+import com.example.personalchatbot.service.llm.LlmService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.EncodingType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionServiceTest {
+
+    private final Map<String, ConversationSession> rows = new ConcurrentHashMap<>();
+    private final List<String> ops = new CopyOnWriteArrayList<>();
+    private final CountDownLatch foldStarted = new CountDownLatch(1);
+    private final CountDownLatch releaseFold = new CountDownLatch(1);
+    private final ThreadPoolExecutor executor =
+            new ThreadPoolExecutor(2, 2, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+
+    private SessionService service;
+
+    @BeforeEach
+    void setUp() {
+        SessionConfig config = new SessionConfig();
+        config.setMaxSessions(100);
+        config.setIdleMinutes(60);
+        config.setHistoryMaxTokens(1); // lượt thứ 2 đã vượt ngân sách -> tóm tắt
+        config.setKeepRecentTurns(1);
+        config.setSummaryMaxTokens(100);
+        config.setPersist(true);
+
+        // LLM tóm tắt treo tới khi test cho chạy tiếp
+        LlmService llm = new LlmService(null, null) {
+            @Override
+            public String generate(String system, String user) {
+                foldStarted.countDown();
+                try {
+                    releaseFold.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "summary";
+            }
+        };
+
+        // repository trong bộ nhớ, ghi lại thứ tự thao tác
+        RagSessionRepository repo = (RagSessionRepository) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[]{RagSessionRepository.class}, (proxy, m, args) ->
+                        switch (m.getName()) {
+                            case "save" -> {
+                                ConversationSession row = (ConversationSession) args[0];
+                                ops.add("save");
+                                rows.put(row.getSessionId(), row);
+                                yield row;
+                            }
+                            case "deleteById" -> {
+                                ops.add("delete");
+                                rows.remove((String) args[0]);
+                                yield null;
+                            }
+                            case "findById" -> Optional.ofNullable(rows.get((String) args[0]));
+                            default -> throw new UnsupportedOperationException(m.getName());
+                        });
+
+        service = new SessionService(config, llm,
+                Encodings.newDefaultEncodingRegistry().getEncoding(EncodingType.CL100K_BASE),
+                new ObjectMapper(), executor, repo);
+        service.initCache();
+    }
+
+    @AfterEach
+    void tearDown() {
+        releaseFold.countDown();
+        executor.shutdownNow();
+    }
+
+    // persist lượt 1, fold, delete, persist sau fold
+    private void awaitTasks(long n) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2_000;
+        while (executor.getCompletedTaskCount() < n && System.currentTimeMillis() < deadline) Thread.sleep(10);
+        assertEquals(n, executor.getCompletedTaskCount());
+    }
+
+    @Test
+    void deleteDuringFoldIsNotUndoneByTheFoldsPersist() throws Exception {
+        service.append("s1", "câu hỏi 1", "trả lời 1");
+        service.append("s1", "câu hỏi 2", "trả lời 2");
+        assertTrue(foldStarted.await(2, TimeUnit.SECONDS));
+
+        service.delete("s1");
+        releaseFold.countDown();
+        awaitTasks(4);
+
+        assertFalse(rows.containsKey("s1"));
+        assertEquals("delete", ops.getLast());
+    }
+
+    @Test
+    void foldPersistsSummaryWhenSessionIsKept() throws Exception {
+        service.append("s1", "câu hỏi 1", "trả lời 1");
+        service.append("s1", "câu hỏi 2", "trả lời 2");
+        releaseFold.countDown();
+        awaitTasks(3);
+
+        assertEquals("summary", rows.get("s1").getSummary());
+    }
+}